@@ -0,0 +1,89 @@
+package seabdetector;
+
+import org.openjdk.jmh.annotations.*;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static seabdetector.DataModels.FolhaTemplate;
+
+/**
+ * Detecção das 4 âncoras e warp de perspectiva por resolução da página e estratégia de âncora.
+ * findAnchorPoints desenha as caixas encontradas na imagem, por isso cada chamada recebe uma cópia
+ * (o copyTo entra na medida e é pequeno perto do adaptiveThreshold/findContours).
+ *
+ * findAnchorPoints usa as janelas semeadas pelas folhas anteriores (caso comum em produção);
+ * findInCornerWindow mede só a estratégia numa janela de canto fixa de 250 px (primeira folha / folha torta).
+ * Os parâmetros de área e janela são escalados de {@code seab.template.dpi} para o dpi da folha (ver ScanGeometry).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AnchorBenchmark {
+
+    @Param({"150", "200", "300"})
+    public int dpi;
+
+    @Param({"contornos", "componentes", "correlacao"})
+    public String estrategia;
+
+    private AnchorStrategy strategy;
+    private ScanGeometry geo;
+    private Rect cantoFixo;
+
+    private Mat folha;
+    private Mat trabalho;
+    private FolhaTemplate template;
+    private List<Point> pontos;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchFixtures.loadNative();
+        folha = BenchFixtures.sheet(dpi, Collections.emptyList());
+        trabalho = new Mat();
+        template = BenchFixtures.template(dpi);
+        strategy = AnchorStrategy.forName(estrategia);
+        geo = ScanGeometry.forScale((double) dpi / Constants.TEMPLATE_DPI);
+        cantoFixo = new Rect(0, 0, 250, 250);
+
+        folha.copyTo(trabalho);
+        pontos = AnchorDetector.findAnchorPoints(trabalho, null, "bench", strategy, geo);
+        if (pontos == null) {
+            throw new IllegalStateException("Âncoras da folha sintética não detectadas em " + dpi + " dpi (" + estrategia + ")");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        folha.release();
+        trabalho.release();
+        template.release();
+    }
+
+    @Benchmark
+    public List<Point> findAnchorPoints() {
+        folha.copyTo(trabalho);
+        return AnchorDetector.findAnchorPoints(trabalho, null, "bench", strategy, geo);
+    }
+
+    @Benchmark
+    public Rect findInCornerWindow() {
+        return strategy.findInRegion(folha, cantoFixo, "bench", null, "bench", new int[1], geo);
+    }
+
+    @Benchmark
+    public int warpImage() {
+        Mat recorte = AnchorDetector.warpImage(folha, template, pontos, null, "bench", true);
+        int linhas = recorte.rows();
+        recorte.release();
+        return linhas;
+    }
+}
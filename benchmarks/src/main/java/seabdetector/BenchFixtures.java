@@ -0,0 +1,106 @@
+package seabdetector;
+
+import org.opencv.core.*;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static seabdetector.DataModels.*;
+
+/**
+ * Folhas sintéticas para os benchmarks, geradas em memória para que rodem offline e sem imagens reais de alunos.
+ *
+ * A página é um A4 na resolução pedida; âncoras (20x20 px) e bolhas (raio 10 px) mantêm o tamanho em pixels
+ * para casar com as constantes absolutas de Constants, então a resolução mede o custo do tamanho da página.
+ */
+final class BenchFixtures {
+
+    static final String QR_TEXTO = "00002000101E2025";
+    static final String FOLHA = "FOLHA 1";
+
+    private static final double A4_LARGURA_POL = 8.27, A4_ALTURA_POL = 11.69;
+    private static final int MARGEM_ANCORA = 50;
+    private static final int LADO_ANCORA = 20;
+    private static final int LADO_QR = 160;
+    private static final int INICIO_BOLHAS_X = 200, INICIO_BOLHAS_Y = 300;
+    private static final int PASSO_OPCAO = 40, PASSO_QUESTAO = 40, LARGURA_COLUNA = 220;
+    private static final String[] OPCOES = {"NQN", "DVQ", "SQS", "NU"};
+
+    private static boolean nativoCarregado = false;
+
+    private BenchFixtures() {
+    }
+
+    static synchronized void loadNative() {
+        if (!nativoCarregado) {
+            System.load(Constants.OPENCV_DLL_PATH_HOME);
+            nativoCarregado = true;
+        }
+    }
+
+    static Size pageSize(int dpi) {
+        return new Size(Math.round(A4_LARGURA_POL * dpi), Math.round(A4_ALTURA_POL * dpi));
+    }
+
+    /** Template cujos pontos ideais são os centros das âncoras desenhadas por {@link #sheet}. */
+    static FolhaTemplate template(int dpi) {
+        Size size = pageSize(dpi);
+        return new FolhaTemplate(size, new MatOfPoint2f(anchorCenters(size)));
+    }
+
+    static Point[] anchorCenters(Size size) {
+        double w = size.width, h = size.height;
+        return new Point[]{
+                new Point(MARGEM_ANCORA, MARGEM_ANCORA),
+                new Point(w - MARGEM_ANCORA, MARGEM_ANCORA),
+                new Point(MARGEM_ANCORA, h - MARGEM_ANCORA),
+                new Point(w - MARGEM_ANCORA, h - MARGEM_ANCORA)
+        };
+    }
+
+    /** {@code bolhas} alternativas (4 por questão) em colunas que cabem na página. */
+    static List<Alternativa> alternativas(int bolhas, int dpi) {
+        Size size = pageSize(dpi);
+        int linhasPorColuna = (int) ((size.height - INICIO_BOLHAS_Y - 400) / PASSO_QUESTAO);
+        List<Alternativa> lista = new ArrayList<>(bolhas);
+        for (int i = 0; i < bolhas; i++) {
+            int questao = i / OPCOES.length;
+            int opcao = i % OPCOES.length;
+            int coluna = questao / linhasPorColuna;
+            int linha = questao % linhasPorColuna;
+            int x = INICIO_BOLHAS_X + coluna * LARGURA_COLUNA + opcao * PASSO_OPCAO;
+            int y = INICIO_BOLHAS_Y + linha * PASSO_QUESTAO;
+            if (x + Constants.BUBBLE_RADIUS >= size.width - 300) {
+                throw new IllegalArgumentException(bolhas + " bolhas não cabem em uma página de " + dpi + " dpi");
+            }
+            lista.add(new Alternativa(FOLHA, String.format("Q%03d", questao + 1), OPCOES[opcao], x, y));
+        }
+        return lista;
+    }
+
+    /**
+     * Folha BGR alinhada: fundo branco, 4 âncoras sólidas, QR no canto inferior direito e as bolhas
+     * de {@code alternativas}, com a opção (questão % 4) preenchida.
+     */
+    static Mat sheet(int dpi, List<Alternativa> alternativas) {
+        Size size = pageSize(dpi);
+        Mat folha = new Mat(size, CvType.CV_8UC3, new Scalar(255, 255, 255));
+        Scalar preto = new Scalar(0, 0, 0);
+
+        for (Point c : anchorCenters(size)) {
+            Imgproc.rectangle(folha, new Point(c.x - LADO_ANCORA / 2.0, c.y - LADO_ANCORA / 2.0),
+                    new Point(c.x + LADO_ANCORA / 2.0 - 1, c.y + LADO_ANCORA / 2.0 - 1), preto, Imgproc.FILLED);
+        }
+
+        for (int i = 0; i < alternativas.size(); i++) {
+            Alternativa alt = alternativas.get(i);
+            boolean marcada = (i % OPCOES.length) == ((i / OPCOES.length) % OPCOES.length);
+            Imgproc.circle(folha, new Point(alt.x, alt.y), Constants.BUBBLE_RADIUS, preto, 1);
+            if (marcada) Imgproc.circle(folha, new Point(alt.x, alt.y), Constants.BUBBLE_RADIUS - 2, preto, Imgproc.FILLED);
+        }
+
+        SyntheticSheetGenerator.drawQr(folha, QR_TEXTO, LADO_QR, new Point(size.width - 300, size.height - 300));
+        return folha;
+    }
+}
@@ -0,0 +1,90 @@
+package seabdetector;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static seabdetector.DataModels.*;
+
+/**
+ * Custo de parsing de config.txt/templates.txt por tamanho do catálogo, e da carga pelo pacote binário (LayoutBundle).
+ * Os arquivos são gerados em uma pasta temporária com {@code folhas} folhas de {@code bolhasPorFolha} bolhas.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConfigLoaderBenchmark {
+
+    @Param({"5", "50"})
+    public int folhas;
+
+    @Param({"120", "600"})
+    public int bolhasPorFolha;
+
+    private Path pasta;
+    private String caminhoConfig;
+    private String caminhoTemplates;
+    private Path pacote;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        BenchFixtures.loadNative(); // loadTemplates cria MatOfPoint2f
+        pasta = Files.createTempDirectory("seab-bench-config");
+        caminhoConfig = pasta.resolve("config.txt").toString();
+        caminhoTemplates = pasta.resolve("templates.txt").toString();
+
+        List<Alternativa> modelo = BenchFixtures.alternativas(bolhasPorFolha, 200);
+        try (PrintWriter config = new PrintWriter(caminhoConfig, "UTF-8");
+             PrintWriter templates = new PrintWriter(caminhoTemplates, "UTF-8")) {
+            config.println("# Gerado pelo ConfigLoaderBenchmark");
+            for (int f = 1; f <= folhas; f++) {
+                config.println("[FOLHA " + f + "]");
+                for (Alternativa a : modelo) {
+                    config.println("F" + f + a.questao + ";" + a.opcao + ";" + a.x + ";" + a.y);
+                }
+                templates.println("[FOLHA " + f + "]");
+                templates.println("DADOS: 1654;2339;50,50;1604,50;50,2289;1604,2289");
+            }
+        }
+        pacote = pasta.resolve("layout.bin");
+        LayoutBundle.compile(Path.of(caminhoConfig), Path.of(caminhoTemplates), pacote);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(Path.of(caminhoConfig));
+        Files.deleteIfExists(Path.of(caminhoTemplates));
+        Files.deleteIfExists(pacote);
+        Files.deleteIfExists(pasta);
+    }
+
+    @Benchmark
+    public List<Alternativa> loadAlternativas() {
+        return ConfigLoader.loadAlternativas(caminhoConfig);
+    }
+
+    @Benchmark
+    public int loadTemplates() {
+        Map<String, FolhaTemplate> templates = ConfigLoader.loadTemplates(caminhoTemplates);
+        int total = templates.size();
+        templates.values().forEach(FolhaTemplate::release);
+        return total;
+    }
+
+    @Benchmark
+    public int loadBundle() {
+        LayoutBundle.Layout layout = LayoutBundle.load(Path.of(caminhoConfig), Path.of(caminhoTemplates), pacote);
+        int total = layout.alternativas.size();
+        layout.release();
+        return total;
+    }
+}
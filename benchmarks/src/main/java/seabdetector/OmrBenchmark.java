@@ -0,0 +1,54 @@
+package seabdetector;
+
+import org.openjdk.jmh.annotations.*;
+
+import org.opencv.core.Mat;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static seabdetector.DataModels.Alternativa;
+import static seabdetector.DataModels.SheetAnswers;
+
+/**
+ * Leitura das bolhas (OMR) em uma folha já alinhada, por quantidade de bolhas.
+ * readBubbles desenha as marcações no recorte, por isso cada chamada recebe uma cópia.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OmrBenchmark {
+
+    @Param({"200"})
+    public int dpi;
+
+    @Param({"40", "160", "600"})
+    public int bolhas;
+
+    private Mat recorte;
+    private Mat trabalho;
+    private List<Alternativa> alternativas;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchFixtures.loadNative();
+        alternativas = BenchFixtures.alternativas(bolhas, dpi);
+        recorte = BenchFixtures.sheet(dpi, alternativas);
+        trabalho = new Mat();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        recorte.release();
+        trabalho.release();
+    }
+
+    @Benchmark
+    public SheetAnswers readBubbles() {
+        recorte.copyTo(trabalho);
+        return OmrReader.readBubbles(trabalho, alternativas, null, null);
+    }
+}
@@ -0,0 +1,59 @@
+package seabdetector;
+
+import org.openjdk.jmh.annotations.*;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static seabdetector.DataModels.QrData;
+
+/**
+ * Custo da leitura do QR (recorte, ampliação 5x, bilateral, Otsu, ZXing) por resolução da página.
+ * {@code extractFalhaRotacionada} mede a tentativa que falha nas folhas digitalizadas de cabeça para baixo.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QrBenchmark {
+
+    @Param({"150", "200", "300"})
+    public int dpi;
+
+    private Mat folha;
+    private Mat folhaRotacionada;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchFixtures.loadNative();
+        folha = BenchFixtures.sheet(dpi, Collections.emptyList());
+        folhaRotacionada = new Mat();
+        Core.flip(folha, folhaRotacionada, -1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        folha.release();
+        folhaRotacionada.release();
+    }
+
+    @Benchmark
+    public String detectAndDecode() throws Exception {
+        return QRCodeReader.detectAndDecode(folha, null, null);
+    }
+
+    @Benchmark
+    public QrData extractAndParse() {
+        return QRCodeReader.extractAndParseFromRawImage(folha, null, null);
+    }
+
+    @Benchmark
+    public QrData extractFalhaRotacionada() {
+        return QRCodeReader.extractAndParseFromRawImage(folhaRotacionada, null, null);
+    }
+}
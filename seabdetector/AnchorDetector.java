@@ -53,107 +53,70 @@ public class AnchorDetector {
 
     /**
      * Detecta as âncoras (marcadores de alinhamento) nas 4 pontas da imagem.
+     * Cada canto é buscado primeiro em uma janela justa em torno da posição vista nas folhas anteriores e,
+     * só se não encontrar, em janelas de canto cada vez maiores (ver {@link AnchorPriors}).
      * @param imagem A imagem original.
      * @param outputDir O diretório para salvar imagens de debug e resultado.
      * @param nomeArquivoBase Nome da folha para nomear arquivos de saída.
      * @return Lista de 4 Pontos ordenados (TL, TR, BL, BR), ou null se falhar.
      */
     public static List<Point> findAnchorPoints(Mat imagem, String outputDir, String nomeArquivoBase) {
+        return findAnchorPoints(imagem, outputDir, nomeArquivoBase, AnchorStrategy.defaultStrategy());
+    }
+
+    /**
+     * Igual a {@link #findAnchorPoints(Mat, String, String)}, com a estratégia de localização informada
+     * (p.ex. a do template da folha, ver {@link AnchorStrategy#forTemplate}).
+     */
+    public static List<Point> findAnchorPoints(Mat imagem, String outputDir, String nomeArquivoBase, AnchorStrategy estrategia) {
+        return findAnchorPoints(imagem, outputDir, nomeArquivoBase, estrategia, ScanGeometry.NOMINAL);
+    }
+
+    /**
+     * Igual a {@link #findAnchorPoints(Mat, String, String, AnchorStrategy)}, com áreas e janelas
+     * escaladas para a resolução da imagem (ver {@link ScanGeometry}).
+     */
+    public static List<Point> findAnchorPoints(Mat imagem, String outputDir, String nomeArquivoBase, AnchorStrategy estrategia, ScanGeometry geo) {
         int largura = imagem.cols();
         int altura = imagem.rows();
-        int w = ANCHOR_SEARCH_SIZE, h = ANCHOR_SEARCH_SIZE;
-
-        Rect[] regioes = new Rect[]{
-                new Rect(0, 0, w, h),               // 0: Superior Esquerdo (TL)
-                new Rect(largura - w, 0, w, h),      // 1: Superior Direito (TR)
-                new Rect(0, altura - h, w, h),       // 2: Inferior Esquerdo (BL)
-                new Rect(largura - w, altura - h, w, h) // 3: Inferior Direito (BR)
-        };
-        
-        String[] regionNames = {"Superior Esquerdo", "Superior Direito", "Inferior Esquerdo", "Inferior Direito"};
+
         List<Rect> ancorasRects = new ArrayList<>();
+        int[] contornosExaminados = {0};
+        JfrEvents.StageEvent evento = new JfrEvents.StageEvent();
+        evento.begin();
+
+        for (int canto = 0; canto < 4; canto++) {
+            String regionName = AnchorPriors.NOMES_CANTOS[canto];
+            Rect melhorCaixa = null;
+
+            for (int nivel = AnchorPriors.firstLevel(largura, altura, canto); nivel < AnchorPriors.levelCount() && melhorCaixa == null; nivel++) {
+                Rect roi = AnchorPriors.window(largura, altura, canto, nivel, geo);
+                if (roi == null) continue;
+                melhorCaixa = estrategia.findInRegion(imagem, roi, regionName, outputDir, nomeArquivoBase, contornosExaminados, geo);
+                AnchorPriors.record(largura, altura, canto, nivel, melhorCaixa);
+            }
 
-        for (int i = 0; i < regioes.length; i++) {
-            Rect roi = regioes[i];
-            String regionName = regionNames[i];
-            
-            Mat regiao = null; Mat gray = null; Mat thresh = null; Mat hierarchy = null; Mat debugContornos = null;
-            
-            try {
-                // --- Processamento da Região ---
-                regiao = new Mat(imagem, roi);
-                gray = new Mat(); thresh = new Mat(); hierarchy = new Mat();
-                List<MatOfPoint> contornos = new ArrayList<>();
-
-                Imgproc.cvtColor(regiao, gray, Imgproc.COLOR_BGR2GRAY);
-                Imgproc.adaptiveThreshold(gray, thresh, 255, Imgproc.ADAPTIVE_THRESH_MEAN_C,
-                            Imgproc.THRESH_BINARY_INV, ADAPTIVE_THRESH_BLOCK_SIZE, ADAPTIVE_THRESH_C);
-                
-                // Imgcodecs.imwrite(outputDir + "DEBUG_ANCHOR_TH_" + regionName.replace(" ", "_") + "_" + nomeArquivoBase + ".jpg", thresh);
-                
-                Imgproc.findContours(thresh.clone(), contornos, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
-                
-                debugContornos = new Mat(regiao.size(), regiao.type(), new Scalar(255, 255, 255));
-                Imgproc.drawContours(debugContornos, contornos, -1, COLOR_CONTOUR, 1);
-                
-                Rect melhorCaixa = null;
-                double maxAreaEncontrada = 0;
-                
-                // System.out.println("    [DEBUG] Região " + regionName + ": " + contornos.size() + " contornos iniciais.");
-                
-                for (MatOfPoint contorno : contornos) {
-                    double area = Imgproc.contourArea(contorno);
-                    if (area < ANCHOR_MIN_AREA || area > ANCHOR_MAX_AREA) {
-                        contorno.release(); continue;
-                    }
-
-                    MatOfPoint2f contorno2f = new MatOfPoint2f(contorno.toArray());
-                    MatOfPoint2f aprox = new MatOfPoint2f();
-                    double perimetro = Imgproc.arcLength(contorno2f, true);
-                    Imgproc.approxPolyDP(contorno2f, aprox, ANCHOR_APPROX_EPSILON * perimetro, true);
-                    
-                    if (aprox.total() == 4) {
-                        MatOfPoint aproxPt = new MatOfPoint(aprox.toArray());
-                        Rect caixa = Imgproc.boundingRect(aproxPt);
-                        double aspect = (caixa.width > caixa.height) ? 
-                                (double)caixa.width / caixa.height : (double)caixa.height / caixa.width;
-                        
-                        if (aspect <= ANCHOR_ASPECT_TOLERANCE) {
-                            if (area > maxAreaEncontrada) {
-                                maxAreaEncontrada = area;
-                                caixa.x += roi.x; // Adiciona o offset da ROI
-                                caixa.y += roi.y;
-                                melhorCaixa = caixa;
-                            }
-                        }
-                        aproxPt.release();
-                    }
-                    contorno.release(); contorno2f.release(); aprox.release();
-                }
-                
-                //Imgcodecs.imwrite(outputDir + "DEBUG_ANCHOR_ALL_CONTOURS_" + regionName.replace(" ", "_") + "_" + nomeArquivoBase + ".jpg", debugContornos);
-
-                if (melhorCaixa != null) {
-                    //System.out.println("    ✅ Encontrada âncora (" + regionName + ")! Área: " + String.format("%.1f", maxAreaEncontrada));
-                    ancorasRects.add(melhorCaixa);
-                    // Desenha a âncora na imagem original para o DEBUG de falha
-                    Imgproc.rectangle(imagem, new Point(melhorCaixa.x, melhorCaixa.y), 
-                                             new Point(melhorCaixa.x + melhorCaixa.width, melhorCaixa.y + melhorCaixa.height), 
-                                             COLOR_BLUE, 3);
-                } else {
-                    System.out.println("    ❌ Nenhuma âncora válida encontrada na região (" + regionName + ").");
-                }
-            } finally {
-                if (regiao != null) regiao.release(); 
-                if (gray != null) gray.release(); 
-                if (thresh != null) thresh.release(); 
-                if (hierarchy != null) hierarchy.release();
-                if (debugContornos != null) debugContornos.release();
+            if (melhorCaixa != null) {
+                ancorasRects.add(melhorCaixa);
+                // Desenha a âncora na imagem original para o DEBUG de falha
+                Imgproc.rectangle(imagem, new Point(melhorCaixa.x, melhorCaixa.y), 
+                                         new Point(melhorCaixa.x + melhorCaixa.width, melhorCaixa.y + melhorCaixa.height), 
+                                         COLOR_BLUE, 3);
+            } else if (Log.isInfoEnabled()) {
+                Log.info("Nenhuma âncora válida na região", "arquivo", nomeArquivoBase, "etapa", "anchors", "regiao", regionName);
             }
         }
         
+        if (evento.shouldCommit()) {
+            evento.arquivo = nomeArquivoBase;
+            evento.etapa = "anchors";
+            evento.contornos = contornosExaminados[0];
+            evento.resultado = ancorasRects.size() == 4 ? "ok" : "encontradas_" + ancorasRects.size();
+            evento.commit();
+        }
+
         if (ancorasRects.size() != 4) {
-            System.err.println("  ⚠ ERRO FATAL: não foram encontradas 4 âncoras. Não é possível alinhar.");
+            if (Log.isDebugEnabled()) Log.debug("Menos de 4 âncoras; não é possível alinhar", "arquivo", nomeArquivoBase, "etapa", "anchors", "encontradas", ancorasRects.size());
             //Imgcodecs.imwrite(outputDir + OUTPUT_FAIL_PREFIX + nomeArquivoBase + ".jpg", imagem);
             return null;
         }
@@ -161,7 +124,7 @@ public class AnchorDetector {
         // Ordena os pontos e retorna
         return sortAnchorPoints(ancorasRects);
     }
-    
+
     /**
      * Aplica a transformação de perspectiva (Warp) na imagem.
      * Este é o antigo final de detectarETransformarAncoras.
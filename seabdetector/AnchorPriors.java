@@ -0,0 +1,134 @@
+package seabdetector;
+
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Janelas de busca das âncoras em níveis crescentes, semeadas pela posição das âncoras nas folhas anteriores.
+ *
+ * Nível 0: janela justa ({@code 2 × ANCHOR_PRIOR_MARGIN}) centrada na posição estimada da âncora.
+ * Níveis 1..n: quadrados no canto da imagem com os lados de {@code ANCHOR_SEARCH_LEVELS}
+ * (padrão 120, o tamanho original; 250, como no SaebSimples; 500, como no TesteNormalizacao).
+ * A busca só passa ao nível seguinte quando o anterior não encontra a âncora.
+ *
+ * A estimativa é uma média móvel por "scanner", identificado pelo tamanho da imagem (cada modelo/resolução
+ * de scanner gera páginas de tamanho próprio). Acertos e tentativas por nível são contados para o sumário e as métricas.
+ */
+public class AnchorPriors {
+
+    public static final String[] NOMES_CANTOS = {"Superior Esquerdo", "Superior Direito", "Inferior Esquerdo", "Inferior Direito"};
+
+    private static final double PESO_NOVA_AMOSTRA = 0.2;
+
+    private static final int[] LADOS = parseLevels(Constants.ANCHOR_SEARCH_LEVELS);
+    private static final int NIVEIS = LADOS.length + 1;
+
+    private static final Map<String, Estimativa> estimativas = new ConcurrentHashMap<>();
+    private static final AtomicLongArray tentativas = new AtomicLongArray(NIVEIS);
+    private static final AtomicLongArray acertos = new AtomicLongArray(NIVEIS);
+
+    /** Centro estimado de cada âncora (TL, TR, BL, BR) para um tamanho de página. */
+    private static class Estimativa {
+        private final double[][] centros = new double[4][];
+
+        synchronized Point get(int canto) {
+            double[] c = centros[canto];
+            return c == null ? null : new Point(c[0], c[1]);
+        }
+
+        synchronized void update(int canto, Point centro) {
+            double[] c = centros[canto];
+            if (c == null) {
+                centros[canto] = new double[]{centro.x, centro.y};
+            } else {
+                c[0] += (centro.x - c[0]) * PESO_NOVA_AMOSTRA;
+                c[1] += (centro.y - c[1]) * PESO_NOVA_AMOSTRA;
+            }
+        }
+    }
+
+    /** Esquece as estimativas e os contadores, para que execuções sobre o mesmo corpus comecem iguais (RegressionHarness). */
+    static void reset() {
+        estimativas.clear();
+        for (int i = 0; i < NIVEIS; i++) {
+            tentativas.set(i, 0);
+            acertos.set(i, 0);
+        }
+    }
+
+    public static int levelCount() {
+        return NIVEIS;
+    }
+
+    /** Primeiro nível a tentar: 0 se já há estimativa para este canto, senão 1 (canto fixo). */
+    static int firstLevel(int largura, int altura, int canto) {
+        Estimativa e = estimativas.get(key(largura, altura));
+        return e != null && e.get(canto) != null ? 0 : 1;
+    }
+
+    /**
+     * Janela de busca do {@code canto} no {@code nivel}, limitada à imagem.
+     * Margem e lados vêm de {@code geo}, já escalados para a resolução da imagem.
+     * @return A região, ou null se o nível 0 não tem estimativa.
+     */
+    static Rect window(int largura, int altura, int canto, int nivel, ScanGeometry geo) {
+        if (nivel == 0) {
+            Estimativa e = estimativas.get(key(largura, altura));
+            Point centro = e != null ? e.get(canto) : null;
+            if (centro == null) return null;
+            int margem = geo.priorMargin;
+            int x0 = clamp((int) Math.round(centro.x) - margem, largura);
+            int y0 = clamp((int) Math.round(centro.y) - margem, altura);
+            int x1 = clamp((int) Math.round(centro.x) + margem, largura);
+            int y1 = clamp((int) Math.round(centro.y) + margem, altura);
+            return x1 > x0 && y1 > y0 ? new Rect(x0, y0, x1 - x0, y1 - y0) : null;
+        }
+
+        int w = Math.min(geo.searchLevels[nivel - 1], largura);
+        int h = Math.min(geo.searchLevels[nivel - 1], altura);
+        boolean direita = canto == 1 || canto == 3;
+        boolean abaixo = canto == 2 || canto == 3;
+        return new Rect(direita ? largura - w : 0, abaixo ? altura - h : 0, w, h);
+    }
+
+    /** Registra o resultado de uma tentativa; em caso de acerto, atualiza a estimativa do canto. */
+    static void record(int largura, int altura, int canto, int nivel, Rect encontrada) {
+        tentativas.incrementAndGet(nivel);
+        if (encontrada == null) return;
+        acertos.incrementAndGet(nivel);
+        Point centro = new Point(encontrada.x + encontrada.width / 2.0, encontrada.y + encontrada.height / 2.0);
+        estimativas.computeIfAbsent(key(largura, altura), k -> new Estimativa()).update(canto, centro);
+    }
+
+    public static long getAttempts(int nivel) {
+        return tentativas.get(nivel);
+    }
+
+    public static long getHits(int nivel) {
+        return acertos.get(nivel);
+    }
+
+    /** Descrição do nível para relatórios: "estimativa" ou o lado nominal da janela de canto. */
+    public static String describeLevel(int nivel) {
+        return nivel == 0 ? "estimativa" : "canto_" + LADOS[nivel - 1];
+    }
+
+    private static String key(int largura, int altura) {
+        return largura + "x" + altura;
+    }
+
+    private static int clamp(int v, int max) {
+        return Math.max(0, Math.min(v, max));
+    }
+
+    static int[] parseLevels(String lados) {
+        String[] partes = lados.split(",");
+        int[] valores = new int[partes.length];
+        for (int i = 0; i < partes.length; i++) valores[i] = Integer.parseInt(partes[i].trim());
+        return valores;
+    }
+}
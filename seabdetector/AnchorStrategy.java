@@ -0,0 +1,57 @@
+package seabdetector;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static seabdetector.DataModels.FolhaTemplate;
+
+/**
+ * Estratégia de localização de UMA âncora (quadrado sólido) dentro de uma região da imagem.
+ * As janelas de busca e a ordenação dos 4 cantos continuam em {@link AnchorDetector}.
+ *
+ * Implementações disponíveis (nome usado em {@code -Dseab.anchor.strategy} e na linha {@code ANCORA:} do templates.txt):
+ * <ul>
+ *   <li>{@code contornos}: findContours + approxPolyDP + filtro de área/proporção (método original);</li>
+ *   <li>{@code componentes}: connectedComponentsWithStats, filtrando área, caixa e preenchimento em uma chamada nativa;</li>
+ *   <li>{@code correlacao}: matchTemplate de um quadrado sólido na região reduzida à metade.</li>
+ * </ul>
+ * As implementações não guardam estado por folha e podem ser usadas por vários workers ao mesmo tempo.
+ */
+public interface AnchorStrategy {
+
+    String name();
+
+    /**
+     * @param imagem Imagem BGR completa.
+     * @param roi Região de busca, em coordenadas da imagem.
+     * @param regiao Nome do canto, para depuração.
+     * @param candidatos Acumulador (posição 0) de candidatos examinados, para o evento JFR.
+     * @param geo Áreas e tamanhos esperados na resolução da imagem.
+     * @return Caixa da âncora em coordenadas da imagem, ou null se não houver âncora válida na região.
+     */
+    Rect findInRegion(Mat imagem, Rect roi, String regiao, String outputDir, String nomeArquivoBase, int[] candidatos, ScanGeometry geo);
+
+    List<String> NOMES = Arrays.asList(ContourAnchorStrategy.NOME, ComponentsAnchorStrategy.NOME, TemplateMatchAnchorStrategy.NOME);
+
+    static AnchorStrategy forName(String nome) {
+        switch (nome.trim().toLowerCase()) {
+            case ContourAnchorStrategy.NOME: return ContourAnchorStrategy.INSTANCIA;
+            case ComponentsAnchorStrategy.NOME: return ComponentsAnchorStrategy.INSTANCIA;
+            case TemplateMatchAnchorStrategy.NOME: return TemplateMatchAnchorStrategy.INSTANCIA;
+            default: throw new IllegalArgumentException("Estratégia de âncora desconhecida: " + nome + " (use " + NOMES + ")");
+        }
+    }
+
+    /** Estratégia padrão ({@code -Dseab.anchor.strategy}, "contornos" se omitido). */
+    static AnchorStrategy defaultStrategy() {
+        return forName(Constants.ANCHOR_STRATEGY);
+    }
+
+    /** Estratégia do template (linha {@code ANCORA:}) ou a padrão. */
+    static AnchorStrategy forTemplate(FolhaTemplate template) {
+        return template != null && template.anchorStrategy != null ? forName(template.anchorStrategy) : defaultStrategy();
+    }
+}
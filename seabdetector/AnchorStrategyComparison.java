@@ -0,0 +1,134 @@
+package seabdetector;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static seabdetector.Constants.*;
+
+/**
+ * Compara as estratégias de âncora em um corpus (sintético ou real): taxa de detecção, tempo por folha e
+ * distância de cada estratégia ao consenso (mediana, por canto, das estratégias que encontraram as 4 âncoras).
+ * Corpora reais não têm gabarito de posição, por isso o consenso faz o papel de referência.
+ *
+ * Uso: {@code AnchorStrategyComparison <corpus> [contornos,componentes,correlacao]}
+ * O efeito na acurácia das respostas se mede com o RegressionHarness e {@code -Dseab.anchor.strategy=...}.
+ * Corpora de alta resolução precisam de {@code -Dseab.scan.dpi}, pois aqui não há template para estimar a escala.
+ */
+public class AnchorStrategyComparison {
+
+    static {
+        System.load(OPENCV_DLL_PATH_HOME);
+    }
+
+    /** Resultados de uma estratégia no corpus. */
+    private static class Placar {
+        final AnchorStrategy estrategia;
+        final LatencyHistogram tempos = new LatencyHistogram();
+        long encontradas;
+        long comparadas;
+        double somaDesvio;
+        double maiorDesvio;
+
+        Placar(AnchorStrategy estrategia) {
+            this.estrategia = estrategia;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Uso: AnchorStrategyComparison <corpus> [contornos,componentes,correlacao]");
+            return;
+        }
+        Log.setDefaultLevel(Log.Level.WARN);
+        Path corpus = Paths.get(args[0]);
+        List<String> nomes = args.length > 1 ? Arrays.asList(args[1].split(",")) : AnchorStrategy.NOMES;
+
+        Map<String, Placar> placares = new LinkedHashMap<>();
+        for (String nome : nomes) placares.put(nome.trim(), new Placar(AnchorStrategy.forName(nome)));
+
+        List<Path> arquivos = new ArrayList<>();
+        InputDiscovery.forEachBatch(corpus, 1000, false, arquivos::addAll);
+        int folhas = 0;
+
+        for (Path arquivo : arquivos) {
+            for (SheetInput entrada : SheetInput.fromFile(corpus, arquivo)) {
+                Mat original = entrada.load();
+                if (original.empty()) continue;
+                folhas++;
+                ScanGeometry geo = ScanGeometry.forScale(ScanGeometry.estimateScale(original, null));
+                original = geo.reduce(original);
+
+                Map<String, List<Point>> pontos = new LinkedHashMap<>();
+                Mat copia = new Mat();
+                for (Placar p : placares.values()) {
+                    original.copyTo(copia); // findAnchorPoints desenha as caixas na imagem
+                    long inicio = System.nanoTime();
+                    List<Point> encontrados = AnchorDetector.findAnchorPoints(copia, null, entrada.baseName(), p.estrategia, geo);
+                    p.tempos.record(System.nanoTime() - inicio);
+                    if (encontrados != null) {
+                        p.encontradas++;
+                        pontos.put(p.estrategia.name(), encontrados);
+                    }
+                }
+                copia.release();
+                original.release();
+
+                Point[] consenso = consensus(pontos.values());
+                if (consenso == null) continue;
+                for (Map.Entry<String, List<Point>> e : pontos.entrySet()) {
+                    Placar p = placares.get(e.getKey());
+                    for (int canto = 0; canto < 4; canto++) {
+                        Point a = e.getValue().get(canto);
+                        double desvio = Math.hypot(a.x - consenso[canto].x, a.y - consenso[canto].y);
+                        p.somaDesvio += desvio;
+                        p.maiorDesvio = Math.max(p.maiorDesvio, desvio);
+                    }
+                    p.comparadas++;
+                }
+            }
+        }
+
+        System.out.printf("===== ESTRATÉGIAS DE ÂNCORA: %s (%d folhas) =====\n", corpus, folhas);
+        System.out.printf("  %-12s %10s %8s %8s %8s %12s %12s\n", "estratégia", "detecção", "p50 ms", "p95 ms", "p99 ms", "desvio médio", "desvio máx");
+        for (Placar p : placares.values()) {
+            LatencyHistogram.Snapshot t = p.tempos.snapshot();
+            System.out.printf("  %-12s %9.1f%% %8.2f %8.2f %8.2f %10.2f px %10.2f px\n", p.estrategia.name(),
+                    folhas > 0 ? 100.0 * p.encontradas / folhas : 0, t.percentileMs(50), t.percentileMs(95), t.percentileMs(99),
+                    p.comparadas > 0 ? p.somaDesvio / (4 * p.comparadas) : 0, p.maiorDesvio);
+        }
+    }
+
+    /** Mediana por canto das detecções completas; null se nenhuma estratégia encontrou as 4 âncoras. */
+    private static Point[] consensus(Iterable<List<Point>> deteccoes) {
+        List<List<Point>> lista = new ArrayList<>();
+        deteccoes.forEach(lista::add);
+        if (lista.isEmpty()) return null;
+
+        Point[] consenso = new Point[4];
+        for (int canto = 0; canto < 4; canto++) {
+            double[] xs = new double[lista.size()], ys = new double[lista.size()];
+            for (int i = 0; i < lista.size(); i++) {
+                xs[i] = lista.get(i).get(canto).x;
+                ys[i] = lista.get(i).get(canto).y;
+            }
+            Arrays.sort(xs);
+            Arrays.sort(ys);
+            consenso[canto] = new Point(median(xs), median(ys));
+        }
+        return consenso;
+    }
+
+    private static double median(double[] ordenados) {
+        int n = ordenados.length;
+        return n % 2 == 1 ? ordenados[n / 2] : (ordenados[n / 2 - 1] + ordenados[n / 2]) / 2;
+    }
+}
@@ -0,0 +1,182 @@
+package seabdetector;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static seabdetector.Constants.*;
+
+/**
+ * Leitura do arquivo colunar gravado pelo {@link ColumnarResultWriter}, um bloco por vez.
+ *
+ * Para análises, cada {@link Block} expõe as colunas como estão no arquivo ({@code byte[]} de códigos por questão),
+ * sem montar texto; {@link #answer(int)} traduz um código. Um bloco truncado ou com CRC errado (execução interrompida)
+ * encerra a leitura: {@link #isComplete()} diz se o arquivo chegou ao fim normal.
+ *
+ * Conversão para o arquivo organizado em texto:
+ * {@code java ... seabdetector.ColumnarResultReader respostas_organizadas.col [respostas_organizadas.txt]}.
+ */
+public class ColumnarResultReader implements Closeable {
+
+    /** Linhas de um bloco, coluna a coluna. */
+    public static class Block {
+        public final int linhas;
+        /** Código da instituição de cada linha (ver {@link ColumnarResultReader#institution(int)}). */
+        public final int[] instituicoes;
+        public final String[] respondentes;
+        /** Uma coluna por questão, na ordem de {@link ColumnarResultReader#getQuestions()}; um código por linha. */
+        public final byte[][] colunas;
+
+        Block(int linhas, int[] instituicoes, String[] respondentes, byte[][] colunas) {
+            this.linhas = linhas;
+            this.instituicoes = instituicoes;
+            this.respondentes = respondentes;
+            this.colunas = colunas;
+        }
+    }
+
+    private final Path caminho;
+    private final DataInputStream in;
+    private final List<String> questoes;
+    private final List<String> respostas = new ArrayList<>();
+    private final List<String> instituicoes = new ArrayList<>();
+    private boolean fim;
+    private boolean completo;
+    private long linhasLidas;
+
+    public ColumnarResultReader(Path caminho) throws IOException {
+        this.caminho = caminho;
+        this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(caminho), 1 << 16));
+        try {
+            if (in.readLong() != ColumnarResultWriter.MAGICO) throw new IOException("Não é um arquivo colunar de respostas: " + caminho);
+            int versao = in.readInt();
+            if (versao != ColumnarResultWriter.VERSAO) throw new IOException("Versão " + versao + " não suportada: " + caminho);
+            int n = in.readInt();
+            List<String> nomes = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) nomes.add(in.readUTF());
+            this.questoes = Collections.unmodifiableList(nomes);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        respostas.add("");
+        respostas.add("?");
+    }
+
+    /** Questões (colunas), na ordem do cabeçalho do arquivo organizado. */
+    public List<String> getQuestions() {
+        return questoes;
+    }
+
+    /** Texto da resposta com o código (como no arquivo organizado: "" em branco, "?" dupla marcação). */
+    public String answer(int codigo) {
+        return respostas.get(codigo & 0xFF);
+    }
+
+    public String institution(int codigo) {
+        return instituicoes.get(codigo);
+    }
+
+    /**
+     * Próximo bloco, ou null no fim do arquivo (ou no primeiro bloco truncado/corrompido).
+     * Os dicionários crescem a cada bloco; os códigos de um bloco valem a partir dele.
+     */
+    public Block next() throws IOException {
+        if (fim) return null;
+        byte[] bytes;
+        try {
+            int marca = in.readInt();
+            if (marca == ColumnarResultWriter.FIM) {
+                long total = in.readLong();
+                completo = total == linhasLidas;
+                if (!completo) Log.warn("Total de linhas do arquivo colunar não confere", "arquivo", caminho, "esperado", total, "lido", linhasLidas);
+                fim = true;
+                return null;
+            }
+            if (marca != ColumnarResultWriter.BLOCO) throw new IOException("marca de bloco inválida");
+            bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            if (in.readInt() != (int) crc.getValue()) throw new IOException("CRC do bloco não confere");
+        } catch (EOFException e) {
+            return interrupted("arquivo truncado");
+        } catch (IOException e) {
+            return interrupted(e.getMessage());
+        }
+
+        DataInputStream corpo = new DataInputStream(new ByteArrayInputStream(bytes));
+        int linhas = corpo.readInt();
+        for (int i = corpo.readInt(); i > 0; i--) respostas.add(corpo.readUTF());
+        for (int i = corpo.readInt(); i > 0; i--) instituicoes.add(corpo.readUTF());
+        int[] codigosInstituicao = new int[linhas];
+        for (int l = 0; l < linhas; l++) codigosInstituicao[l] = corpo.readInt();
+        String[] respondentes = new String[linhas];
+        for (int l = 0; l < linhas; l++) respondentes[l] = corpo.readUTF();
+        byte[][] colunas = new byte[questoes.size()][linhas];
+        for (byte[] coluna : colunas) corpo.readFully(coluna);
+        linhasLidas += linhas;
+        return new Block(linhas, codigosInstituicao, respondentes, colunas);
+    }
+
+    private Block interrupted(String motivo) {
+        Log.warn("Arquivo colunar interrompido; lidos só os blocos completos", "arquivo", caminho, "linhas", linhasLidas, "motivo", motivo);
+        fim = true;
+        return null;
+    }
+
+    /** true se a leitura chegou à marca de fim gravada no fechamento do arquivo. */
+    public boolean isComplete() {
+        return completo;
+    }
+
+    public long getRowsRead() {
+        return linhasLidas;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Reescreve o arquivo colunar no formato do arquivo organizado em texto (mesmo cabeçalho e mesmas linhas).
+     * @return Linhas convertidas.
+     */
+    public static long toCsv(Path colunar, String caminhoTXT) throws IOException {
+        try (ColumnarResultReader leitor = new ColumnarResultReader(colunar);
+             OrganizedResultWriter escritor = new OrganizedResultWriter(caminhoTXT, new LinkedHashSet<>(leitor.getQuestions()), false)) {
+            String[] respostas = new String[leitor.getQuestions().size()];
+            for (Block bloco = leitor.next(); bloco != null; bloco = leitor.next()) {
+                for (int l = 0; l < bloco.linhas; l++) {
+                    for (int q = 0; q < respostas.length; q++) respostas[q] = leitor.answer(bloco.colunas[q][l]);
+                    escritor.writeRow(leitor.institution(bloco.instituicoes[l]), bloco.respondentes[l], respostas);
+                }
+            }
+            return leitor.getRowsRead();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Uso: java ... seabdetector.ColumnarResultReader <arquivo.col> [saida.txt]");
+            System.exit(2);
+        }
+        Path colunar = Paths.get(args[0]);
+        String saida = args.length > 1 ? args[1] : PATH_OUTPUT_DIR + OUTPUT_TXT_FILE_ORGANIZED;
+        long linhas = toCsv(colunar, saida);
+        Log.flush();
+        System.out.printf("%d linhas convertidas: %s%n", linhas, saida);
+    }
+}
@@ -0,0 +1,153 @@
+package seabdetector;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import static seabdetector.DataModels.*;
+
+/**
+ * Versão binária e colunar do arquivo organizado (1 linha por caderno), gravada junto com o texto ou no lugar dele.
+ *
+ * Cada resposta vira um código de 1 byte de um dicionário (0 = em branco, 1 = dupla marcação "?", os demais textos
+ * na ordem em que aparecem), e as linhas são agrupadas em blocos de {@code seab.columnar.block} cadernos gravados
+ * coluna a coluna: instituição (código de um dicionário próprio), respondente e um vetor de bytes por questão.
+ * Cada bloco traz só as entradas novas dos dicionários e termina com um CRC32; um arquivo interrompido no meio de um
+ * bloco continua legível até o último bloco completo.
+ *
+ * Formato (inteiros big-endian, textos em UTF modificado do DataOutputStream):
+ * <pre>
+ *   cabeçalho: "SEABCOL1", versão, nº de questões, nomes das questões
+ *   bloco:     BLOCO, tamanho do corpo, corpo, CRC32 do corpo
+ *     corpo:   nº de linhas, respostas novas (n + textos), instituições novas (n + textos),
+ *              código da instituição por linha (int), respondente por linha (texto), nº de linhas bytes por questão
+ *   fim:       FIM, total de linhas
+ * </pre>
+ * Leitura e conversão de volta para o texto: {@link ColumnarResultReader}.
+ */
+public class ColumnarResultWriter implements Closeable {
+
+    static final long MAGICO = 0x53454142434F4C31L; // "SEABCOL1"
+    static final int VERSAO = 1;
+    static final int BLOCO = 0x424C4F43; // "BLOC"
+    static final int FIM = 0x46494D21;   // "FIM!"
+    static final byte EM_BRANCO = 0;
+    static final byte DUPLA_MARCACAO = 1;
+
+    private final DataOutputStream out;
+    private final String[] questoes;
+    private final int linhasPorBloco;
+    private final boolean flushPorCaderno;
+
+    private final Map<String, Integer> codigosResposta = new HashMap<>();
+    private final List<String> respostasNovas = new ArrayList<>();
+    private final int[] codigoPorOpcao = new int[256]; // OptionCodes → código do arquivo (-1 = ainda não visto)
+    private final Map<String, Integer> codigosInstituicao = new HashMap<>();
+    private final List<String> instituicoesNovas = new ArrayList<>();
+
+    // Bloco em montagem
+    private final int[] instituicoes;
+    private final String[] respondentes;
+    private final byte[][] colunas;
+    private int linhas;
+    private long totalLinhas;
+
+    public ColumnarResultWriter(String caminho, Set<String> todasAsQuestoes, int linhasPorBloco, boolean flushPorCaderno) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(caminho, false), 1 << 16));
+        this.questoes = todasAsQuestoes.toArray(new String[0]);
+        this.linhasPorBloco = Math.max(1, linhasPorBloco);
+        this.flushPorCaderno = flushPorCaderno;
+        this.instituicoes = new int[this.linhasPorBloco];
+        this.respondentes = new String[this.linhasPorBloco];
+        this.colunas = new byte[questoes.length][this.linhasPorBloco];
+        codigosResposta.put("", (int) EM_BRANCO);
+        codigosResposta.put("?", (int) DUPLA_MARCACAO);
+        Arrays.fill(codigoPorOpcao, -1);
+
+        out.writeLong(MAGICO);
+        out.writeInt(VERSAO);
+        out.writeInt(questoes.length);
+        for (String questao : questoes) out.writeUTF(questao);
+        out.flush();
+    }
+
+    /**
+     * Acrescenta a linha de um caderno completo; o bloco é gravado quando enche.
+     * Com {@code flushPorCaderno} (modo pasta monitorada) cada caderno fecha o seu bloco, para o arquivo acompanhar a leitura.
+     */
+    public void writeBooklet(BookletAnswers caderno) throws IOException {
+        instituicoes[linhas] = codigosInstituicao.computeIfAbsent(caderno.chave.instituicao(), k -> {
+            instituicoesNovas.add(k);
+            return codigosInstituicao.size();
+        });
+        respondentes[linhas] = caderno.chave.respondente();
+        for (int q = 0; q < questoes.length; q++) {
+            int opcao = caderno.code(questoes[q]) & 0xFF;
+            if (codigoPorOpcao[opcao] < 0) codigoPorOpcao[opcao] = code(OptionCodes.text((byte) opcao)) & 0xFF;
+            colunas[q][linhas] = (byte) codigoPorOpcao[opcao];
+        }
+        linhas++;
+        if (linhas == linhasPorBloco || flushPorCaderno) writeBlock();
+    }
+
+    private byte code(String resposta) throws IOException {
+        Integer codigo = codigosResposta.get(resposta);
+        if (codigo == null) {
+            if (codigosResposta.size() >= 256) throw new IOException("Mais de 256 respostas distintas; não cabem em 1 byte: " + resposta);
+            codigo = codigosResposta.size();
+            codigosResposta.put(resposta, codigo);
+            respostasNovas.add(resposta);
+        }
+        return (byte) (int) codigo;
+    }
+
+    private void writeBlock() throws IOException {
+        if (linhas == 0) return;
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(linhas * (questoes.length + 16));
+        DataOutputStream corpo = new DataOutputStream(buffer);
+        corpo.writeInt(linhas);
+        corpo.writeInt(respostasNovas.size());
+        for (String r : respostasNovas) corpo.writeUTF(r);
+        corpo.writeInt(instituicoesNovas.size());
+        for (String i : instituicoesNovas) corpo.writeUTF(i);
+        for (int l = 0; l < linhas; l++) corpo.writeInt(instituicoes[l]);
+        for (int l = 0; l < linhas; l++) corpo.writeUTF(respondentes[l]);
+        for (byte[] coluna : colunas) corpo.write(coluna, 0, linhas);
+        corpo.flush();
+        byte[] bytes = buffer.toByteArray();
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        out.writeInt(BLOCO);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        out.writeInt((int) crc.getValue());
+        out.flush();
+
+        totalLinhas += linhas;
+        linhas = 0;
+        respostasNovas.clear();
+        instituicoesNovas.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            writeBlock();
+            out.writeInt(FIM);
+            out.writeLong(totalLinhas);
+        } finally {
+            out.close();
+        }
+    }
+}
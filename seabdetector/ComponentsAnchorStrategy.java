@@ -0,0 +1,74 @@
+package seabdetector;
+
+import org.opencv.core.*;
+import org.opencv.imgproc.Imgproc;
+
+import static seabdetector.Constants.*;
+
+/**
+ * Âncora por componentes conexos: um único connectedComponentsWithStats devolve área e caixa de todas as
+ * manchas da região, sem extrair nem aproximar contornos um a um.
+ *
+ * A região é binarizada com Otsu (e não com o limiar adaptativo dos contornos, que esvazia o miolo de
+ * quadrados maiores que o bloco) para que a âncora apareça como mancha sólida. Além de área e proporção,
+ * exige preenchimento mínimo da caixa, o que descarta anéis (bolhas) e letras.
+ */
+public class ComponentsAnchorStrategy implements AnchorStrategy {
+
+    public static final String NOME = "componentes";
+    static final ComponentsAnchorStrategy INSTANCIA = new ComponentsAnchorStrategy();
+
+    // Fração mínima da caixa ocupada pela mancha (quadrado sólido ≈ 1.0; bolha vazada bem menos)
+    private static final double PREENCHIMENTO_MINIMO = 0.75;
+
+    @Override
+    public String name() {
+        return NOME;
+    }
+
+    @Override
+    public Rect findInRegion(Mat imagem, Rect roi, String regiao, String outputDir, String nomeArquivoBase, int[] candidatos, ScanGeometry geo) {
+        Mat recorte = null, gray = null, binaria = null, rotulos = null, stats = null, centroides = null;
+        try {
+            recorte = new Mat(imagem, roi);
+            gray = new Mat(); binaria = new Mat(); rotulos = new Mat(); stats = new Mat(); centroides = new Mat();
+
+            Imgproc.cvtColor(recorte, gray, Imgproc.COLOR_BGR2GRAY);
+            Imgproc.threshold(gray, binaria, 0, 255, Imgproc.THRESH_BINARY_INV | Imgproc.THRESH_OTSU);
+            int n = Imgproc.connectedComponentsWithStats(binaria, rotulos, stats, centroides, 8, CvType.CV_32S);
+            candidatos[0] += Math.max(0, n - 1);
+
+            // Copia a tabela de estatísticas de uma vez (stats.get por célula seria uma chamada JNI cada)
+            int colunas = stats.cols();
+            int[] tabela = new int[n * colunas];
+            stats.get(0, 0, tabela);
+
+            Rect melhor = null;
+            int maiorArea = 0;
+            for (int i = 1; i < n; i++) { // 0 é o fundo
+                int base = i * colunas;
+                int area = tabela[base + Imgproc.CC_STAT_AREA];
+                if (area < geo.anchorMinArea || area > geo.anchorMaxArea) continue;
+
+                int w = tabela[base + Imgproc.CC_STAT_WIDTH];
+                int h = tabela[base + Imgproc.CC_STAT_HEIGHT];
+                double aspect = w > h ? (double) w / h : (double) h / w;
+                if (aspect > ANCHOR_ASPECT_TOLERANCE) continue;
+                if (area < PREENCHIMENTO_MINIMO * w * h) continue;
+
+                if (area > maiorArea) {
+                    maiorArea = area;
+                    melhor = new Rect(roi.x + tabela[base + Imgproc.CC_STAT_LEFT], roi.y + tabela[base + Imgproc.CC_STAT_TOP], w, h);
+                }
+            }
+            return melhor;
+        } finally {
+            if (recorte != null) recorte.release();
+            if (gray != null) gray.release();
+            if (binaria != null) binaria.release();
+            if (rotulos != null) rotulos.release();
+            if (stats != null) stats.release();
+            if (centroides != null) centroides.release();
+        }
+    }
+}
@@ -34,15 +34,16 @@ public class ConfigLoader {
                 }
             }
         } catch (IOException e) {
-            System.err.println("Erro ao ler configuração: " + e.getMessage());
+            Log.error("Erro ao ler configuração", "arquivo", caminhoConfig, "erro", e.getMessage());
         } catch (NumberFormatException e) {
-            System.err.println("Erro de formato de número em config.txt: " + e.getMessage());
+            Log.error("Erro de formato de número em config.txt", "arquivo", caminhoConfig, "erro", e.getMessage());
         }
         return lista;
     }
 
     public static Map<String, FolhaTemplate> loadTemplates(String caminhoTemplates) {
         Map<String, FolhaTemplate> templates = new HashMap<>();
+        Map<String, String> estrategias = new HashMap<>(); // "ANCORA:" pode vir antes ou depois de "DADOS:"
         String folhaAtual = null;
         try (BufferedReader br = new BufferedReader(new FileReader(caminhoTemplates))) {
             String line;
@@ -53,6 +54,15 @@ public class ConfigLoader {
                     folhaAtual = line.replace("[", "").replace("]", "").trim();
                     continue;
                 }
+                if (folhaAtual != null && line.startsWith("ANCORA:")) {
+                    String nome = line.substring(7).trim().toLowerCase();
+                    if (AnchorStrategy.NOMES.contains(nome)) {
+                        estrategias.put(folhaAtual, nome);
+                    } else {
+                        Log.warn("Estratégia de âncora desconhecida; usando a padrão", "arquivo", caminhoTemplates, "folha", folhaAtual, "estrategia", nome);
+                    }
+                    continue;
+                }
                 if (folhaAtual != null && line.startsWith("DADOS: ")) {
                     String[] partes = line.substring(7).split(";");
                     if (partes.length == 6) {
@@ -63,7 +73,7 @@ public class ConfigLoader {
                         String[] bl = partes[4].trim().split(",");
                         String[] brCoords = partes[5].trim().split(",");
                         if (tl.length != 2 || tr.length != 2 || bl.length != 2 || brCoords.length != 2) {
-                            System.err.println("⚠ Erro de formato de coordenada para " + folhaAtual);
+                            Log.warn("Coordenada mal formatada na linha DADOS; linha ignorada", "arquivo", caminhoTemplates, "folha", folhaAtual);
                             continue;
                         }
                         Point pt_tl = new Point(Integer.parseInt(tl[0].trim()), Integer.parseInt(tl[1].trim()));
@@ -74,13 +84,17 @@ public class ConfigLoader {
                         MatOfPoint2f idealPoints = new MatOfPoint2f(pt_tl, pt_tr, pt_bl, pt_br);
                         templates.put(folhaAtual, new FolhaTemplate(idealSize, idealPoints));
                     } else {
-                        System.err.println("⚠ Aviso: Linha 'DADOS' mal formatada para " + folhaAtual + ". Esperados 6 campos, encontrados " + partes.length);
+                        Log.warn("Linha DADOS mal formatada; esperados 6 campos", "arquivo", caminhoTemplates, "folha", folhaAtual, "campos", partes.length);
                     }
                 }
             }
         } catch (IOException | NumberFormatException e) {
-            System.err.println("Erro ao ler templates: " + e.getMessage());
+            Log.error("Erro ao ler templates", "arquivo", caminhoTemplates, "erro", e.getMessage());
         }
+        estrategias.forEach((folha, nome) -> {
+            FolhaTemplate t = templates.get(folha);
+            if (t != null) t.anchorStrategy = nome;
+        });
         return templates;
     }
 }
\ No newline at end of file
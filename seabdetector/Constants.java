@@ -12,15 +12,99 @@ public class Constants {
     // --- Caminhos de Arquivo ---
     public static final String PATH_CONFIG = "testes" + S + "config.txt";
     public static final String PATH_TEMPLATES = "testes" + S + "templates.txt";
+    // Pacote binário pré-compilado de config.txt + templates.txt (ver LayoutBundle); vazio = ler sempre o texto
+    public static final String LAYOUT_BUNDLE = System.getProperty("seab.layout.bundle", "testes" + S + "layout.bin");
+    // Layouts por edição (<ano>_<tipoProva>/config.txt + templates.txt) e quantas edições ficam carregadas (ver LayoutRegistry)
+    public static final String LAYOUTS_DIR = System.getProperty("seab.layouts.dir", "testes" + S + "layouts");
+    public static final int LAYOUT_CACHE_SIZE = Integer.getInteger("seab.layouts.cache", 8);
     public static final String PATH_INPUT_DIR = "testes" + S + "entradas" + S + "entradas_novos_templates" + S;
     public static final String PATH_OUTPUT_DIR = "testes" + S + "saidas" + S + "saidas_qr" + S;
     public static final String OUTPUT_TXT_FILE_ORGANIZED = "respostas_organizadas.txt";
+    public static final String OUTPUT_COLUMNAR_FILE = "respostas_organizadas.col";
+    // Formato do arquivo organizado: texto (padrão), colunar (ver ColumnarResultWriter) ou ambos; cadernos por bloco colunar.
+    public static final String OUTPUT_FORMAT = System.getProperty("seab.output.format", "texto");
+    public static final int COLUMNAR_BLOCK_ROWS = Integer.getInteger("seab.columnar.block", 4096);
+    // Arquivo organizado dividido por instituição ou por balde do hash da instituição (vazio = um arquivo só; ver
+    // ShardedResultWriter), número de baldes e threads de escrita das partes.
+    public static final String OUTPUT_SHARDS = System.getProperty("seab.output.shards", "");
+    public static final int OUTPUT_SHARD_BUCKETS = Integer.getInteger("seab.output.shard.buckets", 16);
+    public static final int OUTPUT_SHARD_WRITERS = Integer.getInteger("seab.output.shard.writers", 4);
+    // Critério da fatia de cada processo no modo "particao K/N": hash do caminho relativo ou da subpasta de
+    // primeiro nível (instituicao). Ver Partition.
+    public static final String PARTITION_BY = System.getProperty("seab.partition.by", "caminho");
     public static final String OUTPUT_IMAGE_PREFIX = "resultado_";
     public static final String OUTPUT_FAIL_PREFIX = "falha_";
     public static final String OUTPUT_CROP_PREFIX = "recorte_";
+    public static final String OUTPUT_FAILURES_FILE = "falhas.txt";
+    
+    // --- Paralelismo ---
+    // Threads que executam QR/âncoras/warp/OMR. A consolidação (pulmão) continua em uma única thread.
+    public static final int WORKER_COUNT = Integer.getInteger("seab.workers", 1);
+
+    // --- Modo serviço (HTTP) ---
+    // Só a máquina local por padrão; 0.0.0.0 aceita as estações da rede.
+    public static final String SERVICE_HOST = System.getProperty("seab.service.host", "127.0.0.1");
+    public static final int SERVICE_PORT = Integer.getInteger("seab.service.port", 8080);
+    // Folhas esperando um leitor; além disso a requisição recebe 429 (tente de novo).
+    public static final int SERVICE_QUEUE = Integer.getInteger("seab.service.queue", 64);
+    // Tamanho máximo do corpo de uma requisição (imagem ou ZIP), em MB; acima disso, 413. Vale também para um quadro.
+    public static final int SERVICE_MAX_MB = Integer.getInteger("seab.service.max.mb", 64);
+    // ZIP: total descompactado (MB) e número de entradas; além disso, 413. Cada entrada também é limitada a seab.service.max.mb.
+    public static final int SERVICE_ZIP_MAX_MB = Integer.getInteger("seab.service.zip.max.mb", 256);
+    public static final int SERVICE_ZIP_ENTRIES = Integer.getInteger("seab.service.zip.entries", 64);
+    // Modo quadros: folhas recebidas pela entrada padrão esperando um leitor; além disso a leitura do pipe para.
+    public static final int STREAM_IN_FLIGHT = Integer.getInteger("seab.stream.inflight", 64);
+    
+    // --- Descoberta de Entradas ---
+    // Percorre cada subpasta de primeiro nível (uma por instituição) em uma thread própria.
+    public static final boolean DISCOVERY_PARALLEL = Boolean.getBoolean("seab.discovery.parallel");
+    
+    // Leitura antecipada: quantos arquivos a thread de I/O lê à frente do processamento (0 = desligado, usa imread).
+    // Com seab.io.mmap=true os arquivos são mapeados (FileChannel.map) em vez de lidos em buffers diretos do pool.
+    public static final int PREFETCH_AHEAD = Integer.getInteger("seab.io.prefetch", 0);
+    public static final boolean PREFETCH_MMAP = Boolean.getBoolean("seab.io.mmap");
+    
+    // Número de arquivos ZIP lidos ao mesmo tempo no modo "zip".
+    public static final int ZIP_READERS = Integer.getInteger("seab.zip.readers", 2);
+    
+    // --- Métricas ---
+    // Intervalo (s) entre snapshots de metrics.json / seab_metrics.prom na pasta de saída (0 = só o snapshot final).
+    public static final int METRICS_INTERVAL_S = Integer.getInteger("seab.metrics.interval.s", 10);
+    // Arquivo .jfr: se informado, grava os eventos seab.Sheet/seab.Stage do início ao fim da execução (resumo: JfrSummary).
+    public static final String JFR_OUTPUT = System.getProperty("seab.jfr", "");
+    
+    // --- Cache de resultados (ver ResultCache) ---
+    // Pasta do cache endereçado pelo conteúdo das imagens (vazio = desligado; p.ex. testes/cache) e tamanho máximo em MB.
+    // Desligado por padrão: a chave exige ler cada imagem inteira uma vez a mais, o que só compensa em reexecuções.
+    public static final String CACHE_DIR = System.getProperty("seab.cache.dir", "");
+    public static final long CACHE_MAX_MB = Long.getLong("seab.cache.max.mb", 1024);
+    
+    // --- Folhas redigitalizadas (ver DuplicateDetector) ---
+    // Política: desligado, primeira (a cópia nova, mesma miniatura e mesmo QR, é descartada) ou ultima (substitui a anterior).
+    public static final String DEDUP_POLICY = System.getProperty("seab.dedup", "desligado");
+    // Folhas recentes no índice, bits de dHash e células da miniatura 64x64 que podem diferir numa cópia.
+    public static final int DEDUP_RECENT = Integer.getInteger("seab.dedup.recent", 2000);
+    public static final int DEDUP_HASH_BITS = Integer.getInteger("seab.dedup.hash.bits", 12);
+    public static final int DEDUP_MAX_CELLS = Integer.getInteger("seab.dedup.cells", 3);
+    
+    // --- Modo Pasta Monitorada (watch) ---
+    // Intervalo de varredura dos eventos do WatchService e tempo mínimo sem alteração
+    // de tamanho/data para considerar que o scanner terminou de gravar o arquivo.
+    public static final long WATCH_POLL_MS = Long.getLong("seab.watch.poll.ms", 500);
+    public static final long WATCH_STABLE_MS = Long.getLong("seab.watch.stable.ms", 1500);
     
     // --- Parâmetros de Detecção de Âncora ---
     public static final int ANCHOR_SEARCH_SIZE = 120;
+    // Lados das janelas de canto tentadas em sequência quando a âncora não é encontrada (ver AnchorPriors)
+    // e meia-largura da janela justa em torno da posição estimada a partir das folhas anteriores.
+    public static final String ANCHOR_SEARCH_LEVELS = System.getProperty("seab.anchor.levels", ANCHOR_SEARCH_SIZE + ",250,500");
+    public static final int ANCHOR_PRIOR_MARGIN = Integer.getInteger("seab.anchor.prior.margin", 40);
+    // Estratégia de localização das âncoras quando o template não define uma (contornos, componentes, correlacao).
+    public static final String ANCHOR_STRATEGY = System.getProperty("seab.anchor.strategy", "contornos");
+    // Resolução em que templates.txt e os parâmetros de âncora/QR foram medidos; seab.scan.dpi fixa a resolução
+    // das digitalizações (0 = estimar pelo tamanho da página). Ver ScanGeometry.
+    public static final int TEMPLATE_DPI = Integer.getInteger("seab.template.dpi", 200);
+    public static final int SCAN_DPI = Integer.getInteger("seab.scan.dpi", 0);
     public static final double ANCHOR_MIN_AREA = 300.0;
     public static final double ANCHOR_MAX_AREA = 500.0;
     public static final double ANCHOR_APPROX_EPSILON = 0.08;
@@ -38,6 +122,11 @@ public class Constants {
     public static final Scalar COLOR_BLUE = new Scalar(255, 0, 0);
     public static final Scalar COLOR_CONTOUR = new Scalar(0, 0, 255); 
 
+    public static boolean isImagemSuportada(String nomeArquivo) {
+        String nome = nomeArquivo.toLowerCase();
+        return nome.endsWith(".jpg") || nome.endsWith(".jpeg") || nome.endsWith(".png") || nome.endsWith(".tif") || nome.endsWith(".tiff");
+    }
+
     // O tradutor de alternativas deve ser um método estático em uma classe de utilidade ou aqui.
     public static String traduzAlternativa(String alt) {
         switch (alt.toUpperCase()) {
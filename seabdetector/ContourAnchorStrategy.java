@@ -0,0 +1,99 @@
+package seabdetector;
+
+import org.opencv.core.*;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+import java.util.*;
+
+import static seabdetector.Constants.*;
+
+/**
+ * Método original de detecção: limiarização adaptativa, findContours e aproximação poligonal de cada contorno.
+ */
+public class ContourAnchorStrategy implements AnchorStrategy {
+
+    public static final String NOME = "contornos";
+    static final ContourAnchorStrategy INSTANCIA = new ContourAnchorStrategy();
+
+    @Override
+    public String name() {
+        return NOME;
+    }
+
+    /** Maior contorno externo com 4 vértices, área entre os limites de {@code geo} e proporção quase quadrada. */
+    @Override
+    public Rect findInRegion(Mat imagem, Rect roi, String regionName, String outputDir, String nomeArquivoBase, int[] contornosExaminados, ScanGeometry geo) {
+        Mat regiao = null; Mat gray = null; Mat thresh = null; Mat hierarchy = null; Mat debugContornos = null;
+        
+        try {
+            // --- Processamento da Região ---
+            regiao = new Mat(imagem, roi);
+            gray = new Mat(); thresh = new Mat(); hierarchy = new Mat();
+            List<MatOfPoint> contornos = new ArrayList<>();
+
+            Imgproc.cvtColor(regiao, gray, Imgproc.COLOR_BGR2GRAY);
+            Imgproc.adaptiveThreshold(gray, thresh, 255, Imgproc.ADAPTIVE_THRESH_MEAN_C,
+                        Imgproc.THRESH_BINARY_INV, geo.adaptiveBlockSize, ADAPTIVE_THRESH_C);
+            
+            // Imgcodecs.imwrite(outputDir + "DEBUG_ANCHOR_TH_" + regionName.replace(" ", "_") + "_" + nomeArquivoBase + ".jpg", thresh);
+            
+            Imgproc.findContours(thresh.clone(), contornos, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
+            contornosExaminados[0] += contornos.size();
+            
+            // Imagem com todos os contornos: só é montada no nível de depuração detalhado
+            boolean depurar = Tuning.getDebugLevel() >= Tuning.DEBUG_DETALHADO;
+            if (depurar) {
+                debugContornos = new Mat(regiao.size(), regiao.type(), new Scalar(255, 255, 255));
+                Imgproc.drawContours(debugContornos, contornos, -1, COLOR_CONTOUR, 1);
+            }
+            
+            Rect melhorCaixa = null;
+            double maxAreaEncontrada = 0;
+            
+            if (Log.isDebugEnabled()) Log.debug("Contornos na região", "arquivo", nomeArquivoBase, "etapa", "anchors", "regiao", regionName, "janela", roi.width, "contornos", contornos.size());
+            
+            for (MatOfPoint contorno : contornos) {
+                double area = Imgproc.contourArea(contorno);
+                if (area < geo.anchorMinArea || area > geo.anchorMaxArea) {
+                    contorno.release(); continue;
+                }
+
+                MatOfPoint2f contorno2f = new MatOfPoint2f(contorno.toArray());
+                MatOfPoint2f aprox = new MatOfPoint2f();
+                double perimetro = Imgproc.arcLength(contorno2f, true);
+                Imgproc.approxPolyDP(contorno2f, aprox, ANCHOR_APPROX_EPSILON * perimetro, true);
+                
+                if (aprox.total() == 4) {
+                    MatOfPoint aproxPt = new MatOfPoint(aprox.toArray());
+                    Rect caixa = Imgproc.boundingRect(aproxPt);
+                    double aspect = (caixa.width > caixa.height) ? 
+                            (double)caixa.width / caixa.height : (double)caixa.height / caixa.width;
+                    
+                    if (aspect <= ANCHOR_ASPECT_TOLERANCE) {
+                        if (area > maxAreaEncontrada) {
+                            maxAreaEncontrada = area;
+                            caixa.x += roi.x; // Adiciona o offset da ROI
+                            caixa.y += roi.y;
+                            melhorCaixa = caixa;
+                        }
+                    }
+                    aproxPt.release();
+                }
+                contorno.release(); contorno2f.release(); aprox.release();
+            }
+            
+            if (depurar) {
+                Imgcodecs.imwrite(outputDir + "DEBUG_ANCHOR_ALL_CONTOURS_" + regionName.replace(" ", "_") + "_" + roi.width + "_" + nomeArquivoBase + ".jpg", debugContornos);
+            }
+
+            //if (melhorCaixa != null) System.out.println("    ✅ Encontrada âncora (" + regionName + ")! Área: " + String.format("%.1f", maxAreaEncontrada));
+            return melhorCaixa;
+        } finally {
+            if (regiao != null) regiao.release(); 
+            if (gray != null) gray.release(); 
+            if (thresh != null) thresh.release(); 
+            if (hierarchy != null) hierarchy.release();
+            if (debugContornos != null) debugContornos.release();
+        }
+    }
+}
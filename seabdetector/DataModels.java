@@ -2,7 +2,12 @@ package seabdetector;
 
 import org.opencv.core.MatOfPoint2f;
 import org.opencv.core.Size;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class DataModels {
 
@@ -18,6 +23,7 @@ public class DataModels {
     public static class FolhaTemplate {
         public Size idealSize;
         public MatOfPoint2f idealPoints;
+        public String anchorStrategy; // Linha "ANCORA:" do templates.txt; null = estratégia padrão
 
         public FolhaTemplate(Size size, MatOfPoint2f points) {
             this.idealSize = size;
@@ -46,4 +52,234 @@ public class DataModels {
             return respondente;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Códigos de 1 byte das opções de resposta, comuns a todos os layouts: 0 = em branco, 1 = dupla marcação e,
+     * a partir de 2, as opções do config.txt ("A", "NQN"...) na ordem em que aparecem. O texto de exibição
+     * ({@link Constants#traduzAlternativa}) é calculado uma vez por código e só usado na exportação.
+     */
+    public static final class OptionCodes {
+        public static final byte EM_BRANCO = 0;
+        public static final byte DUPLA_MARCACAO = 1;
+
+        private static final Map<String, Byte> codigos = new ConcurrentHashMap<>();
+        private static volatile String[] opcoes = {"", "?"};
+        private static volatile String[] textos = {"", "?"};
+
+        static {
+            codigos.put("", EM_BRANCO);
+            codigos.put("?", DUPLA_MARCACAO);
+        }
+
+        private OptionCodes() {
+        }
+
+        /** Código da opção (como está no config.txt), criado na primeira vez que aparece. */
+        public static byte code(String opcao) {
+            Byte codigo = codigos.get(opcao);
+            return codigo != null ? codigo : register(opcao);
+        }
+
+        private static synchronized byte register(String opcao) {
+            Byte codigo = codigos.get(opcao);
+            if (codigo != null) return codigo;
+            int n = opcoes.length;
+            if (n > 0xFF) throw new IllegalStateException("Mais de 256 opções de resposta distintas: " + opcao);
+            // Cópia na escrita: os workers leem os vetores sem trava
+            String[] novasOpcoes = Arrays.copyOf(opcoes, n + 1);
+            String[] novosTextos = Arrays.copyOf(textos, n + 1);
+            novasOpcoes[n] = opcao;
+            novosTextos[n] = Constants.traduzAlternativa(opcao);
+            opcoes = novasOpcoes;
+            textos = novosTextos;
+            codigos.put(opcao, (byte) n);
+            return (byte) n;
+        }
+
+        /** Opção como está no config.txt ("" em branco, "?" dupla marcação). */
+        public static String option(byte codigo) {
+            return opcoes[codigo & 0xFF];
+        }
+
+        /** Texto de exibição do arquivo organizado ("" em branco, "?" dupla marcação). */
+        public static String text(byte codigo) {
+            return textos[codigo & 0xFF];
+        }
+    }
+
+    /**
+     * Questões de uma folha de um layout, na ordem de leitura. Internada: todas as folhas lidas com o mesmo layout
+     * apontam para a mesma instância, e cada folha guarda só os códigos das respostas.
+     */
+    public static final class QuestionSet {
+        private static final Map<List<String>, QuestionSet> internadas = new ConcurrentHashMap<>();
+
+        public final List<String> questoes;
+        private final Map<String, Integer> posicoes = new HashMap<>();
+
+        private QuestionSet(List<String> questoes) {
+            this.questoes = questoes;
+            for (int i = 0; i < questoes.size(); i++) posicoes.put(questoes.get(i), i);
+        }
+
+        public static QuestionSet of(List<String> questoes) {
+            QuestionSet existente = internadas.get(questoes);
+            return existente != null ? existente : internadas.computeIfAbsent(List.copyOf(questoes), QuestionSet::new);
+        }
+
+        /** Posição da questão, ou -1 se não é desta folha. */
+        public int indexOf(String questao) {
+            return posicoes.getOrDefault(questao, -1);
+        }
+
+        public int size() {
+            return questoes.size();
+        }
+    }
+
+    /** Respostas de uma folha: as questões do layout (internadas) e um código de {@link OptionCodes} por questão. */
+    public static final class SheetAnswers {
+        public final QuestionSet questoes;
+        public final byte[] codigos;
+
+        public SheetAnswers(QuestionSet questoes, byte[] codigos) {
+            this.questoes = questoes;
+            this.codigos = codigos;
+        }
+
+        /** Código da resposta, ou -1 se a questão não é desta folha. */
+        public int code(String questao) {
+            int i = questoes.indexOf(questao);
+            return i < 0 ? -1 : codigos[i] & 0xFF;
+        }
+
+        /** Texto de exibição da resposta, ou null se a questão não é desta folha. */
+        public String text(String questao) {
+            int i = questoes.indexOf(questao);
+            return i < 0 ? null : OptionCodes.text(codigos[i]);
+        }
+
+        public int size() {
+            return codigos.length;
+        }
+    }
+
+    /**
+     * Instituição (5 caracteres) e respondente (4) do QR empacotados em um long, 7 bits por caractere ASCII.
+     * É o que o caderno guarda do QR até a exportação. Textos fora desse formato ficam no campo {@code texto}.
+     */
+    public static final class QrKey {
+        private static final int TAM_INSTITUICAO = 5;
+        private static final int TAM_RESPONDENTE = 4;
+
+        private final long empacotada;
+        private final String[] texto; // {instituição, respondente} quando não cabe no long
+
+        private QrKey(long empacotada, String[] texto) {
+            this.empacotada = empacotada;
+            this.texto = texto;
+        }
+
+        public static QrKey of(QrData dadosQR) {
+            String chave = dadosQR.instituicao + dadosQR.respondente;
+            if (dadosQR.instituicao.length() != TAM_INSTITUICAO || dadosQR.respondente.length() != TAM_RESPONDENTE) {
+                return new QrKey(0, new String[] {dadosQR.instituicao, dadosQR.respondente});
+            }
+            long empacotada = 0;
+            for (int i = 0; i < chave.length(); i++) {
+                char c = chave.charAt(i);
+                if (c > 0x7F) return new QrKey(0, new String[] {dadosQR.instituicao, dadosQR.respondente});
+                empacotada = (empacotada << 7) | c;
+            }
+            return new QrKey(empacotada, null);
+        }
+
+        public String instituicao() {
+            return texto != null ? texto[0] : unpack(TAM_RESPONDENTE, TAM_INSTITUICAO);
+        }
+
+        public String respondente() {
+            return texto != null ? texto[1] : unpack(0, TAM_RESPONDENTE);
+        }
+
+        /** {@code n} caracteres a partir do {@code deslocamento}-ésimo caractere, contando do fim. */
+        private String unpack(int deslocamento, int n) {
+            char[] c = new char[n];
+            for (int i = 0; i < n; i++) c[n - 1 - i] = (char) ((empacotada >>> (7 * (deslocamento + i))) & 0x7F);
+            return new String(c);
+        }
+    }
+
+    /** Caderno completo: chave do QR e as respostas de cada folha, traduzidas só na exportação. */
+    public static final class BookletAnswers {
+        public final QrKey chave;
+        private final SheetAnswers[] folhas;
+
+        public BookletAnswers(QrKey chave, SheetAnswers[] folhas) {
+            this.chave = chave;
+            this.folhas = folhas;
+        }
+
+        /** Código da resposta; a última folha que tem a questão vale, e questões ausentes ficam em branco. */
+        public byte code(String questao) {
+            for (int f = folhas.length - 1; f >= 0; f--) {
+                int codigo = folhas[f].code(questao);
+                if (codigo >= 0) return (byte) codigo;
+            }
+            return OptionCodes.EM_BRANCO;
+        }
+
+        public String text(String questao) {
+            return OptionCodes.text(code(questao));
+        }
+    }
+
+    /**
+     * Resultado do processamento de UMA folha (imagem), antes da consolidação no pulmão.
+     * Quando a leitura falha, {@code motivoFalha} descreve a etapa e {@code dadosQR}/{@code respostas} podem ser nulos.
+     */
+    public static class SheetResult {
+        public final String origem;
+        public final QrData dadosQR;
+        public final SheetAnswers respostas;
+        public final String motivoFalha;
+        public final long duracaoMs;
+        public final String duplicataDe; // Folha anterior que esta redigitalização substitui (política "ultima")
+        public final double[] ancoras; // Centros TL, TR, BL, BR (x, y) na resolução original, na orientação lida; null se não detectadas
+        public final byte[] miniatura; // Miniatura do DuplicateDetector (seab.dedup ligado), guardada no cache; null sem ela
+
+        private SheetResult(String origem, QrData dadosQR, SheetAnswers respostas, String motivoFalha, long duracaoMs,
+                            String duplicataDe, double[] ancoras, byte[] miniatura) {
+            this.origem = origem; this.dadosQR = dadosQR; this.respostas = respostas;
+            this.motivoFalha = motivoFalha; this.duracaoMs = duracaoMs; this.duplicataDe = duplicataDe; this.ancoras = ancoras;
+            this.miniatura = miniatura;
+        }
+
+        public static SheetResult sucesso(String origem, QrData dadosQR, SheetAnswers respostas, long duracaoMs) {
+            return new SheetResult(origem, dadosQR, respostas, null, duracaoMs, null, null, null);
+        }
+
+        public static SheetResult falha(String origem, QrData dadosQR, String motivo, long duracaoMs) {
+            return new SheetResult(origem, dadosQR, null, motivo, duracaoMs, null, null, null);
+        }
+
+        /** O mesmo resultado, marcado como redigitalização de {@code original} (substitui a anterior no pulmão). */
+        public SheetResult replacing(String original) {
+            return new SheetResult(origem, dadosQR, respostas, motivoFalha, duracaoMs, original, ancoras, miniatura);
+        }
+
+        /** O mesmo resultado, com os centros das âncoras encontradas (x0, y0, ..., x3, y3). */
+        public SheetResult withAnchors(double[] centros) {
+            return new SheetResult(origem, dadosQR, respostas, motivoFalha, duracaoMs, duplicataDe, centros, miniatura);
+        }
+
+        /** O mesmo resultado, com a miniatura da folha (para refazer a detecção de redigitalização num acerto do cache). */
+        public SheetResult withThumbnail(byte[] pixels) {
+            return new SheetResult(origem, dadosQR, respostas, motivoFalha, duracaoMs, duplicataDe, ancoras, pixels);
+        }
+
+        public boolean isSucesso() {
+            return motivoFalha == null;
+        }
+    }
+}
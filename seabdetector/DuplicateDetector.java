@@ -0,0 +1,200 @@
+package seabdetector;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.Arrays;
+
+import static seabdetector.Constants.*;
+
+/**
+ * Detecção de folhas redigitalizadas (a bandeja inteira passada de novo depois de um atolamento) antes das etapas caras
+ * (âncoras, warp e OMR).
+ *
+ * Limitação: a comparação só termina depois do QR, porque exige o mesmo texto de QR (item 3 abaixo). Uma cópia ainda
+ * paga a leitura do QR, nas duas orientações se a primeira falhar; só âncoras, warp e OMR são poupados. Não há
+ * pré-verificação na carga sem o QR: a miniatura sozinha confundiria folhas de alunos diferentes.
+ *
+ * Impressão digital de cada folha, calculada na carga: miniatura 64x64 em tons de cinza (INTER_AREA sobre a página toda)
+ * e um dHash de 64 bits dela. Um índice em memória guarda as {@code seab.dedup.recent} folhas mais recentes.
+ * Uma folha nova é cópia de uma indexada quando:
+ * <ol>
+ *   <li>os dHash diferem em no máximo {@code seab.dedup.hash.bits} bits (filtro barato; a página inteira de folhas
+ *       diferentes do mesmo layout também passa aqui), e</li>
+ *   <li>no máximo {@code seab.dedup.cells} células da miniatura diferem mais que {@link #DIFERENCA_CELULA} tons,
+ *       depois de descontar o brilho médio. Uma bolha marcada ocupa ~1/3 de uma célula e o QR de outro respondente
+ *       muda várias células; a mesma folha redigitalizada, deslocada alguns pixels, muda quase nenhuma.</li>
+ *   <li>o texto do QR lido na folha nova é igual ao da indexada. A miniatura sozinha não basta: a média de uma célula
+ *       (~39x55 px a 300 dpi) pode esconder bolhas e módulos do QR, e duas folhas de alunos diferentes com poucas
+ *       respostas diferentes passariam nos dois filtros acima.</li>
+ * </ol>
+ * As duas orientações são comparadas (a miniatura invertida é a folha girada 180°). Só folhas lidas com sucesso entram
+ * no índice ({@link #register}, no worker, quando o resultado da folha é conhecido): uma folha que falhou não faz a sua
+ * redigitalização ser descartada.
+ *
+ * Política ({@code -Dseab.dedup}): {@code desligado} (padrão) não calcula nada; {@code primeira} descarta a cópia nova
+ * como "duplicada" depois do QR; {@code ultima} processa a cópia nova e ela substitui a anterior no pulmão, se o
+ * caderno ainda não foi gravado.
+ */
+public class DuplicateDetector {
+
+    public enum Policy { PRIMEIRA, ULTIMA, DESLIGADO }
+
+    public static final Policy POLITICA = Policy.valueOf(DEDUP_POLICY.trim().toUpperCase());
+
+    private static final int LADO = 64;
+    // Diferença (tons de cinza, já sem o brilho médio) a partir da qual uma célula conta como diferente
+    static final int DIFERENCA_CELULA = 32;
+
+    /** Miniatura e hashes de uma folha. */
+    public static class Fingerprint {
+        final byte[] miniatura; // LADO x LADO, linha a linha
+        final int media;
+        final long hash;
+        final long hash180;
+
+        Fingerprint(byte[] miniatura) {
+            this.miniatura = miniatura;
+            long soma = 0;
+            for (byte b : miniatura) soma += b & 0xFF;
+            this.media = (int) (soma / miniatura.length);
+            this.hash = dHash(miniatura, false);
+            this.hash180 = dHash(miniatura, true);
+        }
+    }
+
+    private static final Fingerprint[] recentes = new Fingerprint[Math.max(1, DEDUP_RECENT)];
+    private static final String[] origens = new String[recentes.length];
+    private static final String[] qrs = new String[recentes.length];
+    private static int proxima;
+
+    /** Impressão digital da imagem BGR (ou cinza) carregada, ou null com a detecção desligada. */
+    public static Fingerprint fingerprintOf(Mat imagem) {
+        return POLITICA == Policy.DESLIGADO ? null : fingerprint(imagem);
+    }
+
+    /** Impressão digital de uma miniatura guardada (p.ex. no cache de resultados), ou null com a detecção desligada. */
+    public static Fingerprint fingerprintOf(byte[] miniatura) {
+        return POLITICA == Policy.DESLIGADO || miniatura == null || miniatura.length != LADO * LADO ? null : new Fingerprint(miniatura);
+    }
+
+    static Fingerprint fingerprint(Mat imagem) {
+        Mat miniatura = new Mat();
+        Mat cinza = new Mat();
+        try {
+            // Reduz primeiro e converte depois: o cvtColor fica com 4096 pixels em vez da página inteira
+            Imgproc.resize(imagem, miniatura, new Size(LADO, LADO), 0, 0, Imgproc.INTER_AREA);
+            if (miniatura.channels() > 1) {
+                Imgproc.cvtColor(miniatura, cinza, Imgproc.COLOR_BGR2GRAY);
+            } else {
+                miniatura.copyTo(cinza);
+            }
+            byte[] pixels = new byte[LADO * LADO];
+            cinza.get(0, 0, pixels);
+            return new Fingerprint(pixels);
+        } finally {
+            miniatura.release();
+            cinza.release();
+        }
+    }
+
+    /**
+     * Procura a folha (impressão digital e texto do QR) entre as recentes, sem alterar o índice.
+     * Chamado pelo worker logo depois do QR, para descartar a cópia antes das âncoras.
+     * @param f Impressão digital de {@link #fingerprintOf}; null com a detecção desligada.
+     * @return Origem da folha de que esta é cópia, ou null se for nova (ou a detecção estiver desligada).
+     */
+    public static synchronized String find(Fingerprint f, String qr) {
+        int i = indexOf(f, qr);
+        return i < 0 ? null : origens[i];
+    }
+
+    /**
+     * Registra uma folha lida com sucesso; só assim ela entra no índice, então uma folha que falhou nunca faz a sua
+     * redigitalização ser descartada. Chamado pelo worker depois que o resultado da folha é conhecido. A procura é
+     * refeita aqui, junto com a inclusão: uma cópia cujo original terminou em outro worker depois do {@link #find}
+     * ainda é reconhecida. Com a política {@code ultima}, a cópia toma o lugar do original no índice.
+     * @return Origem da folha de que esta é cópia (e então, com {@code primeira}, ela não é registrada), ou null.
+     */
+    public static synchronized String register(Fingerprint f, String origem, String qr) {
+        if (f == null) return null;
+        int i = indexOf(f, qr);
+        if (i >= 0) {
+            String original = origens[i];
+            if (POLITICA == Policy.ULTIMA) {
+                recentes[i] = f;
+                origens[i] = origem;
+            }
+            return original;
+        }
+        recentes[proxima] = f;
+        origens[proxima] = origem;
+        qrs[proxima] = qr;
+        proxima = (proxima + 1) % recentes.length;
+        return null;
+    }
+
+    /** Posição da folha indexada de que {@code f} é cópia, ou -1. */
+    private static int indexOf(Fingerprint f, String qr) {
+        if (f == null) return -1;
+        for (int i = 0; i < recentes.length; i++) {
+            Fingerprint r = recentes[i];
+            if (r == null || !qrs[i].equals(qr)) continue; // QR diferente: outra folha, por mais parecida que seja
+            boolean girada;
+            if (Long.bitCount(r.hash ^ f.hash) <= DEDUP_HASH_BITS) {
+                girada = false;
+            } else if (Long.bitCount(r.hash ^ f.hash180) <= DEDUP_HASH_BITS) {
+                girada = true;
+            } else {
+                continue;
+            }
+            if (differentCells(r, f, girada) <= DEDUP_MAX_CELLS) return i;
+        }
+        return -1;
+    }
+
+    /** Esvazia o índice (p.ex. entre execuções do RegressionHarness sobre o mesmo corpus). */
+    public static synchronized void reset() {
+        Arrays.fill(recentes, null);
+        Arrays.fill(origens, null);
+        Arrays.fill(qrs, null);
+        proxima = 0;
+    }
+
+    /** Células que diferem mais que DIFERENCA_CELULA, descontado o brilho médio; {@code girada} compara com f a 180°. */
+    static int differentCells(Fingerprint a, Fingerprint b, boolean girada) {
+        int n = a.miniatura.length;
+        int diferentes = 0;
+        for (int i = 0; i < n; i++) {
+            int va = (a.miniatura[i] & 0xFF) - a.media;
+            int vb = (b.miniatura[girada ? n - 1 - i : i] & 0xFF) - b.media;
+            if (Math.abs(va - vb) > DIFERENCA_CELULA && ++diferentes > DEDUP_MAX_CELLS) break; // Já não é cópia
+        }
+        return diferentes;
+    }
+
+    /**
+     * dHash: a miniatura em 8 linhas x 9 colunas de blocos (8x7 pixels, as últimas colunas ficam de fora),
+     * 1 bit por par de blocos vizinhos na horizontal (esquerdo mais claro que o direito).
+     */
+    static long dHash(byte[] miniatura, boolean girada) {
+        int n = miniatura.length;
+        long hash = 0;
+        for (int linha = 0; linha < 8; linha++) {
+            int anterior = 0;
+            for (int coluna = 0; coluna < 9; coluna++) {
+                int soma = 0;
+                for (int y = linha * 8; y < linha * 8 + 8; y++) {
+                    for (int x = coluna * 7; x < coluna * 7 + 7; x++) {
+                        int i = y * LADO + x;
+                        soma += miniatura[girada ? n - 1 - i : i] & 0xFF;
+                    }
+                }
+                if (coluna > 0) hash = (hash << 1) | (anterior > soma ? 1 : 0);
+                anterior = soma;
+            }
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,136 @@
+package seabdetector;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static seabdetector.DataModels.*;
+
+/**
+ * Modo quadros: o software de captura abre o leitor como processo filho e envia as imagens pela entrada padrão;
+ * cada resultado sai na saída padrão assim que fica pronto. Uma JVM aquecida por scanner, sem pasta intermediária.
+ *
+ * Quadro de entrada (inteiros de 4 bytes big-endian):
+ * <pre>
+ *   tamanho do id, id em UTF-8, tamanho da imagem, bytes da imagem (JPEG/PNG/TIFF...)
+ * </pre>
+ * Saída: uma linha JSON por quadro (o mesmo objeto de uma folha no {@link SheetService}), com o id do quadro.
+ * Vários quadros ficam em voo ao mesmo tempo ({@code seab.workers} leitores e {@code seab.stream.inflight} na fila);
+ * as linhas saem na ordem em que as folhas terminam, não na de chegada: o id é que liga resposta e pedido. Com a fila
+ * cheia a leitura da entrada para, e o pipe segura o remetente.
+ *
+ * O fim da entrada (o remetente fecha o pipe) encerra o modo depois de responder aos quadros já recebidos.
+ * Logs e o sumário vão para a saída de erro; a saída padrão só tem as linhas do protocolo.
+ */
+public class FrameStreamService {
+
+    private final ThreadPoolExecutor leitores;
+    private final Function<SheetInput, SheetResult> etapas;
+    private final Function<SheetResult, SheetService.BookletStatus> consolidador;
+    private final long tamanhoMaximo;
+    private final Object trava = new Object(); // Pulmão e saída padrão, uma folha por vez
+    private PrintStream saida;
+    private long recebidos;
+    private long respondidos;
+
+    /**
+     * @param etapas Processamento de uma folha (roda nos leitores).
+     * @param consolidador Pulmão/saídas; chamado uma folha por vez.
+     * @param tamanhoMaximo Maior imagem aceita, em bytes; um quadro maior encerra a leitura (protocolo corrompido).
+     */
+    public FrameStreamService(int workers, int emVoo, long tamanhoMaximo, Function<SheetInput, SheetResult> etapas,
+                              Function<SheetResult, SheetService.BookletStatus> consolidador) {
+        this.etapas = etapas;
+        this.consolidador = consolidador;
+        this.tamanhoMaximo = tamanhoMaximo;
+        this.leitores = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(Math.max(1, emVoo)), r -> {
+            Thread t = new Thread(r, "seab-worker");
+            t.setDaemon(true);
+            return t;
+        }, (tarefa, executor) -> {
+            try {
+                executor.getQueue().put(tarefa);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+    /**
+     * Lê quadros de {@code in} até o fim e responde em {@code out}; retorna quando todos foram respondidos.
+     * @return Quadros recebidos.
+     */
+    public long run(InputStream in, OutputStream out) {
+        saida = new PrintStream(out, false, StandardCharsets.UTF_8);
+        DataInputStream quadros = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+        try {
+            while (true) {
+                SheetInput folha = readFrame(quadros);
+                if (folha == null) break;
+                recebidos++;
+                leitores.execute(() -> answer(folha));
+            }
+        } catch (IOException e) {
+            Log.error("Quadro inválido na entrada; leitura encerrada", "etapa", "quadros", "recebidos", recebidos, "erro", e.getMessage());
+        }
+
+        leitores.shutdown();
+        try {
+            leitores.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        saida.flush();
+        return recebidos;
+    }
+
+    /** Próximo quadro, ou null se a entrada terminou entre quadros. */
+    private SheetInput readFrame(DataInputStream in) throws IOException {
+        int tamanhoId;
+        try {
+            tamanhoId = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (tamanhoId < 0 || tamanhoId > 4096) throw new IOException("tamanho de id inválido: " + tamanhoId);
+        byte[] id = new byte[tamanhoId];
+        in.readFully(id);
+        int tamanho = in.readInt();
+        if (tamanho < 0 || tamanho > tamanhoMaximo) throw new IOException("tamanho de imagem inválido: " + tamanho);
+        byte[] imagem = new byte[tamanho];
+        in.readFully(imagem); // EOFException aqui: quadro truncado
+        return new SheetInput.MemoryInput(new String(id, StandardCharsets.UTF_8), imagem);
+    }
+
+    private void answer(SheetInput folha) {
+        SheetResult resultado;
+        try {
+            resultado = etapas.apply(folha);
+        } catch (RuntimeException e) {
+            Log.error("Erro ao processar quadro", e, "arquivo", folha.id(), "etapa", "quadros");
+            resultado = SheetResult.falha(folha.id(), null, "erro_inesperado", 0);
+        }
+        StringBuilder linha = new StringBuilder(512);
+        synchronized (trava) {
+            SheetService.appendJson(linha, resultado, consolidador.apply(resultado));
+            saida.println(linha);
+            saida.flush(); // O remetente espera a linha para liberar a folha
+            respondidos++;
+        }
+    }
+
+    public long getAnswered() {
+        synchronized (trava) {
+            return respondidos;
+        }
+    }
+}
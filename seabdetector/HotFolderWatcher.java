@@ -0,0 +1,198 @@
+package seabdetector;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Monitora a pasta de entrada com {@link WatchService} e entrega cada nova imagem assim que o
+ * scanner termina de gravá-la. Na abertura a árvore inteira é percorrida uma vez: todas as subpastas
+ * (uma por instituição) passam a ser monitoradas e as imagens já presentes entram na fila. Depois disso
+ * só os eventos de criação/modificação são acompanhados; uma subpasta criada (ou movida para dentro)
+ * durante a execução é registrada e percorrida da mesma forma, para não perder o que já estiver nela.
+ *
+ * Um arquivo é considerado "pronto" quando tamanho e data de modificação ficam inalterados
+ * por {@code estabilidadeMs} e ele pode ser aberto para leitura.
+ */
+public class HotFolderWatcher implements Closeable {
+
+    private final Path raiz;
+    private final long intervaloMs;
+    private final long estabilidadeMs;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> pastasMonitoradas = new LinkedHashMap<>();
+
+    // Arquivos vistos mas ainda em gravação, em ordem de chegada.
+    private final Map<Path, EstadoArquivo> pendentes = new LinkedHashMap<>();
+
+    private volatile boolean ativo = true;
+
+    private static class EstadoArquivo {
+        long tamanho;
+        long modificadoEm;
+        long estavelDesde;
+
+        EstadoArquivo(long tamanho, long modificadoEm, long agora) {
+            this.tamanho = tamanho; this.modificadoEm = modificadoEm; this.estavelDesde = agora;
+        }
+    }
+
+    public HotFolderWatcher(Path raiz, long intervaloMs, long estabilidadeMs) throws IOException {
+        this.raiz = raiz;
+        this.intervaloMs = intervaloMs;
+        this.estabilidadeMs = estabilidadeMs;
+        this.watchService = raiz.getFileSystem().newWatchService();
+        registrarArvore(raiz);
+    }
+
+    /**
+     * Registra a pasta e as subpastas (em ordem de nome) e põe na fila as imagens que já estão nelas.
+     * A pasta é registrada antes de ser listada: um arquivo criado no meio é visto pela listagem ou pelo evento.
+     */
+    private void registrarArvore(Path pasta) throws IOException {
+        WatchKey key = pasta.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+        pastasMonitoradas.put(key, pasta);
+
+        List<Path> itens = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(pasta)) {
+            ds.forEach(itens::add);
+        }
+        Collections.sort(itens);
+        long agora = System.currentTimeMillis();
+        for (Path item : itens) {
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(item, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                if (attrs.isDirectory()) {
+                    registrarArvore(item);
+                } else if (attrs.isRegularFile() && Constants.isImagemSuportada(item.getFileName().toString())) {
+                    observar(item, attrs, agora);
+                }
+            } catch (NoSuchFileException e) {
+                // Removido entre a listagem e a leitura dos atributos
+            }
+        }
+    }
+
+    /** Acrescenta o arquivo à fila de pendentes ou reinicia a contagem de estabilidade dele. */
+    private void observar(Path caminho, BasicFileAttributes attrs, long agora) {
+        EstadoArquivo estado = pendentes.get(caminho);
+        if (estado == null) {
+            pendentes.put(caminho, new EstadoArquivo(attrs.size(), attrs.lastModifiedTime().toMillis(), agora));
+        } else {
+            estado.tamanho = attrs.size();
+            estado.modificadoEm = attrs.lastModifiedTime().toMillis();
+            estado.estavelDesde = agora;
+        }
+    }
+
+    /**
+     * Bloqueia a thread chamadora entregando ao {@code destino} cada imagem pronta, até {@link #close()}.
+     * O destino é chamado sempre na mesma thread, na ordem em que os arquivos ficaram estáveis.
+     * @param aoFimDaVarredura Executado após cada varredura (ex.: consolidar folhas ainda em processamento).
+     */
+    public void run(Consumer<Path> destino, Runnable aoFimDaVarredura) {
+        System.out.printf("Monitorando %s (%d pastas, %d imagens já presentes; varredura %d ms, estabilidade %d ms)...\n",
+                raiz, pastasMonitoradas.size(), pendentes.size(), intervaloMs, estabilidadeMs);
+
+        while (ativo) {
+            WatchKey key;
+            try {
+                key = watchService.poll(intervaloMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ClosedWatchServiceException e) {
+                break;
+            }
+
+            if (key != null) {
+                tratarEventos(key);
+            }
+            entregarArquivosEstaveis(destino);
+            aoFimDaVarredura.run();
+        }
+    }
+
+    private void tratarEventos(WatchKey key) {
+        Path pasta = pastasMonitoradas.get(key);
+        for (WatchEvent<?> evento : key.pollEvents()) {
+            if (evento.kind() == OVERFLOW) {
+                Log.warn("Eventos perdidos na pasta monitorada (OVERFLOW); reduza o intervalo de varredura", "pasta", raiz);
+                continue;
+            }
+            if (pasta == null) continue;
+
+            Path caminho = pasta.resolve((Path) evento.context());
+            try {
+                if (Files.isDirectory(caminho, LinkOption.NOFOLLOW_LINKS)) {
+                    if (evento.kind() == ENTRY_CREATE) registrarArvore(caminho);
+                } else if (Constants.isImagemSuportada(caminho.getFileName().toString())) {
+                    observar(caminho, Files.readAttributes(caminho, BasicFileAttributes.class), System.currentTimeMillis());
+                }
+            } catch (NoSuchFileException e) {
+                pendentes.remove(caminho); // Arquivo temporário removido/renomeado pelo scanner
+            } catch (IOException e) {
+                Log.warn("Não foi possível inspecionar o arquivo", "arquivo", caminho, "erro", e.getMessage());
+            }
+        }
+        if (!key.reset()) {
+            pastasMonitoradas.remove(key);
+        }
+    }
+
+    private void entregarArquivosEstaveis(Consumer<Path> destino) {
+        long agora = System.currentTimeMillis();
+        Iterator<Map.Entry<Path, EstadoArquivo>> it = pendentes.entrySet().iterator();
+        while (it.hasNext() && ativo) {
+            Map.Entry<Path, EstadoArquivo> entry = it.next();
+            Path caminho = entry.getKey();
+            EstadoArquivo estado = entry.getValue();
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(caminho, BasicFileAttributes.class);
+                long modificadoEm = attrs.lastModifiedTime().toMillis();
+                if (attrs.size() != estado.tamanho || modificadoEm != estado.modificadoEm) {
+                    estado.tamanho = attrs.size();
+                    estado.modificadoEm = modificadoEm;
+                    estado.estavelDesde = agora;
+                    continue;
+                }
+                if (estado.tamanho == 0 || agora - estado.estavelDesde < estabilidadeMs || !podeAbrir(caminho)) {
+                    continue;
+                }
+            } catch (IOException e) {
+                it.remove(); // Arquivo sumiu antes de ficar estável
+                continue;
+            }
+            it.remove();
+            destino.accept(caminho);
+        }
+    }
+
+    // Alguns scanners mantêm o arquivo aberto com bloqueio exclusivo até terminar a gravação (Windows).
+    private static boolean podeAbrir(Path caminho) {
+        try {
+            FileChannel.open(caminho, StandardOpenOption.READ).close();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        ativo = false;
+        watchService.close();
+    }
+}
@@ -0,0 +1,157 @@
+package seabdetector;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+
+/**
+ * Descoberta de imagens em streaming: entrega lotes de até {@code batchSize} arquivos por pasta
+ * à medida que as pastas são lidas, sem montar a listagem completa do acervo (só a de uma pasta por vez).
+ *
+ * Ordem: os arquivos de uma pasta são ordenados por nome e cortados em lotes nessa ordem; vêm antes das
+ * suas subpastas, que são visitadas em ordem alfabética. A ordem não depende do sistema de arquivos, então
+ * é a mesma em qualquer máquina (as posições do diário de {@link Partition} dependem disso).
+ *
+ * No modo paralelo, cada subpasta de primeiro nível (uma por instituição) é percorrida por uma
+ * thread própria; a ordem entre instituições deixa de ser determinística, a ordem dentro de cada uma é mantida.
+ * Um erro de listagem em qualquer subpasta não interrompe as demais, mas é relançado ao final.
+ */
+public class InputDiscovery {
+
+    // Quantos lotes prontos podem ficar aguardando o processamento no modo paralelo.
+    private static final int LOTES_EM_ESPERA = 4;
+
+    private static final List<Path> FIM = Collections.emptyList();
+
+    /**
+     * Percorre {@code raiz} e entrega cada lote ao {@code destino}, sempre na thread chamadora.
+     * @throws IOException Se alguma pasta não pôde ser listada (no modo paralelo, depois de entregar o resto).
+     */
+    public static void forEachBatch(Path raiz, int batchSize, boolean paralelo, Consumer<List<Path>> destino) throws IOException {
+        forEachBatch(raiz, () -> batchSize, paralelo, destino);
+    }
+
+    /**
+     * Como {@link #forEachBatch(Path, int, boolean, Consumer)}, consultando o tamanho a cada lote
+     * (permite alterá-lo durante a execução, p.ex. pela interface JMX).
+     */
+    public static void forEachBatch(Path raiz, IntSupplier batchSize, boolean paralelo, Consumer<List<Path>> destino) throws IOException {
+        if (paralelo) {
+            walkParallel(raiz, batchSize, destino);
+        } else {
+            walk(raiz, batchSize, destino);
+        }
+    }
+
+    private static void walk(Path pasta, IntSupplier batchSize, Consumer<List<Path>> destino) throws IOException {
+        for (Path sub : listFiles(pasta, batchSize, destino)) {
+            walk(sub, batchSize, destino);
+        }
+    }
+
+    /**
+     * Entrega os arquivos de imagem de {@code pasta} (sem descer nas subpastas) em lotes, em ordem de nome.
+     * @return As subpastas encontradas, em ordem alfabética.
+     */
+    private static List<Path> listFiles(Path pasta, IntSupplier batchSize, Consumer<List<Path>> destino) throws IOException {
+        List<Path> subpastas = new ArrayList<>();
+        List<Path> arquivos = new ArrayList<>();
+
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(pasta)) {
+            for (Path p : ds) {
+                if (Files.isDirectory(p, LinkOption.NOFOLLOW_LINKS)) {
+                    subpastas.add(p);
+                } else if (Constants.isImagemSuportada(p.getFileName().toString()) && Files.isRegularFile(p)) {
+                    arquivos.add(p);
+                }
+            }
+        }
+
+        Collections.sort(arquivos);
+        int inicio = 0;
+        while (inicio < arquivos.size()) {
+            int fim = Math.min(arquivos.size(), inicio + Math.max(1, batchSize.getAsInt()));
+            destino.accept(new ArrayList<>(arquivos.subList(inicio, fim)));
+            inicio = fim;
+        }
+
+        Collections.sort(subpastas);
+        return subpastas;
+    }
+
+    private static void walkParallel(Path raiz, IntSupplier batchSize, Consumer<List<Path>> destino) throws IOException {
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        ExecutorService walkers = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "seab-discovery");
+            t.setDaemon(true);
+            return t;
+        });
+        BlockingQueue<List<Path>> fila = new ArrayBlockingQueue<>(LOTES_EM_ESPERA);
+        AtomicInteger ativos = new AtomicInteger(1); // A própria raiz
+        AtomicReference<IOException> erro = new AtomicReference<>(); // Primeiro erro de listagem; os demais vão como suprimidos
+
+        Consumer<List<Path>> enfileirar = lote -> {
+            try {
+                fila.put(lote);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+
+        walkers.submit(() -> {
+            try {
+                List<Path> subpastas = listFiles(raiz, batchSize, enfileirar);
+                for (Path sub : subpastas) {
+                    ativos.incrementAndGet();
+                    walkers.submit(() -> {
+                        try {
+                            walk(sub, batchSize, enfileirar);
+                        } catch (IOException e) {
+                            registrar(erro, e);
+                        } finally {
+                            if (ativos.decrementAndGet() == 0) enfileirar.accept(FIM);
+                        }
+                    });
+                }
+            } catch (IOException e) {
+                registrar(erro, e);
+            } finally {
+                if (ativos.decrementAndGet() == 0) enfileirar.accept(FIM);
+            }
+        });
+
+        try {
+            while (true) {
+                List<Path> lote = fila.take();
+                if (lote == FIM) break;
+                destino.accept(lote);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            walkers.shutdownNow();
+        }
+        if (erro.get() != null) throw erro.get();
+    }
+
+    private static void registrar(AtomicReference<IOException> erro, IOException e) {
+        if (!erro.compareAndSet(null, e)) {
+            synchronized (erro) {
+                erro.get().addSuppressed(e);
+            }
+        }
+    }
+}
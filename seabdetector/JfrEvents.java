@@ -0,0 +1,106 @@
+package seabdetector;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.StackTrace;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Eventos do Java Flight Recorder emitidos por folha e por etapa.
+ *
+ * Sem gravação ativa, {@code shouldCommit()} retorna false e o custo se resume a criar o evento
+ * (que o JIT elimina); por isso os campos só são preenchidos depois dessa verificação.
+ *
+ * A gravação pode ser ligada na inicialização ({@code -Dseab.jfr=arquivo.jfr}), pela interface JMX
+ * ou externamente com {@code jcmd <pid> JFR.start}. Resumo da gravação: {@link JfrSummary}.
+ */
+public class JfrEvents {
+
+    public static final String EVENTO_FOLHA = "seab.Sheet";
+    public static final String EVENTO_ETAPA = "seab.Stage";
+
+    private static Recording gravacao;
+    private static Path destinoGravacao;
+
+    @Name(EVENTO_FOLHA)
+    @Label("Folha processada")
+    @Category({"SAEB", "Leitor"})
+    @StackTrace(false)
+    public static class SheetEvent extends Event {
+        @Label("Arquivo")
+        public String arquivo;
+
+        @Label("Orientação")
+        @Description("0 ou 180 (graus em que o QR foi lido); -1 se não foi lido")
+        public int orientacao;
+
+        @Label("Resultado")
+        @Description("ok ou o motivo da falha")
+        public String resultado;
+    }
+
+    @Name(EVENTO_ETAPA)
+    @Label("Etapa da folha")
+    @Category({"SAEB", "Leitor"})
+    @StackTrace(false)
+    public static class StageEvent extends Event {
+        @Label("Arquivo")
+        public String arquivo;
+
+        @Label("Etapa")
+        public String etapa;
+
+        @Label("Orientação")
+        public int orientacao;
+
+        @Label("Tamanho do texto do QR")
+        public int qrTamanho;
+
+        @Label("Contornos examinados")
+        public int contornos;
+
+        @Label("Resultado")
+        public String resultado;
+    }
+
+    /** Inicia uma gravação apenas com os eventos do leitor (sem limite de duração para as etapas). */
+    public static synchronized void startRecording(Path destino) {
+        if (gravacao != null) return;
+        Recording r = new Recording();
+        r.setName("seab");
+        r.enable(EVENTO_FOLHA).withoutThreshold();
+        r.enable(EVENTO_ETAPA).withoutThreshold();
+        r.setToDisk(true);
+        try {
+            r.setDestination(destino);
+        } catch (IOException e) {
+            Log.error("Erro ao preparar gravação JFR", "arquivo", destino, "erro", e.getMessage());
+            r.close();
+            return;
+        }
+        r.start();
+        gravacao = r;
+        destinoGravacao = destino;
+        System.out.println("Gravação JFR iniciada: " + destino);
+    }
+
+    /** Encerra a gravação (o arquivo é gravado no destino informado em {@link #startRecording}). */
+    public static synchronized void stopRecording() {
+        if (gravacao == null) return;
+        gravacao.stop();
+        gravacao.close();
+        System.out.println("Gravação JFR salva em: " + destinoGravacao);
+        gravacao = null;
+        destinoGravacao = null;
+    }
+
+    public static synchronized boolean isRecording() {
+        return gravacao != null;
+    }
+}
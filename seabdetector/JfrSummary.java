@@ -0,0 +1,116 @@
+package seabdetector;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * Resume uma gravação JFR do leitor: tempo por etapa (percentis) e as folhas/etapas mais lentas.
+ *
+ * Uso: {@code java -cp ... seabdetector.JfrSummary gravacao.jfr [top=20]}
+ * Não depende do OpenCV, então roda em qualquer máquina com o arquivo .jfr.
+ */
+public class JfrSummary {
+
+    /** Uma ocorrência lenta (folha inteira ou etapa) guardada no ranking. */
+    private static class Lenta {
+        final String arquivo;
+        final String detalhe;
+        final long nanos;
+
+        Lenta(String arquivo, String detalhe, long nanos) {
+            this.arquivo = arquivo; this.detalhe = detalhe; this.nanos = nanos;
+        }
+    }
+
+    /** Acumulado de uma etapa. */
+    private static class Etapa {
+        final LatencyHistogram latencias = new LatencyHistogram();
+        long totalNanos;
+        long falhas;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Uso: JfrSummary <gravacao.jfr> [top=20]");
+            System.exit(1);
+        }
+        Path arquivo = Paths.get(args[0]);
+        int top = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        Map<String, Etapa> etapas = new TreeMap<>();
+        Map<String, Long> resultadosFolhas = new TreeMap<>();
+        PriorityQueue<Lenta> folhasLentas = new PriorityQueue<>(Comparator.comparingLong((Lenta l) -> l.nanos));
+        PriorityQueue<Lenta> etapasLentas = new PriorityQueue<>(Comparator.comparingLong((Lenta l) -> l.nanos));
+        LatencyHistogram folhas = new LatencyHistogram();
+
+        try (RecordingFile gravacao = new RecordingFile(arquivo)) {
+            while (gravacao.hasMoreEvents()) {
+                RecordedEvent e = gravacao.readEvent();
+                String tipo = e.getEventType().getName();
+                long nanos = e.getDuration().toNanos();
+
+                if (JfrEvents.EVENTO_FOLHA.equals(tipo)) {
+                    String resultado = e.getString("resultado");
+                    folhas.record(nanos);
+                    resultadosFolhas.merge(resultado, 1L, Long::sum);
+                    String detalhe = resultado + (e.getInt("orientacao") == 180 ? ", 180°" : "");
+                    keepSlowest(folhasLentas, new Lenta(e.getString("arquivo"), detalhe, nanos), top);
+                } else if (JfrEvents.EVENTO_ETAPA.equals(tipo)) {
+                    String nome = e.getString("etapa");
+                    Etapa etapa = etapas.computeIfAbsent(nome, k -> new Etapa());
+                    etapa.latencias.record(nanos);
+                    etapa.totalNanos += nanos;
+                    if (!"ok".equals(e.getString("resultado"))) etapa.falhas++;
+
+                    String detalhe = nome + ", " + e.getString("resultado");
+                    if (e.getInt("contornos") > 0) detalhe += ", " + e.getInt("contornos") + " contornos";
+                    keepSlowest(etapasLentas, new Lenta(e.getString("arquivo"), detalhe, nanos), top);
+                }
+            }
+        }
+
+        LatencyHistogram.Snapshot f = folhas.snapshot();
+        System.out.printf("===== RESUMO JFR: %s =====\n", arquivo);
+        System.out.printf("Folhas: %d  (p50 %.1f ms, p95 %.1f ms, p99 %.1f ms, máx %.1f ms)\n",
+                f.count, f.percentileMs(50), f.percentileMs(95), f.percentileMs(99), f.maxMicros / 1000.0);
+        System.out.println("Resultados: " + resultadosFolhas);
+
+        System.out.println("\nEtapas (ordenadas pelo tempo total):");
+        System.out.printf("  %-10s %8s %10s %8s %8s %8s %8s %7s\n", "etapa", "n", "total s", "p50", "p95", "p99", "máx", "falhas");
+        List<Map.Entry<String, Etapa>> ordenadas = new ArrayList<>(etapas.entrySet());
+        ordenadas.sort((a, b) -> Long.compare(b.getValue().totalNanos, a.getValue().totalNanos));
+        for (Map.Entry<String, Etapa> entrada : ordenadas) {
+            LatencyHistogram.Snapshot s = entrada.getValue().latencias.snapshot();
+            System.out.printf("  %-10s %8d %10.1f %8.1f %8.1f %8.1f %8.1f %7d\n", entrada.getKey(), s.count,
+                    entrada.getValue().totalNanos / 1e9, s.percentileMs(50), s.percentileMs(95), s.percentileMs(99),
+                    s.maxMicros / 1000.0, entrada.getValue().falhas);
+        }
+
+        printRanking("Folhas mais lentas", folhasLentas);
+        printRanking("Etapas mais lentas", etapasLentas);
+    }
+
+    private static void keepSlowest(PriorityQueue<Lenta> ranking, Lenta candidata, int top) {
+        ranking.add(candidata);
+        if (ranking.size() > top) ranking.poll(); // Remove a mais rápida
+    }
+
+    private static void printRanking(String titulo, PriorityQueue<Lenta> ranking) {
+        List<Lenta> lista = new ArrayList<>(ranking);
+        lista.sort((a, b) -> Long.compare(b.nanos, a.nanos));
+        System.out.printf("\n%s:\n", titulo);
+        for (Lenta l : lista) {
+            System.out.printf("  %9.1f ms  %s (%s)\n", l.nanos / 1e6, l.arquivo, l.detalhe);
+        }
+    }
+}
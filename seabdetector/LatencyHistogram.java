@@ -0,0 +1,89 @@
+package seabdetector;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma de latências sem travas, no estilo HDR: buckets log-lineares em microssegundos com
+ * 32 sub-buckets por potência de 2 (erro relativo máximo ~3%), de 1 µs até ~1 hora.
+ *
+ * {@link #record} é apenas um incremento atômico, então pode ser chamado por todos os workers em cada folha.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;               // 0..63 µs: 1 bucket por µs
+    private static final int MAX_EXPOENTE = 32;                          // 2^32 µs ≈ 71 min
+    private static final int TOTAL_BUCKETS = (MAX_EXPOENTE - SUB_BITS + 1) * (SUB_BUCKETS / 2) + SUB_BUCKETS / 2;
+
+    private final AtomicLongArray contagens = new AtomicLongArray(TOTAL_BUCKETS);
+    private final LongAdder somaMicros = new LongAdder();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos / 1_000);
+        contagens.incrementAndGet(bucketOf(micros));
+        somaMicros.add(micros);
+        long max;
+        while (micros > (max = maxMicros.get()) && !maxMicros.compareAndSet(max, micros)) {
+            // outro worker registrou um máximo ao mesmo tempo; tenta de novo
+        }
+    }
+
+    static int bucketOf(long micros) {
+        if (micros < SUB_BUCKETS) return (int) micros;
+        int expoente = 63 - Long.numberOfLeadingZeros(micros);
+        if (expoente >= MAX_EXPOENTE) return TOTAL_BUCKETS - 1;
+        int sub = (int) (micros >>> (expoente - SUB_BITS + 1)) & (SUB_BUCKETS / 2 - 1);
+        return (expoente - SUB_BITS + 1) * SUB_BUCKETS / 2 + SUB_BUCKETS / 2 + sub;
+    }
+
+    /** Maior valor (µs) que cai no bucket: usado como estimativa conservadora do percentil. */
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int linha = (bucket - SUB_BUCKETS / 2) / (SUB_BUCKETS / 2);
+        int sub = (bucket - SUB_BUCKETS / 2) % (SUB_BUCKETS / 2);
+        int expoente = linha + SUB_BITS - 1;
+        long largura = 1L << (expoente - SUB_BITS + 1);
+        return (1L << expoente) + (sub + 1) * largura - 1;
+    }
+
+    /** Cópia consistente o bastante para exportação (os contadores podem avançar durante a leitura). */
+    public Snapshot snapshot() {
+        long[] copia = new long[TOTAL_BUCKETS];
+        long n = 0;
+        for (int i = 0; i < TOTAL_BUCKETS; i++) {
+            copia[i] = contagens.get(i);
+            n += copia[i];
+        }
+        return new Snapshot(copia, n, somaMicros.sum(), maxMicros.get());
+    }
+
+    public static class Snapshot {
+        private final long[] contagens;
+        public final long count;
+        public final long sumMicros;
+        public final long maxMicros;
+
+        Snapshot(long[] contagens, long count, long sumMicros, long maxMicros) {
+            this.contagens = contagens; this.count = count; this.sumMicros = sumMicros; this.maxMicros = maxMicros;
+        }
+
+        /** Percentil em milissegundos (p entre 0 e 100). */
+        public double percentileMs(double p) {
+            if (count == 0) return 0;
+            long alvo = Math.max(1, (long) Math.ceil(p / 100.0 * count));
+            long acumulado = 0;
+            for (int i = 0; i < contagens.length; i++) {
+                acumulado += contagens[i];
+                if (acumulado >= alvo) return Math.min(upperBoundOf(i), maxMicros) / 1000.0;
+            }
+            return maxMicros / 1000.0;
+        }
+
+        public double meanMs() {
+            return count == 0 ? 0 : sumMicros / 1000.0 / count;
+        }
+    }
+}
@@ -0,0 +1,417 @@
+package seabdetector;
+
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.core.Size;
+
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import static seabdetector.Constants.*;
+import static seabdetector.DataModels.*;
+
+/**
+ * Pacote binário pré-compilado de config.txt + templates.txt.
+ *
+ * A compilação valida os dois arquivos de uma vez e grava um arquivo versionado: cabeçalho com tamanho e data de modificação das fontes, tabela de textos
+ * sem repetição (folha, questão e opção aparecem uma vez cada) e registros de tamanho fixo. Na carga o arquivo
+ * é mapeado (FileChannel.map) e lido direto, sem split/parseInt por linha; as alternativas compartilham os textos.
+ *
+ * Se o pacote não existe, é de outra versão, está corrompido ou as fontes mudaram, é recompilado na hora.
+ * A gramática é a da leitura do texto pelo {@link ConfigLoader}, mas a validação é por linha: o que não serve (linha não
+ * reconhecida, campos a mais ou a menos, número inválido, estratégia de âncora desconhecida) vira um aviso com
+ * arquivo:linha no log e só aquela linha é ignorada; o pacote é gravado com o resto. O resultado difere do texto quando:
+ * há número inválido (o ConfigLoader para de ler o arquivo ali e perde as linhas seguintes), coordenada negativa (o texto
+ * aceita), alternativa antes de qualquer [FOLHA N] (o texto a põe numa folha "Desconhecida") ou "DADOS:" sem espaço (o
+ * texto ignora a linha). Nesses casos o mesmo arquivo dá layouts diferentes com e sem {@code seab.layout.bundle}; cada
+ * divergência é registrada no log quando o pacote é compilado.
+ *
+ * Compilação explícita: {@code java ... seabdetector.LayoutBundle [config.txt] [templates.txt] [layout.bin]}.
+ */
+public class LayoutBundle {
+
+    private static final long MAGICO = 0x534541424C41594FL; // "SEABLAYO"
+    private static final int VERSAO = 1;
+    private static final int TAMANHO_CABECALHO = 8 + 4 + 4 * 8 + 4 + 4;
+    private static final int SEM_TEXTO = -1;
+
+    /** Layout de uma edição de prova: bolhas por folha (config.txt) e templates de alinhamento (templates.txt). */
+    public static class Layout {
+        public final List<Alternativa> alternativas;
+        public final Map<String, FolhaTemplate> templates;
+
+        Layout(List<Alternativa> alternativas, Map<String, FolhaTemplate> templates) {
+            this.alternativas = alternativas;
+            this.templates = templates;
+        }
+
+        public void release() {
+            templates.values().forEach(FolhaTemplate::release);
+        }
+    }
+
+    /** Conteúdo validado das fontes, antes de virar objetos OpenCV. */
+    private static class Fontes {
+        final List<String> textos = new ArrayList<>();
+        final Map<String, Integer> indices = new HashMap<>();
+        final List<int[]> alternativas = new ArrayList<>();   // folha, questão, opção, x, y
+        final Map<String, int[]> templates = new LinkedHashMap<>(); // w, h, 4 × (x, y)
+        final Map<String, String> estrategias = new HashMap<>();
+        final List<String> avisos = new ArrayList<>(); // Linhas ignoradas e inconsistências (arquivo:linha)
+        final List<String> divergencias = new ArrayList<>(); // Linhas que a leitura do texto trataria de outro jeito
+
+        int texto(String s) {
+            return indices.computeIfAbsent(s, k -> {
+                textos.add(k);
+                return textos.size() - 1;
+            });
+        }
+    }
+
+    /** Carrega os caminhos padrão (PATH_CONFIG, PATH_TEMPLATES) pelo pacote em {@code seab.layout.bundle}. */
+    public static Layout load() {
+        return load(Paths.get(PATH_CONFIG), Paths.get(PATH_TEMPLATES), LAYOUT_BUNDLE.isEmpty() ? null : Paths.get(LAYOUT_BUNDLE));
+    }
+
+    /**
+     * Carrega o layout pelo pacote, recompilando-o se necessário.
+     * @param pacote Caminho do pacote; null lê direto do texto (sem pacote).
+     */
+    public static Layout load(Path config, Path templates, Path pacote) {
+        if (pacote == null) return loadText(config, templates);
+
+        if (Files.exists(pacote)) {
+            try {
+                Layout layout = read(pacote, config, templates);
+                if (layout != null) return layout;
+                Log.info("Pacote de layout desatualizado; recompilando", "pacote", pacote);
+            } catch (IOException | RuntimeException e) {
+                Log.warn("Pacote de layout ilegível; recompilando", "pacote", pacote, "erro", e.getMessage());
+            }
+        }
+
+        Fontes fontes;
+        try {
+            fontes = parse(config, templates);
+        } catch (IOException e) {
+            Log.error("Erro ao ler layout", "config", config, "templates", templates, "erro", e.getMessage());
+            return loadText(config, templates);
+        }
+        logWarnings(fontes);
+        try {
+            write(fontes, pacote, config, templates);
+        } catch (IOException e) {
+            Log.warn("Não foi possível gravar o pacote de layout", "pacote", pacote, "erro", e.getMessage());
+        }
+        return toLayout(fontes);
+    }
+
+    private static Layout loadText(Path config, Path templates) {
+        return new Layout(ConfigLoader.loadAlternativas(config.toString()), ConfigLoader.loadTemplates(templates.toString()));
+    }
+
+    /**
+     * Valida as fontes e grava o pacote; as linhas ignoradas vão para o log como avisos.
+     * @return Quantidade de avisos.
+     */
+    public static int compile(Path config, Path templates, Path pacote) throws IOException {
+        Fontes fontes = parse(config, templates);
+        logWarnings(fontes);
+        write(fontes, pacote, config, templates);
+        return fontes.avisos.size();
+    }
+
+    private static void logWarnings(Fontes fontes) {
+        fontes.avisos.forEach(aviso -> Log.warn("Aviso no layout", "fonte", aviso));
+        fontes.divergencias.forEach(d -> Log.warn("Layout do pacote difere da leitura do texto (ConfigLoader)", "fonte", d));
+    }
+
+    // --- Validação das fontes ---
+
+    private static Fontes parse(Path config, Path templates) throws IOException {
+        Fontes f = new Fontes();
+        parseConfig(config, f);
+        parseTemplates(templates, f);
+
+        Set<String> folhasConfig = new LinkedHashSet<>();
+        for (int[] a : f.alternativas) folhasConfig.add(f.textos.get(a[0]));
+        for (String folha : folhasConfig) {
+            if (!f.templates.containsKey(folha)) f.avisos.add(templates.getFileName() + ": sem DADOS para " + folha + " (presente em " + config.getFileName() + ")");
+        }
+        for (Map.Entry<String, int[]> t : f.templates.entrySet()) {
+            if (!folhasConfig.contains(t.getKey())) f.avisos.add(config.getFileName() + ": nenhuma alternativa para " + t.getKey() + " (presente em " + templates.getFileName() + ")");
+        }
+        for (int[] a : f.alternativas) {
+            int[] t = f.templates.get(f.textos.get(a[0]));
+            if (t != null && (a[3] >= t[0] || a[4] >= t[1])) {
+                f.avisos.add(config.getFileName() + ": " + f.textos.get(a[1]) + ";" + f.textos.get(a[2]) + " fora da página de " + f.textos.get(a[0]) + " (" + t[0] + "x" + t[1] + ")");
+            }
+        }
+        return f;
+    }
+
+    private static void parseConfig(Path config, Fontes f) throws IOException {
+        String nomeArquivo = config.getFileName().toString();
+        Set<String> vistas = new HashSet<>();
+        String folhaAtual = null;
+        int numero = 0;
+        try (BufferedReader br = new BufferedReader(new FileReader(config.toFile()))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                numero++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String onde = nomeArquivo + ":" + numero + ": ";
+                if (line.startsWith("[FOLHA")) {
+                    folhaAtual = line.replace("[", "").replace("]", "").trim();
+                    continue;
+                }
+                if (folhaAtual == null) {
+                    f.avisos.add(onde + "alternativa antes de qualquer [FOLHA N]; ignorada");
+                    f.divergencias.add(onde + "a leitura do texto usaria a folha \"Desconhecida\"");
+                    continue;
+                }
+                String[] partes = line.split(";");
+                if (partes.length != 4) {
+                    f.avisos.add(onde + "esperados 4 campos (questão;opção;x;y), encontrados " + partes.length + "; linha ignorada");
+                    continue;
+                }
+                int x = parseCoordinate(partes[2], onde + "x", f);
+                int y = parseCoordinate(partes[3], onde + "y", f);
+                if (x < 0 || y < 0) continue;
+                if (!vistas.add(folhaAtual + ";" + partes[0] + ";" + partes[1])) {
+                    f.avisos.add(onde + "alternativa repetida em " + folhaAtual + ": " + partes[0] + ";" + partes[1] + "; ignorada");
+                    continue;
+                }
+                f.alternativas.add(new int[]{f.texto(folhaAtual), f.texto(partes[0]), f.texto(partes[1]), x, y});
+            }
+        }
+    }
+
+    private static void parseTemplates(Path templates, Fontes f) throws IOException {
+        String nomeArquivo = templates.getFileName().toString();
+        String folhaAtual = null;
+        int numero = 0;
+        try (BufferedReader br = new BufferedReader(new FileReader(templates.toFile()))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                numero++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String onde = nomeArquivo + ":" + numero + ": ";
+                if (line.startsWith("[FOLHA")) {
+                    folhaAtual = line.replace("[", "").replace("]", "").trim();
+                    continue;
+                }
+                if (folhaAtual == null) {
+                    f.avisos.add(onde + "linha antes de qualquer [FOLHA N]; ignorada");
+                } else if (line.startsWith("ANCORA:")) {
+                    String nome = line.substring(7).trim().toLowerCase();
+                    if (AnchorStrategy.NOMES.contains(nome)) {
+                        f.estrategias.put(folhaAtual, nome);
+                    } else {
+                        f.avisos.add(onde + "estratégia de âncora desconhecida '" + nome + "' (use " + AnchorStrategy.NOMES + "); usando a padrão");
+                    }
+                } else if (line.startsWith("DADOS:")) {
+                    if (!line.startsWith("DADOS: ")) f.divergencias.add(onde + "a leitura do texto ignora \"DADOS:\" sem espaço");
+                    int[] dados = parseData(line.substring(6).trim(), onde, f);
+                    if (dados == null) continue;
+                    // Como no ConfigLoader, o último DADOS da folha vale
+                    if (f.templates.put(folhaAtual, dados) != null) f.avisos.add(onde + "DADOS repetido para " + folhaAtual + "; vale este");
+                } else {
+                    f.avisos.add(onde + "linha não reconhecida (esperado DADOS: ou ANCORA:); ignorada");
+                }
+            }
+        }
+    }
+
+    /** "w;h;x,y;x,y;x,y;x,y" → {w, h, x0, y0, ..., x3, y3}; null (com aviso registrado) se inválido. */
+    private static int[] parseData(String texto, String onde, Fontes f) {
+        String[] partes = texto.split(";");
+        if (partes.length != 6) {
+            f.avisos.add(onde + "DADOS: esperados 6 campos, encontrados " + partes.length + "; linha ignorada");
+            return null;
+        }
+        int[] dados = new int[10];
+        dados[0] = parseCoordinate(partes[0], onde + "largura", f);
+        dados[1] = parseCoordinate(partes[1], onde + "altura", f);
+        for (int i = 0; i < 4; i++) {
+            String[] xy = partes[2 + i].trim().split(",");
+            if (xy.length != 2) {
+                f.avisos.add(onde + "DADOS: coordenada " + AnchorPriors.NOMES_CANTOS[i] + " deveria ser x,y; linha ignorada");
+                return null;
+            }
+            dados[2 + 2 * i] = parseCoordinate(xy[0], onde + AnchorPriors.NOMES_CANTOS[i] + " x", f);
+            dados[3 + 2 * i] = parseCoordinate(xy[1], onde + AnchorPriors.NOMES_CANTOS[i] + " y", f);
+        }
+        for (int v : dados) if (v < 0) return null;
+        if (dados[0] == 0 || dados[1] == 0) {
+            f.avisos.add(onde + "DADOS: página de tamanho zero; linha ignorada");
+            return null;
+        }
+        for (int i = 0; i < 4; i++) {
+            if (dados[2 + 2 * i] >= dados[0] || dados[3 + 2 * i] >= dados[1]) {
+                f.avisos.add(onde + "DADOS: âncora " + AnchorPriors.NOMES_CANTOS[i] + " fora da página; linha ignorada");
+                return null;
+            }
+        }
+        return dados;
+    }
+
+    /** Inteiro não negativo; -1 (com aviso registrado; a linha é ignorada) se inválido. */
+    private static int parseCoordinate(String texto, String campo, Fontes f) {
+        try {
+            int v = Integer.parseInt(texto.trim());
+            if (v >= 0) return v;
+            f.avisos.add(campo + " negativo: " + texto.trim());
+            f.divergencias.add(campo + ": a leitura do texto aceitaria o valor negativo");
+        } catch (NumberFormatException e) {
+            f.avisos.add(campo + " não é um número: '" + texto.trim() + "'");
+            f.divergencias.add(campo + ": a leitura do texto pararia aqui e perderia o resto do arquivo");
+        }
+        return -1;
+    }
+
+    // --- Formato binário ---
+    // Cabeçalho: mágico, versão, tamanho e data das duas fontes, CRC32 e tamanho do corpo.
+    // Corpo: textos (n, [tamanho u16, UTF-8]...), alternativas (n, [folha, questão, opção, x, y]...),
+    //        templates (n, [nome, estratégia ou -1, w, h, 4 × (x, y)]...). Inteiros de 32 bits, big-endian.
+
+    private static void write(Fontes f, Path pacote, Path config, Path templates) throws IOException {
+        f.templates.keySet().forEach(f::texto);
+        f.estrategias.values().forEach(f::texto);
+        ByteBuffer corpo = ByteBuffer.allocate(bodySize(f));
+        corpo.putInt(f.textos.size());
+        for (String s : f.textos) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            corpo.putShort((short) bytes.length);
+            corpo.put(bytes);
+        }
+        corpo.putInt(f.alternativas.size());
+        for (int[] a : f.alternativas) for (int v : a) corpo.putInt(v);
+        corpo.putInt(f.templates.size());
+        for (Map.Entry<String, int[]> t : f.templates.entrySet()) {
+            corpo.putInt(f.indices.get(t.getKey()));
+            String estrategia = f.estrategias.get(t.getKey());
+            corpo.putInt(estrategia != null ? f.indices.get(estrategia) : SEM_TEXTO);
+            for (int v : t.getValue()) corpo.putInt(v);
+        }
+        corpo.flip();
+        CRC32 crc = new CRC32();
+        crc.update(corpo.duplicate());
+
+        Path temp = pacote.resolveSibling(pacote.getFileName() + ".tmp");
+        if (pacote.getParent() != null) Files.createDirectories(pacote.getParent());
+        try (OutputStream os = Files.newOutputStream(temp); DataOutputStream out = new DataOutputStream(os)) {
+            out.writeLong(MAGICO);
+            out.writeInt(VERSAO);
+            out.writeLong(Files.size(config));
+            out.writeLong(Files.getLastModifiedTime(config).toMillis());
+            out.writeLong(Files.size(templates));
+            out.writeLong(Files.getLastModifiedTime(templates).toMillis());
+            out.writeInt((int) crc.getValue());
+            out.writeInt(corpo.remaining());
+            out.write(corpo.array(), 0, corpo.remaining());
+        }
+        Files.move(temp, pacote, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static int bodySize(Fontes f) {
+        int tamanho = 4;
+        for (String s : f.textos) tamanho += 2 + s.getBytes(StandardCharsets.UTF_8).length;
+        return tamanho + 4 + f.alternativas.size() * 5 * 4 + 4 + f.templates.size() * 12 * 4;
+    }
+
+    /** Lê o pacote; null se for de outra versão ou as fontes tiverem mudado desde a compilação. */
+    private static Layout read(Path pacote, Path config, Path templates) throws IOException {
+        try (FileChannel canal = FileChannel.open(pacote, StandardOpenOption.READ)) {
+            if (canal.size() < TAMANHO_CABECALHO) throw new IOException("arquivo truncado");
+            MappedByteBuffer buf = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+            if (buf.getLong() != MAGICO) throw new IOException("não é um pacote de layout");
+            if (buf.getInt() != VERSAO) return null;
+            if (buf.getLong() != Files.size(config) || buf.getLong() != Files.getLastModifiedTime(config).toMillis()
+                    || buf.getLong() != Files.size(templates) || buf.getLong() != Files.getLastModifiedTime(templates).toMillis()) {
+                return null;
+            }
+            int crcEsperado = buf.getInt();
+            int tamanho = buf.getInt();
+            if (tamanho != buf.remaining()) throw new IOException("arquivo truncado");
+            CRC32 crc = new CRC32();
+            crc.update(buf.duplicate());
+            if ((int) crc.getValue() != crcEsperado) throw new IOException("CRC não confere");
+
+            String[] textos = new String[buf.getInt()];
+            byte[] bytes = new byte[256];
+            for (int i = 0; i < textos.length; i++) {
+                int n = buf.getShort() & 0xFFFF;
+                if (n > bytes.length) bytes = new byte[n];
+                buf.get(bytes, 0, n);
+                textos[i] = new String(bytes, 0, n, StandardCharsets.UTF_8);
+            }
+
+            int nAlternativas = buf.getInt();
+            List<Alternativa> alternativas = new ArrayList<>(nAlternativas);
+            for (int i = 0; i < nAlternativas; i++) {
+                alternativas.add(new Alternativa(textos[buf.getInt()], textos[buf.getInt()], textos[buf.getInt()], buf.getInt(), buf.getInt()));
+            }
+
+            int nTemplates = buf.getInt();
+            Map<String, FolhaTemplate> mapa = new HashMap<>();
+            for (int i = 0; i < nTemplates; i++) {
+                String nome = textos[buf.getInt()];
+                int estrategia = buf.getInt();
+                Size tamanhoPagina = new Size(buf.getInt(), buf.getInt());
+                Point[] pontos = new Point[4];
+                for (int p = 0; p < 4; p++) pontos[p] = new Point(buf.getInt(), buf.getInt());
+                FolhaTemplate t = new FolhaTemplate(tamanhoPagina, new MatOfPoint2f(pontos));
+                if (estrategia != SEM_TEXTO) t.anchorStrategy = textos[estrategia];
+                mapa.put(nome, t);
+            }
+            return new Layout(alternativas, mapa);
+        }
+    }
+
+    private static Layout toLayout(Fontes f) {
+        List<Alternativa> alternativas = new ArrayList<>(f.alternativas.size());
+        for (int[] a : f.alternativas) alternativas.add(new Alternativa(f.textos.get(a[0]), f.textos.get(a[1]), f.textos.get(a[2]), a[3], a[4]));
+        Map<String, FolhaTemplate> mapa = new HashMap<>();
+        for (Map.Entry<String, int[]> e : f.templates.entrySet()) {
+            int[] d = e.getValue();
+            FolhaTemplate t = new FolhaTemplate(new Size(d[0], d[1]),
+                    new MatOfPoint2f(new Point(d[2], d[3]), new Point(d[4], d[5]), new Point(d[6], d[7]), new Point(d[8], d[9])));
+            t.anchorStrategy = f.estrategias.get(e.getKey());
+            mapa.put(e.getKey(), t);
+        }
+        return new Layout(alternativas, mapa);
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path config = Paths.get(args.length > 0 ? args[0] : PATH_CONFIG);
+        Path templates = Paths.get(args.length > 1 ? args[1] : PATH_TEMPLATES);
+        Path pacote = Paths.get(args.length > 2 ? args[2] : LAYOUT_BUNDLE.isEmpty() ? "layout.bin" : LAYOUT_BUNDLE);
+        int avisos = compile(config, templates, pacote);
+        Log.flush();
+        System.out.printf("Pacote de layout gravado: %s (%d bytes, %d aviso(s))%n", pacote, Files.size(pacote), avisos);
+    }
+}
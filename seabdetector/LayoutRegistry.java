@@ -0,0 +1,224 @@
+package seabdetector;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.regex.Pattern;
+
+import static seabdetector.Constants.*;
+import static seabdetector.DataModels.*;
+
+/**
+ * Layouts por edição de prova: (ano, tipoProva) do QR → pasta {@code <seab.layouts.dir>/<ano>_<tipo>/} com o
+ * config.txt e o templates.txt da edição (carregados pelo {@link LayoutBundle}, com o pacote na mesma pasta).
+ * Dentro da edição, a folha do QR escolhe o template e as bolhas.
+ *
+ * Cada edição é carregada na primeira vez que um QR dela aparece e fica num cache LRU de {@code seab.layouts.cache}
+ * edições. Edições sem pasta própria usam o layout padrão (PATH_CONFIG/PATH_TEMPLATES), que nunca é descartado; o fato
+ * de a pasta não existir também fica no LRU, então QRs com edições inventadas não acumulam memória.
+ * Os workers consultam o registro ao mesmo tempo. A trava cobre só o mapa: a carga de uma edição (disco, parsing)
+ * roda fora dela, e só os workers com folhas da mesma edição esperam por ela.
+ *
+ * O nome da pasta vem do QR ({@code <ano>_<tipo>}) e só é usado se tiver apenas letras, dígitos, '_' e '-'; qualquer
+ * outro (p.ex. com ".." ou separadores) usa o layout padrão, sem tocar no disco.
+ *
+ * As colunas do arquivo organizado são a união das questões do layout padrão e de todas as edições da pasta: na
+ * abertura, o config.txt de cada edição é lido só para os nomes das questões (sem templates), em ordem de pasta.
+ */
+public class LayoutRegistry {
+
+    /** Template de alinhamento e bolhas de uma folha de uma edição. */
+    public static class SheetLayout {
+        public final FolhaTemplate template;
+        public final List<Alternativa> alternativas;
+
+        SheetLayout(FolhaTemplate template, List<Alternativa> alternativas) {
+            this.template = template;
+            this.alternativas = alternativas;
+        }
+    }
+
+    /** Layout de uma edição, já separado por folha (o OMR não filtra as alternativas a cada folha). */
+    private static class Edicao {
+        final LayoutBundle.Layout layout;
+        final Map<String, SheetLayout> folhas = new HashMap<>();
+
+        Edicao(LayoutBundle.Layout layout) {
+            this.layout = layout;
+            Map<String, List<Alternativa>> porFolha = new HashMap<>();
+            for (Alternativa a : layout.alternativas) porFolha.computeIfAbsent(a.folha, k -> new ArrayList<>()).add(a);
+            layout.templates.forEach((folha, template) -> {
+                List<Alternativa> alternativas = porFolha.get(folha);
+                if (alternativas != null) folhas.put(folha, new SheetLayout(template, Collections.unmodifiableList(alternativas)));
+            });
+        }
+    }
+
+    private static final Pattern ID_EDICAO = Pattern.compile("[A-Za-z0-9_-]+");
+
+    private final Path pasta;
+    private final Edicao padrao;
+    private final Set<String> todasAsQuestoes;
+    // Carga de cada edição (o padrão, se ela não tem pasta); a trava é o próprio mapa, e a carga roda fora dela
+    private final Map<String, CompletableFuture<Edicao>> cache;
+    private long descartadas;
+
+    public LayoutRegistry(LayoutBundle.Layout padrao, Path pasta, int capacidade) {
+        this.pasta = pasta;
+        this.padrao = new Edicao(padrao);
+        this.todasAsQuestoes = new LinkedHashSet<>();
+        for (Alternativa a : padrao.alternativas) todasAsQuestoes.add(a.questao);
+        scanEditionQuestions();
+        this.cache = new LinkedHashMap<String, CompletableFuture<Edicao>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CompletableFuture<Edicao>> maisAntiga) {
+                if (size() <= capacidade) return false;
+                // Os templates descartados podem estar em uso por outro worker; as MatOfPoint2f são liberadas pelo GC
+                if (maisAntiga.getValue().getNow(null) != LayoutRegistry.this.padrao) {
+                    descartadas++;
+                    Log.info("Layout removido do cache", "edicao", maisAntiga.getKey());
+                }
+                return true;
+            }
+        };
+    }
+
+    /** Registro com o layout padrão e as edições em {@code seab.layouts.dir}. */
+    public static LayoutRegistry load() {
+        return new LayoutRegistry(LayoutBundle.load(), Paths.get(LAYOUTS_DIR), LAYOUT_CACHE_SIZE);
+    }
+
+    /** Um template qualquer do layout padrão (estimativa da resolução antes de ler o QR); null se não houver. */
+    public FolhaTemplate defaultTemplate() {
+        return padrao.layout.templates.isEmpty() ? null : padrao.layout.templates.values().iterator().next();
+    }
+
+    /**
+     * Colunas do arquivo organizado: as questões do layout padrão na ordem do config.txt, seguidas das questões que só
+     * existem em edições de {@code seab.layouts.dir} (edições em ordem de nome de pasta).
+     */
+    public Set<String> allQuestions() {
+        return todasAsQuestoes;
+    }
+
+    /** Acrescenta às colunas as questões do config.txt de cada edição da pasta. */
+    private void scanEditionQuestions() {
+        if (!Files.isDirectory(pasta)) return;
+        List<Path> edicoes = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(pasta, Files::isDirectory)) {
+            ds.forEach(edicoes::add);
+        } catch (IOException e) {
+            throw new IllegalStateException("Não foi possível listar as edições em " + pasta + ": " + e.getMessage(), e);
+        }
+        Collections.sort(edicoes);
+        for (Path edicao : edicoes) {
+            Path config = edicao.resolve("config.txt");
+            if (!Files.isRegularFile(config)) continue;
+            int antes = todasAsQuestoes.size();
+            for (Alternativa a : ConfigLoader.loadAlternativas(config.toString())) todasAsQuestoes.add(a.questao);
+            if (todasAsQuestoes.size() > antes) {
+                Log.info("Questões da edição acrescentadas ao arquivo organizado", "edicao", edicao.getFileName(),
+                        "questoes", todasAsQuestoes.size() - antes);
+            }
+        }
+    }
+
+    /**
+     * Layout da folha do QR na edição (ano, tipoProva) do QR.
+     * @return null se a edição não tem template ou bolhas para a folha.
+     */
+    public SheetLayout find(QrData dadosQR) {
+        return edition(dadosQR.ano, dadosQR.tipoProva).folhas.get(dadosQR.folhaNome);
+    }
+
+    private Edicao edition(String ano, String tipoProva) {
+        String id = ano + "_" + tipoProva;
+        if (!ID_EDICAO.matcher(id).matches()) {
+            Log.warn("Edição do QR com caracteres inválidos; usando o layout padrão", "edicao", id);
+            return padrao;
+        }
+
+        CompletableFuture<Edicao> carga;
+        boolean carregar = false;
+        synchronized (cache) {
+            carga = cache.get(id);
+            if (carga == null) {
+                carga = new CompletableFuture<>();
+                cache.put(id, carga);
+                carregar = true;
+            }
+        }
+        if (carregar) {
+            try {
+                carga.complete(loadEdition(id));
+            } catch (RuntimeException e) {
+                // Sem entrada quebrada no cache: a próxima folha da edição tenta de novo
+                synchronized (cache) {
+                    cache.remove(id, carga);
+                }
+                carga.completeExceptionally(e);
+                throw e;
+            }
+        }
+        try {
+            return carga.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+    }
+
+    /** Lê a edição {@code id} (já validada) fora da trava; o padrão se ela não tem pasta. */
+    private Edicao loadEdition(String id) {
+        Path pastaEdicao = pasta.resolve(id);
+        if (!Files.isDirectory(pastaEdicao)) return padrao;
+        LayoutBundle.Layout layout = LayoutBundle.load(pastaEdicao.resolve("config.txt"), pastaEdicao.resolve("templates.txt"),
+                LAYOUT_BUNDLE.isEmpty() ? null : pastaEdicao.resolve("layout.bin"));
+        Edicao edicao = new Edicao(layout);
+        Log.info("Layout carregado", "edicao", id, "folhas", edicao.folhas.size(), "alternativas", layout.alternativas.size());
+
+        // O cabeçalho já foi gravado com as questões vistas na abertura; só uma edição alterada depois fica de fora
+        Set<String> fora = new LinkedHashSet<>();
+        for (Alternativa a : layout.alternativas) if (!todasAsQuestoes.contains(a.questao)) fora.add(a.questao);
+        if (!fora.isEmpty()) {
+            Log.error("Edição com questões fora do arquivo organizado (config.txt alterado depois da abertura?); reinicie a execução",
+                    "edicao", id, "questoes", String.join(",", fora));
+        }
+        return edicao;
+    }
+
+    public int getCachedEditions() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    public long getEvictions() {
+        synchronized (cache) {
+            return descartadas;
+        }
+    }
+
+    /** Libera os templates das edições em cache e do padrão; só no fim da execução. */
+    public void release() {
+        synchronized (cache) {
+            for (CompletableFuture<Edicao> carga : cache.values()) {
+                Edicao edicao = carga.getNow(null);
+                if (edicao != null && edicao != padrao) edicao.layout.release();
+            }
+            cache.clear();
+        }
+        padrao.layout.release();
+    }
+}
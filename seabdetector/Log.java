@@ -0,0 +1,201 @@
+package seabdetector;
+
+import java.io.PrintStream;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Log assíncrono com níveis e campos chave=valor, para as mensagens por folha.
+ *
+ * Os workers apenas enfileiram o registro (mensagem, campos, instante, thread) em um buffer circular
+ * limitado; a formatação e a escrita no console acontecem na thread "seab-log". Assim nenhum worker
+ * disputa o lock do System.out. Com o buffer cheio, ERROR/WARN aguardam vaga e INFO/DEBUG são descartados
+ * (a quantidade descartada é informada no próprio log).
+ *
+ * Dentro do Log um nível desligado custa só a comparação do nível, mas a chamada em si já montou o array dos
+ * campos e fez o boxing de int/long/double. Nos caminhos por folha ou por região, proteja a chamada com
+ * {@link #isDebugEnabled()} / {@link #isInfoEnabled()}; aí o nível desligado não aloca nada. Para mensagens caras
+ * use também a variante com {@link Supplier}.
+ *
+ * Exemplo: {@code Log.warn("QR Code não lido", "arquivo", origem, "motivo", "qr_nao_lido")}
+ * gera {@code 10:31:02.417 WARN  [seab-worker] QR Code não lido arquivo=lote1/f001.jpg motivo=qr_nao_lido}.
+ */
+public class Log {
+
+    public enum Level { ERROR, WARN, INFO, DEBUG }
+
+    private static final int CAPACIDADE = Math.max(64, Integer.getInteger("seab.log.buffer", 8192));
+    private static final DateTimeFormatter HORA = DateTimeFormatter.ofPattern("HH:mm:ss.SSS");
+
+    private static final String PROPRIEDADE_NIVEL = System.getProperty("seab.log.level");
+    private static volatile Level nivel = PROPRIEDADE_NIVEL != null ? Level.valueOf(PROPRIEDADE_NIVEL.toUpperCase()) : Level.INFO;
+
+    private static final BlockingQueue<Registro> fila = new ArrayBlockingQueue<>(CAPACIDADE);
+    private static final LongAdder descartados = new LongAdder();
+
+    /** Uma mensagem ainda não formatada. {@code fim != null} marca um pedido de {@link #flush()}. */
+    private static class Registro {
+        final Level nivel;
+        final long instante;
+        final String thread;
+        final Object mensagem; // String ou Supplier<String>
+        final Object[] campos;
+        final Throwable erro;
+        final CountDownLatch fim;
+
+        Registro(Level nivel, Object mensagem, Throwable erro, Object[] campos, CountDownLatch fim) {
+            this.nivel = nivel;
+            this.instante = System.currentTimeMillis();
+            this.thread = Thread.currentThread().getName();
+            this.mensagem = mensagem;
+            this.campos = campos;
+            this.erro = erro;
+            this.fim = fim;
+        }
+    }
+
+    static {
+        Thread escritor = new Thread(Log::drainLoop, "seab-log");
+        escritor.setDaemon(true);
+        escritor.start();
+    }
+
+    public static boolean isEnabled(Level l) {
+        return l.ordinal() <= nivel.ordinal();
+    }
+
+    public static boolean isInfoEnabled() {
+        return Level.INFO.ordinal() <= nivel.ordinal();
+    }
+
+    public static boolean isDebugEnabled() {
+        return Level.DEBUG.ordinal() <= nivel.ordinal();
+    }
+
+    public static Level getLevel() {
+        return nivel;
+    }
+
+    public static void setLevel(Level novo) {
+        nivel = novo;
+    }
+
+    /** Define o nível apenas se {@code -Dseab.log.level} não foi informado (padrões por modo de execução). */
+    public static void setDefaultLevel(Level padrao) {
+        if (PROPRIEDADE_NIVEL == null) nivel = padrao;
+    }
+
+    public static void error(String mensagem, Throwable erro, Object... campos) {
+        if (isEnabled(Level.ERROR)) enqueue(new Registro(Level.ERROR, mensagem, erro, campos, null));
+    }
+
+    public static void error(String mensagem, Object... campos) {
+        if (isEnabled(Level.ERROR)) enqueue(new Registro(Level.ERROR, mensagem, null, campos, null));
+    }
+
+    public static void warn(String mensagem, Object... campos) {
+        if (isEnabled(Level.WARN)) enqueue(new Registro(Level.WARN, mensagem, null, campos, null));
+    }
+
+    public static void info(String mensagem, Object... campos) {
+        if (isEnabled(Level.INFO)) enqueue(new Registro(Level.INFO, mensagem, null, campos, null));
+    }
+
+    public static void debug(String mensagem, Object... campos) {
+        if (isEnabled(Level.DEBUG)) enqueue(new Registro(Level.DEBUG, mensagem, null, campos, null));
+    }
+
+    /** A mensagem só é montada (na thread de escrita) se DEBUG estiver ligado. */
+    public static void debug(Supplier<String> mensagem, Object... campos) {
+        if (isEnabled(Level.DEBUG)) enqueue(new Registro(Level.DEBUG, mensagem, null, campos, null));
+    }
+
+    /** Aguarda a escrita de tudo o que foi registrado até aqui (ex.: antes do sumário final). */
+    public static void flush() {
+        CountDownLatch fim = new CountDownLatch(1);
+        try {
+            fila.put(new Registro(Level.ERROR, null, null, null, fim));
+            fim.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void enqueue(Registro r) {
+        if (fila.offer(r)) return;
+        if (r.nivel.ordinal() > Level.WARN.ordinal()) {
+            descartados.increment();
+            return;
+        }
+        try {
+            fila.put(r); // Erros e avisos nunca são perdidos
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void drainLoop() {
+        List<Registro> lote = new ArrayList<>(256);
+        StringBuilder sb = new StringBuilder(256);
+        while (true) {
+            try {
+                lote.add(fila.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            fila.drainTo(lote, 255);
+
+            boolean usouOut = false, usouErr = false;
+            for (Registro r : lote) {
+                if (r.fim != null) {
+                    System.out.flush();
+                    System.err.flush();
+                    r.fim.countDown();
+                    continue;
+                }
+                PrintStream destino = r.nivel.ordinal() <= Level.WARN.ordinal() ? System.err : System.out;
+                sb.setLength(0);
+                format(r, sb);
+                destino.println(sb);
+                if (r.erro != null) r.erro.printStackTrace(destino);
+                if (destino == System.err) usouErr = true; else usouOut = true;
+            }
+            long perdidos = descartados.sumThenReset();
+            if (perdidos > 0) {
+                System.err.printf("%s WARN  [seab-log] Mensagens descartadas (buffer cheio) quantidade=%d%n",
+                        HORA.format(LocalDateTime.now()), perdidos);
+                usouErr = true;
+            }
+            if (usouOut) System.out.flush();
+            if (usouErr) System.err.flush();
+            lote.clear();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void format(Registro r, StringBuilder sb) {
+        sb.append(HORA.format(LocalDateTime.ofInstant(Instant.ofEpochMilli(r.instante), ZoneId.systemDefault())));
+        sb.append(' ').append(String.format("%-5s", r.nivel)).append(" [").append(r.thread).append("] ");
+        sb.append(r.mensagem instanceof Supplier ? ((Supplier<String>) r.mensagem).get() : r.mensagem);
+        if (r.campos == null) return;
+        for (int i = 0; i + 1 < r.campos.length; i += 2) {
+            sb.append(' ').append(r.campos[i]).append('=');
+            String valor = String.valueOf(r.campos[i + 1]);
+            if (valor.isEmpty() || valor.indexOf(' ') >= 0 || valor.indexOf('"') >= 0) {
+                sb.append('"').append(valor.replace("\"", "\\\"")).append('"');
+            } else {
+                sb.append(valor);
+            }
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package seabdetector;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Registro de métricas do pipeline: contadores sem trava e um histograma de latência por etapa.
+ * Substitui os printf de [TIMER] por folha: registrar custa alguns incrementos atômicos.
+ *
+ * Snapshots periódicos são gravados em JSON e no formato texto do Prometheus (para o textfile collector
+ * do node exporter). A escrita é atômica (arquivo temporário + move), então o coletor nunca lê um arquivo pela metade.
+ */
+public class Metrics {
+
+    /** Etapas medidas. QR_0/QR_180 são as tentativas de leitura em cada orientação. */
+    public enum Stage {
+        LOAD("load"), QR_0("qr_0"), QR_180("qr_180"), ANCHORS("anchors"), WARP("warp"),
+        OMR("omr"), OUTPUT("output"), SHEET("sheet_total");
+
+        final String nome;
+
+        Stage(String nome) {
+            this.nome = nome;
+        }
+    }
+
+    public static final String ARQUIVO_JSON = "metrics.json";
+    public static final String ARQUIVO_PROMETHEUS = "seab_metrics.prom";
+
+    private static final Map<Stage, LatencyHistogram> histogramas = new EnumMap<>(Stage.class);
+    private static final LongAdder folhasLidas = new LongAdder();
+    private static final LongAdder cadernosCompletos = new LongAdder();
+    private static final Map<String, LongAdder> falhasPorMotivo = new ConcurrentHashMap<>();
+    private static final long inicioMs = System.currentTimeMillis();
+
+    private static ScheduledExecutorService agendador;
+
+    static {
+        for (Stage s : Stage.values()) histogramas.put(s, new LatencyHistogram());
+    }
+
+    public static void record(Stage etapa, long nanos) {
+        histogramas.get(etapa).record(nanos);
+    }
+
+    public static void sheetRead() {
+        folhasLidas.increment();
+    }
+
+    public static void bookletCompleted() {
+        cadernosCompletos.increment();
+    }
+
+    public static void failure(String motivo) {
+        falhasPorMotivo.computeIfAbsent(motivo, k -> new LongAdder()).increment();
+    }
+
+    public static LatencyHistogram.Snapshot snapshot(Stage etapa) {
+        return histogramas.get(etapa).snapshot();
+    }
+
+    public static long getFolhasLidas() {
+        return folhasLidas.sum();
+    }
+
+    public static long getCadernosCompletos() {
+        return cadernosCompletos.sum();
+    }
+
+    public static Map<String, Long> getFalhasPorMotivo() {
+        Map<String, Long> copia = new TreeMap<>();
+        falhasPorMotivo.forEach((motivo, n) -> copia.put(motivo, n.sum()));
+        return copia;
+    }
+
+    /**
+     * Grava snapshots em {@code pasta} a cada {@code intervaloSegundos} (0 desliga), em uma thread daemon.
+     */
+    public static synchronized void startSnapshots(Path pasta, long intervaloSegundos) {
+        if (intervaloSegundos <= 0 || agendador != null) return;
+        agendador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "seab-metrics");
+            t.setDaemon(true);
+            return t;
+        });
+        agendador.scheduleAtFixedRate(() -> writeSnapshot(pasta), intervaloSegundos, intervaloSegundos, TimeUnit.SECONDS);
+    }
+
+    /** Para os snapshots periódicos e grava o snapshot final. */
+    public static synchronized void stopSnapshots(Path pasta) {
+        if (agendador == null) return;
+        agendador.shutdownNow();
+        agendador = null;
+        writeSnapshot(pasta);
+    }
+
+    public static void writeSnapshot(Path pasta) {
+        try {
+            writeAtomically(pasta.resolve(ARQUIVO_JSON), toJson());
+            writeAtomically(pasta.resolve(ARQUIVO_PROMETHEUS), toPrometheus());
+        } catch (IOException e) {
+            Log.error("Erro ao gravar métricas", "pasta", pasta, "erro", e.getMessage());
+        }
+    }
+
+    private static void writeAtomically(Path destino, String conteudo) throws IOException {
+        Path temp = destino.resolveSibling(destino.getFileName() + ".tmp");
+        try (BufferedWriter bw = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            bw.write(conteudo);
+        }
+        Files.move(temp, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static String toJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\n");
+        sb.append("  \"timestamp_ms\": ").append(System.currentTimeMillis()).append(",\n");
+        sb.append("  \"uptime_s\": ").append((System.currentTimeMillis() - inicioMs) / 1000).append(",\n");
+        sb.append("  \"sheets_read\": ").append(folhasLidas.sum()).append(",\n");
+        sb.append("  \"booklets_completed\": ").append(cadernosCompletos.sum()).append(",\n");
+
+        sb.append("  \"failures\": {");
+        String sep = "";
+        for (Map.Entry<String, Long> f : getFalhasPorMotivo().entrySet()) {
+            sb.append(sep).append("\n    \"").append(f.getKey()).append("\": ").append(f.getValue());
+            sep = ",";
+        }
+        sb.append(sep.isEmpty() ? "},\n" : "\n  },\n");
+
+        sb.append("  \"anchor_search\": {");
+        for (int nivel = 0; nivel < AnchorPriors.levelCount(); nivel++) {
+            sb.append(nivel == 0 ? "" : ",").append("\n    \"").append(AnchorPriors.describeLevel(nivel)).append("\": ");
+            sb.append("{\"attempts\": ").append(AnchorPriors.getAttempts(nivel))
+              .append(", \"hits\": ").append(AnchorPriors.getHits(nivel)).append('}');
+        }
+        sb.append("\n  },\n");
+
+        sb.append("  \"stages\": {");
+        sep = "";
+        for (Stage s : Stage.values()) {
+            LatencyHistogram.Snapshot h = snapshot(s);
+            sb.append(sep).append("\n    \"").append(s.nome).append("\": ");
+            sb.append(String.format(Locale.ROOT,
+                    "{\"count\": %d, \"mean_ms\": %.3f, \"p50_ms\": %.3f, \"p90_ms\": %.3f, \"p95_ms\": %.3f, \"p99_ms\": %.3f, \"p999_ms\": %.3f, \"max_ms\": %.3f}",
+                    h.count, h.meanMs(), h.percentileMs(50), h.percentileMs(90), h.percentileMs(95),
+                    h.percentileMs(99), h.percentileMs(99.9), h.maxMicros / 1000.0));
+            sep = ",";
+        }
+        sb.append("\n  }\n}\n");
+        return sb.toString();
+    }
+
+    static String toPrometheus() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("# HELP seab_sheets_read_total Folhas lidas com sucesso.\n");
+        sb.append("# TYPE seab_sheets_read_total counter\n");
+        sb.append("seab_sheets_read_total ").append(folhasLidas.sum()).append('\n');
+
+        sb.append("# HELP seab_booklets_completed_total Cadernos completos gravados.\n");
+        sb.append("# TYPE seab_booklets_completed_total counter\n");
+        sb.append("seab_booklets_completed_total ").append(cadernosCompletos.sum()).append('\n');
+
+        sb.append("# HELP seab_sheet_failures_total Folhas descartadas, por motivo.\n");
+        sb.append("# TYPE seab_sheet_failures_total counter\n");
+        for (Map.Entry<String, Long> f : getFalhasPorMotivo().entrySet()) {
+            sb.append("seab_sheet_failures_total{reason=\"").append(f.getKey()).append("\"} ").append(f.getValue()).append('\n');
+        }
+
+        sb.append("# HELP seab_anchor_search_attempts_total Buscas de âncora por nível de janela.\n");
+        sb.append("# TYPE seab_anchor_search_attempts_total counter\n");
+        for (int nivel = 0; nivel < AnchorPriors.levelCount(); nivel++) {
+            sb.append("seab_anchor_search_attempts_total{level=\"").append(AnchorPriors.describeLevel(nivel)).append("\"} ")
+              .append(AnchorPriors.getAttempts(nivel)).append('\n');
+        }
+        sb.append("# HELP seab_anchor_search_hits_total Âncoras encontradas por nível de janela.\n");
+        sb.append("# TYPE seab_anchor_search_hits_total counter\n");
+        for (int nivel = 0; nivel < AnchorPriors.levelCount(); nivel++) {
+            sb.append("seab_anchor_search_hits_total{level=\"").append(AnchorPriors.describeLevel(nivel)).append("\"} ")
+              .append(AnchorPriors.getHits(nivel)).append('\n');
+        }
+
+        sb.append("# HELP seab_stage_latency_seconds Latência por etapa do pipeline.\n");
+        sb.append("# TYPE seab_stage_latency_seconds summary\n");
+        double[] quantis = {0.5, 0.9, 0.95, 0.99, 0.999};
+        for (Stage s : Stage.values()) {
+            LatencyHistogram.Snapshot h = snapshot(s);
+            for (double q : quantis) {
+                sb.append(String.format(Locale.ROOT, "seab_stage_latency_seconds{stage=\"%s\",quantile=\"%s\"} %.6f%n",
+                        s.nome, q, h.percentileMs(q * 100) / 1000.0));
+            }
+            sb.append(String.format(Locale.ROOT, "seab_stage_latency_seconds_sum{stage=\"%s\"} %.6f%n", s.nome, h.sumMicros / 1e6));
+            sb.append(String.format(Locale.ROOT, "seab_stage_latency_seconds_count{stage=\"%s\"} %d%n", s.nome, h.count));
+        }
+        return sb.toString();
+    }
+}
@@ -6,6 +6,9 @@ import java.util.*;
 
 import static seabdetector.Constants.*;
 import static seabdetector.DataModels.Alternativa;
+import static seabdetector.DataModels.OptionCodes;
+import static seabdetector.DataModels.QuestionSet;
+import static seabdetector.DataModels.SheetAnswers;
 
 public class OmrReader {
 
@@ -16,9 +19,12 @@ public class OmrReader {
     // consideramos que há ALGUMA marcação, mesmo que o contraste relativo seja nulo.
     private static final double MINIMA_ABSOLUTA_MARCADA = 180.0; 
 
-    public static Map<String, String> readBubbles(Mat recorte, List<Alternativa> alternativasFolha, String debugOutputPath, String baseFileName) {
+    public static SheetAnswers readBubbles(Mat recorte, List<Alternativa> alternativasFolha, String debugOutputPath, String baseFileName) {
 
         Mat cinza = null;
+        String resultado = "erro";
+        JfrEvents.StageEvent evento = new JfrEvents.StageEvent();
+        evento.begin();
         try {
             cinza = new Mat();
             Imgproc.cvtColor(recorte, cinza, Imgproc.COLOR_BGR2GRAY);
@@ -28,9 +34,11 @@ public class OmrReader {
                 porQuestao.computeIfAbsent(a.questao, k -> new ArrayList<>()).add(a);
             }
 
-            Map<String, String> respostasDaFolha = new LinkedHashMap<>();
+            QuestionSet questoes = QuestionSet.of(new ArrayList<>(porQuestao.keySet()));
+            byte[] codigos = new byte[questoes.size()];
 
-            for (String questao : porQuestao.keySet()) {
+            for (int q = 0; q < codigos.length; q++) {
+                String questao = questoes.questoes.get(q);
                 List<Alternativa> lista = porQuestao.get(questao);
                 List<Alternativa> marcadas = new ArrayList<>();
                 Map<Alternativa, Double> medias = new HashMap<>();
@@ -90,12 +98,13 @@ public class OmrReader {
                 }
 
                 // 4. Determina a resposta final (Decisão de Ambiguide Simples e Correta)
-                String respostaFinal;
-                if (marcadas.isEmpty()) respostaFinal = ""; // Somente se nada passou na ativação
-                else if (marcadas.size() > 1) respostaFinal = "?"; // Dupla marcação
-                else respostaFinal = seabdetector.Constants.traduzAlternativa(marcadas.get(0).opcao);
+                // (só o código da opção; o texto de traduzAlternativa é montado na exportação)
+                byte respostaFinal;
+                if (marcadas.isEmpty()) respostaFinal = OptionCodes.EM_BRANCO; // Somente se nada passou na ativação
+                else if (marcadas.size() > 1) respostaFinal = OptionCodes.DUPLA_MARCACAO; // Dupla marcação
+                else respostaFinal = OptionCodes.code(marcadas.get(0).opcao);
 
-                respostasDaFolha.put(questao, respostaFinal);
+                codigos[q] = respostaFinal;
             }
 
             // 5. SALVA A IMAGEM DE DEBUG
@@ -105,10 +114,17 @@ public class OmrReader {
                 //System.out.println("  [DEBUG] Imagem OMR salva em: " + debugFileName);
             //}
             
-            return respostasDaFolha;
+            resultado = "ok";
+            return new SheetAnswers(questoes, codigos);
 
         } finally {
             if (cinza != null) cinza.release();
+            if (evento.shouldCommit()) {
+                evento.arquivo = baseFileName;
+                evento.etapa = "omr";
+                evento.resultado = resultado;
+                evento.commit();
+            }
         }
     }
 }
\ No newline at end of file
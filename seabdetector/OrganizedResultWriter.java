@@ -0,0 +1,75 @@
+package seabdetector;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Set;
+
+import static seabdetector.DataModels.*;
+
+/**
+ * Escreve o arquivo de respostas organizado (1 linha por caderno completo) de forma incremental.
+ * O cabeçalho é gravado na abertura e cada caderno é anexado assim que o pulmão o completa,
+ * o que permite acompanhar o resultado durante execuções longas (modo pasta monitorada).
+ */
+public class OrganizedResultWriter implements Closeable {
+
+    private final BufferedWriter bw;
+    private final Set<String> todasAsQuestoes;
+    private final boolean flushPorCaderno;
+
+    public OrganizedResultWriter(String caminhoTXT, Set<String> todasAsQuestoes, boolean flushPorCaderno) throws IOException {
+        this.bw = new BufferedWriter(new FileWriter(caminhoTXT, false));
+        this.todasAsQuestoes = todasAsQuestoes;
+        this.flushPorCaderno = flushPorCaderno;
+
+        // 1. Cabeçalho
+        StringBuilder header = new StringBuilder();
+        header.append("id_instituicao,id_respondente");
+        for (String questao : todasAsQuestoes) {
+            header.append(",").append(questao);
+        }
+        bw.write(header.toString());
+        bw.newLine();
+        if (flushPorCaderno) bw.flush();
+    }
+
+    /**
+     * Anexa a linha de um caderno completo, com as respostas na ordem do cabeçalho (traduzidas aqui, na exportação).
+     */
+    public void writeBooklet(BookletAnswers caderno) throws IOException {
+        StringBuilder dataLine = new StringBuilder();
+
+        dataLine.append(caderno.chave.instituicao()).append(",");
+        dataLine.append(caderno.chave.respondente()); // Usa o ID original do respondente
+
+        for (String questao : todasAsQuestoes) {
+            dataLine.append(",").append(caderno.text(questao));
+        }
+
+        bw.write(dataLine.toString());
+        bw.newLine();
+        if (flushPorCaderno) bw.flush();
+    }
+
+    /**
+     * Anexa uma linha já em texto, com as respostas na ordem do cabeçalho (conversão do arquivo colunar).
+     */
+    public void writeRow(String instituicao, String respondente, String[] respostas) throws IOException {
+        StringBuilder dataLine = new StringBuilder();
+        dataLine.append(instituicao).append(",").append(respondente);
+        for (String resposta : respostas) {
+            dataLine.append(",").append(resposta);
+        }
+
+        bw.write(dataLine.toString());
+        bw.newLine();
+        if (flushPorCaderno) bw.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        bw.close();
+    }
+}
@@ -0,0 +1,383 @@
+package seabdetector;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+import static seabdetector.Constants.*;
+import static seabdetector.DataModels.*;
+
+/**
+ * Execução dividida em N processos independentes, sem coordenador: cada processo ({@code SaebDetector particao K/N})
+ * percorre a pasta de entrada inteira, mas só lê as imagens da sua fatia, escolhida pelo hash do caminho relativo
+ * ({@code -Dseab.partition.by=caminho}) ou da subpasta de primeiro nível ({@code instituicao}).
+ *
+ * Cada processo grava um diário {@code particoes/parte_K_de_N.bin} com o resultado de cada folha (o mesmo registro
+ * do {@link ResultCache}) e a posição dela na ordem da descoberta. O pulmão não é montado nas partições: com a fatia
+ * por caminho as folhas de um caderno caem em processos diferentes, e a numeração dos cadernos de um respondente
+ * depende da ordem global. O {@code SaebDetector merge} intercala os diários nessa ordem e passa cada folha pela
+ * consolidação normal, produzindo a mesma saída de um processo único com o mesmo seab.batch.size.
+ *
+ * A detecção de redigitalizações ({@code seab.dedup}) precisa estar desligada: cada processo teria o seu índice, e
+ * com a fatia por caminho a original e a cópia caem em processos diferentes. A partição se recusa a começar com ela
+ * ligada, e o merge recusa diários gravados com ela. Para conferir a junção com um processo único:
+ * {@code java ... seabdetector.Partition <saida do merge> <saida do processo único>} (código de saída 2 se diferem).
+ *
+ * O diário é gravado como {@code .parcial} e só ganha o nome final quando a partição termina: um processo que cai
+ * (p.ex. erro nativo do OpenCV) não deixa diário, e o merge diz qual parte rodar de novo (com o cache de
+ * resultados, a nova execução só lê as folhas que o processo não chegou a gravar no cache).
+ */
+public class Partition {
+
+    static final String PASTA = "particoes";
+    private static final long MAGICO = 0x5345414250415254L; // "SEABPART"
+    private static final int VERSAO = 3; // 3: origem é o caminho relativo à pasta de entrada
+    private static final int BITS_PAGINA = 20; // Posição = ordem do arquivo na descoberta << 20 | página do TIFF
+    private static final int TAMANHO_FIM = 1 + 8 + 8;
+
+    public final int indice;
+    public final int total;
+    public final boolean porInstituicao;
+    private final Path raiz;
+
+    public Partition(int indice, int total, String criterio, Path raiz) {
+        if (total < 1 || indice < 0 || indice >= total) throw new IllegalArgumentException("Partição inválida: " + indice + "/" + total);
+        if (!"caminho".equals(criterio) && !"instituicao".equals(criterio)) {
+            throw new IllegalArgumentException("seab.partition.by deve ser caminho ou instituicao: " + criterio);
+        }
+        this.indice = indice;
+        this.total = total;
+        this.porInstituicao = "instituicao".equals(criterio);
+        this.raiz = raiz;
+    }
+
+    /** Partição "K/N" (K de 0 a N-1). */
+    public static Partition parse(String especificacao, String criterio, Path raiz) {
+        String[] partes = especificacao.split("/");
+        if (partes.length != 2) throw new IllegalArgumentException("Use K/N (p.ex. 0/4): " + especificacao);
+        try {
+            return new Partition(Integer.parseInt(partes[0].trim()), Integer.parseInt(partes[1].trim()), criterio, raiz);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Use K/N (p.ex. 0/4): " + especificacao);
+        }
+    }
+
+    /**
+     * true se o arquivo é desta partição. O caminho relativo usa '/' em qualquer sistema e String.hashCode
+     * é definido na especificação: todos os processos, em qualquer máquina, fazem a mesma divisão.
+     */
+    public boolean owns(Path arquivo) {
+        Path relativo = raiz.relativize(arquivo);
+        String chave = porInstituicao && relativo.getNameCount() > 1 ? relativo.getName(0).toString() : relativo.toString();
+        // Mistura os bits: 31 ≡ 1 (mod 3), então hashCode % 3 seria só a soma dos caracteres e caminhos parecidos se agrupariam
+        int h = chave.replace('\\', '/').hashCode() * 0x9E3779B9;
+        return Math.floorMod(h ^ (h >>> 16), total) == indice;
+    }
+
+    public String fileName() {
+        return "parte_" + indice + "_de_" + total + ".bin";
+    }
+
+    /**
+     * Diário de uma partição. A thread que submete registra a posição de cada folha ({@link #expect}); os resultados
+     * chegam na ordem de submissão ({@link SheetPipeline}) e são gravados com a posição correspondente.
+     */
+    public static class Journal implements Closeable {
+        private final Path arquivo;
+        private final Path temp;
+        private final DataOutputStream out;
+        private final ArrayDeque<Long> posicoes = new ArrayDeque<>();
+        private Map<String, Long> loteAtual = new HashMap<>();
+        private long folhas;
+
+        public Journal(Path pasta, Partition particao, int batchSize) throws IOException {
+            if (DuplicateDetector.POLITICA != DuplicateDetector.Policy.DESLIGADO) {
+                throw new IllegalArgumentException("Partição exige -Dseab.dedup=desligado: cada processo só veria as cópias da própria fatia");
+            }
+            Files.createDirectories(pasta);
+            this.arquivo = pasta.resolve(particao.fileName());
+            this.temp = pasta.resolve(particao.fileName() + ".parcial");
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16));
+            out.writeLong(MAGICO);
+            out.writeInt(VERSAO);
+            out.writeInt(particao.indice);
+            out.writeInt(particao.total);
+            out.writeBoolean(particao.porInstituicao);
+            out.writeInt(batchSize);
+            out.writeUTF(DuplicateDetector.POLITICA.name());
+            out.flush();
+        }
+
+        /** Arquivos da partição no lote atual, pela mesma identidade das folhas (caminho relativo à pasta de entrada). */
+        public void beginBatch(Path raiz, List<Path> arquivos, List<Long> ordens) {
+            loteAtual = new HashMap<>(arquivos.size() * 2);
+            for (int i = 0; i < arquivos.size(); i++) loteAtual.put(SheetInput.relativeId(raiz, arquivos.get(i)), ordens.get(i));
+        }
+
+        /** Registra a posição da folha; chamar imediatamente antes de submetê-la. */
+        public void expect(SheetInput folha) {
+            String id = folha.id();
+            int pagina = 0;
+            int cerquilha = id.lastIndexOf('#'); // "arquivo.tif#N" (ver SheetInput.TiffPageInput)
+            if (cerquilha > 0 && !loteAtual.containsKey(id)) {
+                pagina = Integer.parseInt(id.substring(cerquilha + 1)) - 1;
+                id = id.substring(0, cerquilha);
+            }
+            Long ordem = loteAtual.get(id);
+            if (ordem == null) throw new IllegalStateException("Folha fora do lote atual: " + folha.id());
+            posicoes.addLast((ordem << BITS_PAGINA) | pagina);
+        }
+
+        public void write(SheetResult resultado) {
+            long posicao = posicoes.removeFirst();
+            try {
+                out.writeBoolean(true);
+                out.writeLong(posicao);
+                out.writeUTF(resultado.origem);
+                out.writeUTF(resultado.duplicataDe != null ? resultado.duplicataDe : "");
+                out.writeLong(resultado.duracaoMs);
+                ResultCache.writeResult(out, resultado);
+                folhas++;
+            } catch (IOException e) {
+                throw new IllegalStateException("Não foi possível gravar o diário da partição " + arquivo, e);
+            }
+        }
+
+        public long getSheets() {
+            return folhas;
+        }
+
+        public Path getFile() {
+            return arquivo;
+        }
+
+        /** Grava a marca de fim com o total de arquivos descobertos e publica o diário. */
+        public void finish(long arquivosDescobertos) throws IOException {
+            out.writeBoolean(false);
+            out.writeLong(arquivosDescobertos);
+            out.writeLong(folhas);
+            out.close();
+            Files.move(temp, arquivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /** Leitor de um diário, um registro à frente (para a intercalação). */
+    private static class Reader implements Closeable {
+        final Path arquivo;
+        final DataInputStream in;
+        final int indice, total, batchSize;
+        final boolean porInstituicao;
+        long posicao;
+        SheetResult atual;
+        final long arquivosDescobertos;
+        long folhasLidas;
+
+        Reader(Path arquivo) throws IOException {
+            this.arquivo = arquivo;
+            // A marca de fim é lida antes: a junção só começa (e só grava a saída) se todas as partes são do mesmo acervo
+            try (FileChannel canal = FileChannel.open(arquivo)) {
+                ByteBuffer fim = ByteBuffer.allocate(TAMANHO_FIM);
+                canal.read(fim, Math.max(0, canal.size() - TAMANHO_FIM));
+                fim.flip();
+                if (fim.remaining() < TAMANHO_FIM || fim.get() != 0) throw new IOException("Diário sem a marca de fim: " + arquivo);
+                this.arquivosDescobertos = fim.getLong();
+            }
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(arquivo), 1 << 16));
+            if (in.readLong() != MAGICO || in.readInt() != VERSAO) {
+                in.close();
+                throw new IOException("Não é um diário de partição desta versão: " + arquivo);
+            }
+            this.indice = in.readInt();
+            this.total = in.readInt();
+            this.porInstituicao = in.readBoolean();
+            this.batchSize = in.readInt();
+            String dedup = in.readUTF();
+            if (!DuplicateDetector.Policy.DESLIGADO.name().equals(dedup)) {
+                in.close();
+                throw new IOException("Diário gravado com seab.dedup=" + dedup.toLowerCase() + "; a junção só vale com desligado: " + arquivo);
+            }
+        }
+
+        /** Avança para o próximo registro; false no fim. */
+        boolean advance() throws IOException {
+            try {
+                if (!in.readBoolean()) {
+                    in.readLong(); // Arquivos descobertos, conferidos na abertura
+                    long folhas = in.readLong();
+                    if (folhas != folhasLidas) throw new IOException("diário com " + folhasLidas + " folhas, esperado " + folhas);
+                    atual = null;
+                    return false;
+                }
+                posicao = in.readLong();
+                String origem = in.readUTF();
+                String duplicataDe = in.readUTF();
+                long duracaoMs = in.readLong();
+                SheetResult resultado = ResultCache.readResult(in, origem, duracaoMs);
+                atual = duplicataDe.isEmpty() ? resultado : resultado.replacing(duplicataDe);
+                folhasLidas++;
+                return true;
+            } catch (EOFException e) {
+                throw new IOException("Diário truncado: " + arquivo + " (rode a parte " + indice + "/" + total + " de novo)");
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * Intercala os diários de {@code pasta} na ordem da descoberta e entrega cada folha ao {@code consolidador}.
+     * Exige todas as N partes, completas, da mesma divisão, do mesmo lote e do mesmo acervo.
+     * @return Folhas entregues.
+     */
+    public static long merge(Path pasta, Consumer<SheetResult> consolidador) throws IOException {
+        List<Path> arquivos = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(pasta, "parte_*_de_*.bin")) {
+            ds.forEach(arquivos::add);
+        }
+        if (arquivos.isEmpty()) throw new IOException("Nenhum diário de partição em " + pasta);
+
+        List<Reader> leitores = new ArrayList<>();
+        try {
+            for (Path arquivo : arquivos) leitores.add(new Reader(arquivo));
+            Reader primeiro = leitores.get(0);
+            boolean[] presentes = new boolean[primeiro.total];
+            for (Reader r : leitores) {
+                if (r.total != primeiro.total || r.porInstituicao != primeiro.porInstituicao || r.batchSize != primeiro.batchSize) {
+                    throw new IOException("Diários de divisões diferentes: " + primeiro.arquivo + " e " + r.arquivo);
+                }
+                if (r.arquivosDescobertos != primeiro.arquivosDescobertos) {
+                    throw new IOException("As partes viram acervos diferentes (" + primeiro.arquivosDescobertos + " e "
+                            + r.arquivosDescobertos + " arquivos); a entrada mudou entre as execuções?");
+                }
+                presentes[r.indice] = true;
+            }
+            List<String> faltando = new ArrayList<>();
+            for (int i = 0; i < presentes.length; i++) if (!presentes[i]) faltando.add(i + "/" + primeiro.total);
+            if (!faltando.isEmpty()) {
+                throw new IOException("Partes sem diário completo (rode de novo): " + String.join(", ", faltando));
+            }
+
+            PriorityQueue<Reader> fila = new PriorityQueue<>((a, b) -> Long.compare(a.posicao, b.posicao));
+            for (Reader r : leitores) if (r.advance()) fila.add(r);
+            long entregues = 0;
+            while (!fila.isEmpty()) {
+                Reader r = fila.poll();
+                consolidador.accept(r.atual);
+                entregues++;
+                if (r.advance()) fila.add(r);
+            }
+            return entregues;
+        } finally {
+            for (Reader r : leitores) r.close();
+        }
+    }
+
+    /**
+     * Compara os arquivos de saída de duas pastas (arquivo organizado em texto e colunar, falhas e partes de
+     * {@code shards/}): a saída do merge deve ser idêntica à de um processo único sobre o mesmo acervo.
+     * Métricas e diários ficam de fora (tempos diferem de uma execução para outra).
+     * @return Diferenças encontradas, uma por arquivo; vazia se as saídas são iguais.
+     */
+    public static List<String> compareOutputs(Path a, Path b) throws IOException {
+        List<String> nomes = new ArrayList<>(List.of(OUTPUT_TXT_FILE_ORGANIZED, OUTPUT_COLUMNAR_FILE, OUTPUT_FAILURES_FILE));
+        TreeSet<String> partes = new TreeSet<>();
+        for (Path pasta : List.of(a, b)) {
+            Path shards = pasta.resolve("shards");
+            if (!Files.isDirectory(shards)) continue;
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(shards)) {
+                for (Path p : ds) partes.add("shards/" + p.getFileName());
+            }
+        }
+        nomes.addAll(partes);
+
+        List<String> diferencas = new ArrayList<>();
+        for (String nome : nomes) {
+            Path pa = a.resolve(nome);
+            Path pb = b.resolve(nome);
+            boolean existeA = Files.isRegularFile(pa);
+            boolean existeB = Files.isRegularFile(pb);
+            if (!existeA && !existeB) continue;
+            if (existeA != existeB) {
+                diferencas.add(nome + ": só existe em " + (existeA ? a : b));
+                continue;
+            }
+            long posicao = mismatch(pa, pb);
+            if (posicao < 0) continue;
+            if (nome.endsWith(".col")) {
+                diferencas.add(nome + ": difere a partir do byte " + posicao);
+            } else {
+                diferencas.add(nome + ": " + firstDifferentLine(pa, pb));
+            }
+        }
+        return diferencas;
+    }
+
+    /** Posição do primeiro byte diferente, ou -1 se os arquivos são iguais (como Files.mismatch, que é do Java 12). */
+    static long mismatch(Path a, Path b) throws IOException {
+        try (InputStream ia = Files.newInputStream(a); InputStream ib = Files.newInputStream(b)) {
+            byte[] bufA = new byte[1 << 16];
+            byte[] bufB = new byte[1 << 16];
+            long posicao = 0;
+            while (true) {
+                int na = ia.readNBytes(bufA, 0, bufA.length);
+                int nb = ib.readNBytes(bufB, 0, bufB.length);
+                int n = Math.min(na, nb);
+                for (int i = 0; i < n; i++) {
+                    if (bufA[i] != bufB[i]) return posicao + i;
+                }
+                if (na != nb) return posicao + n; // Um termina antes do outro
+                if (na == 0) return -1;
+                posicao += n;
+            }
+        }
+    }
+
+    private static String firstDifferentLine(Path a, Path b) throws IOException {
+        List<String> la = Files.readAllLines(a, StandardCharsets.UTF_8);
+        List<String> lb = Files.readAllLines(b, StandardCharsets.UTF_8);
+        for (int i = 0; i < Math.min(la.size(), lb.size()); i++) {
+            if (!la.get(i).equals(lb.get(i))) return "linha " + (i + 1) + " difere: \"" + la.get(i) + "\" x \"" + lb.get(i) + "\"";
+        }
+        return la.size() + " linhas x " + lb.size() + " linhas";
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Uso: java ... seabdetector.Partition <saida do merge> <saida do processo único>");
+            System.exit(2);
+        }
+        List<String> diferencas = compareOutputs(Paths.get(args[0]), Paths.get(args[1]));
+        for (String d : diferencas) System.out.println(d);
+        System.out.println(diferencas.isEmpty() ? "Saídas idênticas" : diferencas.size() + " arquivo(s) diferente(s)");
+        if (!diferencas.isEmpty()) System.exit(2);
+    }
+}
@@ -0,0 +1,215 @@
+package seabdetector;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.function.IntSupplier;
+
+/**
+ * Implementação do {@link PipelineControlMXBean}. Acesse com jconsole/VisualVM na própria máquina
+ * (conexão local, sem porta remota aberta).
+ */
+public class PipelineControl implements PipelineControlMXBean {
+
+    public static final String NOME_JMX = "seabdetector:type=Pipeline";
+
+    private final SheetPipeline pipeline;
+    private final IntSupplier cadernosPendentes;
+    private final long inicioNanos = System.nanoTime();
+
+    // Última amostra usada no cálculo da vazão recente
+    private long amostraNanos = inicioNanos;
+    private long amostraFolhas = 0;
+    private double vazaoRecente = 0;
+
+    PipelineControl(SheetPipeline pipeline, IntSupplier cadernosPendentes) {
+        this.pipeline = pipeline;
+        this.cadernosPendentes = cadernosPendentes;
+    }
+
+    /**
+     * Registra o MBean no servidor da plataforma. Falhas no registro não interrompem o processamento.
+     * @param cadernosPendentes Tamanho atual do pulmão (cadernos incompletos).
+     */
+    public static void register(SheetPipeline pipeline, IntSupplier cadernosPendentes) {
+        try {
+            MBeanServer servidor = ManagementFactory.getPlatformMBeanServer();
+            ObjectName nome = new ObjectName(NOME_JMX);
+            if (servidor.isRegistered(nome)) servidor.unregisterMBean(nome);
+            servidor.registerMBean(new PipelineControl(pipeline, cadernosPendentes), nome);
+        } catch (JMException e) {
+            Log.warn("Interface JMX não registrada", "nome", NOME_JMX, "erro", e.getMessage());
+        }
+    }
+
+    @Override
+    public long getSheetsRead() {
+        return Metrics.getFolhasLidas();
+    }
+
+    @Override
+    public long getBookletsCompleted() {
+        return Metrics.getCadernosCompletos();
+    }
+
+    @Override
+    public double getSheetsPerSecond() {
+        double segundos = (System.nanoTime() - inicioNanos) / 1e9;
+        return segundos > 0 ? Metrics.getFolhasLidas() / segundos : 0;
+    }
+
+    /** Vazão desde a consulta anterior (mínimo de 1 s entre amostras, para não oscilar com consultas seguidas). */
+    @Override
+    public synchronized double getSheetsPerSecondRecent() {
+        long agora = System.nanoTime();
+        if (agora - amostraNanos >= 1_000_000_000L) {
+            long folhas = Metrics.getFolhasLidas();
+            vazaoRecente = (folhas - amostraFolhas) / ((agora - amostraNanos) / 1e9);
+            amostraNanos = agora;
+            amostraFolhas = folhas;
+        }
+        return vazaoRecente;
+    }
+
+    @Override
+    public int getSheetsInFlight() {
+        return pipeline.getEmAndamento();
+    }
+
+    @Override
+    public int getSheetsWaitingForWorker() {
+        return pipeline.getAguardandoWorker();
+    }
+
+    @Override
+    public int getBookletsPending() {
+        return cadernosPendentes.getAsInt();
+    }
+
+    @Override
+    public Map<String, Long> getFailuresByReason() {
+        return Metrics.getFalhasPorMotivo();
+    }
+
+    @Override
+    public long getDirectBufferBytes() {
+        return bufferPoolBytes("direct");
+    }
+
+    @Override
+    public long getMappedBufferBytes() {
+        return bufferPoolBytes("mapped");
+    }
+
+    @Override
+    public long getResidentSetBytes() {
+        return residentSetBytes();
+    }
+
+    /** RSS menos o heap reservado: aproxima a memória nativa (Mats do OpenCV, buffers diretos, metaspace). */
+    @Override
+    public long getNativeEstimateBytes() {
+        long rss = residentSetBytes();
+        if (rss == 0) return 0;
+        return Math.max(0, rss - ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getCommitted());
+    }
+
+    @Override
+    public int getWorkers() {
+        return pipeline.getWorkers();
+    }
+
+    @Override
+    public void setWorkers(int workers) {
+        pipeline.setWorkers(workers);
+        Log.info("Ajuste via JMX", "workers", pipeline.getWorkers());
+    }
+
+    @Override
+    public int getBatchSize() {
+        return Tuning.getBatchSize();
+    }
+
+    @Override
+    public void setBatchSize(int batchSize) {
+        Tuning.setBatchSize(batchSize);
+        Log.info("Ajuste via JMX; vale a partir do próximo lote", "lote", batchSize);
+    }
+
+    @Override
+    public int getDebugLevel() {
+        return Tuning.getDebugLevel();
+    }
+
+    @Override
+    public void setDebugLevel(int nivel) {
+        Tuning.setDebugLevel(nivel);
+        Log.info("Ajuste via JMX", "depuracao", nivel);
+    }
+
+    @Override
+    public String getQrOrder() {
+        return Tuning.getQrOrderText();
+    }
+
+    @Override
+    public void setQrOrder(String ordem) {
+        Tuning.setQrOrder(ordem);
+        Log.info("Ajuste via JMX", "ordem_qr", Tuning.getQrOrderText());
+    }
+
+    @Override
+    public String getLogLevel() {
+        return Log.getLevel().name();
+    }
+
+    @Override
+    public void setLogLevel(String nivel) {
+        Log.setLevel(Log.Level.valueOf(nivel.trim().toUpperCase()));
+        Log.info("Ajuste via JMX", "nivel_log", Log.getLevel());
+    }
+
+    @Override
+    public boolean isJfrRecording() {
+        return JfrEvents.isRecording();
+    }
+
+    @Override
+    public void startJfrRecording(String arquivo) {
+        JfrEvents.startRecording(Paths.get(arquivo));
+    }
+
+    @Override
+    public void stopJfrRecording() {
+        JfrEvents.stopRecording();
+    }
+
+    private static long bufferPoolBytes(String nome) {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals(nome)) return pool.getMemoryUsed();
+        }
+        return 0;
+    }
+
+    /** RSS do processo em bytes (Linux: /proc/self/status); 0 em outros sistemas. */
+    static long residentSetBytes() {
+        Path status = Paths.get("/proc/self/status");
+        if (!Files.exists(status)) return 0; // Fora do Linux o RSS não é medido
+        try {
+            for (String line : Files.readAllLines(status)) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("\\D", "")) * 1024;
+                }
+            }
+        } catch (IOException | NumberFormatException ignored) {
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,41 @@
+package seabdetector;
+
+import java.util.Map;
+
+/**
+ * Interface de gerenciamento (JMX) do leitor, registrada como {@code seabdetector:type=Pipeline}.
+ * Atributos de leitura para acompanhar a execução e de escrita para ajustá-la sem reiniciar a JVM.
+ */
+public interface PipelineControlMXBean {
+
+    // --- Estatísticas ---
+    long getSheetsRead();
+    long getBookletsCompleted();
+    double getSheetsPerSecond();
+    double getSheetsPerSecondRecent();
+    int getSheetsInFlight();
+    int getSheetsWaitingForWorker();
+    int getBookletsPending();
+    Map<String, Long> getFailuresByReason();
+    long getDirectBufferBytes();
+    long getMappedBufferBytes();
+    long getResidentSetBytes();
+    long getNativeEstimateBytes();
+
+    // --- Ajustes ---
+    int getWorkers();
+    void setWorkers(int workers);
+    int getBatchSize();
+    void setBatchSize(int batchSize);
+    int getDebugLevel();
+    void setDebugLevel(int nivel);
+    String getQrOrder();
+    void setQrOrder(String ordem);
+    String getLogLevel();
+    void setLogLevel(String nivel);
+
+    // --- Gravação JFR ---
+    boolean isJfrRecording();
+    void startJfrRecording(String arquivo);
+    void stopJfrRecording();
+}
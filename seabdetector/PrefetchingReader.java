@@ -0,0 +1,221 @@
+package seabdetector;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * Leitura antecipada das imagens em uma thread de I/O, para que o processamento (QR, âncoras, OMR)
+ * não fique parado esperando o disco/NAS.
+ *
+ * Uma única thread de I/O vive a execução inteira: os lotes da descoberta são enfileirados ({@link #submit}) e ela lê
+ * até {@code adiante} arquivos à frente do processamento, atravessando o fim de cada lote. Enquanto a descoberta lista
+ * a próxima pasta, a leitura do que já foi enfileirado continua. Os bytes ficam em buffers diretos (reaproveitados de
+ * um pool) ou, com {@code mmap}, em um {@link MappedByteBuffer}; a decodificação usa {@code Imgcodecs.imdecode} sobre
+ * uma Mat que aponta para o próprio buffer, sem cópia.
+ *
+ * As folhas são entregues ao destino na thread que chama {@link #submit}/{@link #close}, na ordem da fila (como o
+ * {@link SheetPipeline} exige). O início de cada lote ({@code antes}) roda na entrega, logo antes da primeira folha do
+ * lote, e não quando o lote é enfileirado.
+ *
+ * TIFFs continuam sendo lidos do disco página a página (ver {@link SheetInput#fromFile}).
+ */
+public class PrefetchingReader implements AutoCloseable {
+
+    private static final int ALINHAMENTO_BUFFER = 1 << 20; // Buffers do pool crescem em passos de 1 MB
+    private static final Object FIM = new Object();
+
+    private final Path raiz;
+    private final Consumer<SheetInput> destino;
+    private final boolean mmap;
+    private final BlockingQueue<ByteBuffer> pool;
+    private final BlockingQueue<Object> caminhos; // Path, Runnable (início de lote) ou FIM
+    private final BlockingQueue<Object> lidas;    // List<SheetInput>, Runnable ou FIM
+    private final Thread leitor;
+    private boolean fechado;
+
+    /**
+     * Inicia a thread de I/O.
+     * @param raiz Pasta de entrada, base da identidade das folhas.
+     * @param destino Recebe as folhas na ordem de submissão, sempre na thread que chama submit/close.
+     */
+    public PrefetchingReader(int adiante, boolean mmap, Path raiz, Consumer<SheetInput> destino) {
+        adiante = Math.max(1, adiante);
+        this.raiz = raiz;
+        this.destino = destino;
+        this.mmap = mmap;
+        // +1: o buffer da folha em decodificação também pertence ao pool
+        this.pool = new ArrayBlockingQueue<>(adiante + 1);
+        this.caminhos = new ArrayBlockingQueue<>(adiante);
+        this.lidas = new ArrayBlockingQueue<>(adiante);
+
+        leitor = new Thread(this::readLoop, "seab-prefetch");
+        leitor.setDaemon(true);
+        leitor.start();
+    }
+
+    /**
+     * Enfileira um lote para leitura. Enquanto a fila de arquivos está cheia, entrega as folhas já lidas; ao sair,
+     * entrega também as que ficaram prontas, e o restante do lote segue sendo lido enquanto a descoberta continua.
+     * @param antes Executado na entrega, antes da primeira folha do lote (p.ex. registrar o lote no diário); pode ser null.
+     */
+    public void submit(List<Path> arquivos, Runnable antes) {
+        if (antes != null) enqueue(antes);
+        for (Path arquivo : arquivos) enqueue(arquivo);
+        Object pronta;
+        while ((pronta = lidas.poll()) != null) deliver(pronta);
+    }
+
+    /** Entrega todas as folhas enfileiradas e encerra a thread de I/O. */
+    @Override
+    public void close() {
+        if (fechado) return;
+        fechado = true;
+        enqueue(FIM);
+        try {
+            while (true) {
+                Object pronta = lidas.take();
+                if (pronta == FIM) break;
+                deliver(pronta);
+            }
+            leitor.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            leitor.interrupt();
+        }
+    }
+
+    private void enqueue(Object item) {
+        try {
+            // A thread de I/O só esvazia a fila de arquivos se houver espaço nas lidas: entrega enquanto espera
+            while (!caminhos.offer(item)) deliver(lidas.take());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            leitor.interrupt();
+            throw new IllegalStateException("Interrompido enfileirando a leitura antecipada", e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void deliver(Object pronta) {
+        if (pronta == FIM) return; // Só chega por close()
+        if (pronta instanceof Runnable) {
+            ((Runnable) pronta).run();
+            return;
+        }
+        for (SheetInput folha : (List<SheetInput>) pronta) destino.accept(folha);
+    }
+
+    private void readLoop() {
+        try {
+            while (true) {
+                Object item = caminhos.take();
+                if (item instanceof Path) {
+                    List<SheetInput> folhas;
+                    try {
+                        folhas = read(raiz, (Path) item);
+                    } catch (RuntimeException e) {
+                        // A thread de I/O não pode morrer: a entrega ficaria esperando para sempre
+                        Log.warn("Leitura antecipada falhou; usando imread", "arquivo", item, "etapa", "load", "erro", e.getMessage());
+                        folhas = List.of(new SheetInput.FileInput(raiz, (Path) item));
+                    }
+                    lidas.put(folhas);
+                } else {
+                    lidas.put(item);
+                    if (item == FIM) return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private List<SheetInput> read(Path raiz, Path arquivo) {
+        String lower = arquivo.getFileName().toString().toLowerCase();
+        if (lower.endsWith(".tif") || lower.endsWith(".tiff")) {
+            return SheetInput.fromFile(raiz, arquivo);
+        }
+
+        try (FileChannel ch = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+            long tamanho = ch.size();
+            if (tamanho == 0 || tamanho > Integer.MAX_VALUE) {
+                return List.of(new SheetInput.FileInput(raiz, arquivo)); // Deixa o imread reportar a imagem ilegível
+            }
+            if (mmap) {
+                MappedByteBuffer mapa = ch.map(FileChannel.MapMode.READ_ONLY, 0, tamanho);
+                mapa.load(); // Força a leitura das páginas aqui, na thread de I/O
+                return List.of(new BufferedInput(raiz, arquivo, mapa, null));
+            }
+
+            ByteBuffer buffer = acquire((int) tamanho);
+            while (buffer.hasRemaining() && ch.read(buffer) >= 0) {
+                // lê até completar o arquivo
+            }
+            buffer.flip();
+            return List.of(new BufferedInput(raiz, arquivo, buffer, pool));
+        } catch (IOException e) {
+            Log.warn("Leitura antecipada falhou; usando imread", "arquivo", arquivo, "etapa", "load", "erro", e.getMessage());
+            return List.of(new SheetInput.FileInput(raiz, arquivo));
+        }
+    }
+
+    private ByteBuffer acquire(int tamanho) {
+        ByteBuffer buffer = pool.poll();
+        if (buffer == null || buffer.capacity() < tamanho) {
+            int capacidade = ((tamanho + ALINHAMENTO_BUFFER - 1) / ALINHAMENTO_BUFFER) * ALINHAMENTO_BUFFER;
+            buffer = ByteBuffer.allocateDirect(capacidade);
+        }
+        buffer.clear().limit(tamanho);
+        return buffer;
+    }
+
+    /** Folha cujos bytes já estão em memória (buffer direto ou mapeado). */
+    static class BufferedInput extends SheetInput.FileInput {
+        private ByteBuffer dados;
+        private final BlockingQueue<ByteBuffer> pool; // null para buffers mapeados
+
+        BufferedInput(Path raiz, Path arquivo, ByteBuffer dados, BlockingQueue<ByteBuffer> pool) {
+            super(raiz, arquivo);
+            this.dados = dados;
+            this.pool = pool;
+        }
+
+        @Override
+        public Mat load() {
+            if (dados == null) return super.load();
+
+            // Mat 1xN apontando para o buffer direto: o imdecode lê os bytes sem cópia intermediária
+            Mat bruto = new Mat(1, dados.remaining(), CvType.CV_8UC1, dados);
+            try {
+                return Imgcodecs.imdecode(bruto, Imgcodecs.IMREAD_COLOR);
+            } finally {
+                bruto.release();
+                if (pool != null) pool.offer(dados);
+                dados = null;
+            }
+        }
+
+        @Override
+        public byte[] digest() throws IOException {
+            return dados != null ? SheetInput.sha256(dados) : super.digest();
+        }
+
+        @Override
+        public void discard() {
+            if (dados == null) return;
+            if (pool != null) pool.offer(dados);
+            dados = null;
+        }
+    }
+}
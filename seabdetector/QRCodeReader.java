@@ -18,15 +18,21 @@ import static seabdetector.DataModels.*;
 
 public class QRCodeReader {
     
-    // Parâmetros de QR Code (Usando os valores originais)
-    private static final int QR_SEARCH_SIZE = 300;
-    private static final int QR_EXTRA_MARGIN = 20;
+    // Parâmetros de QR Code (Usando os valores originais), na resolução do template; ver ScanGeometry
+    static final int QR_SEARCH_SIZE = 300;
+    static final int QR_EXTRA_MARGIN = 20;
+    static final double QR_AMPLIACAO = 5;
+
+    static String detectAndDecode(Mat image, String debugOutputPath, String baseFileName) throws Exception, NotFoundException {
+        return detectAndDecode(image, debugOutputPath, baseFileName, ScanGeometry.NOMINAL);
+    }
 
     // Método que executa o Pré-processamento (Suavização/Contraste) e a Decodificação Lenta (ZXing)
-    private static String detectAndDecode(Mat image, String debugOutputPath, String baseFileName) throws Exception, NotFoundException {
+    // Recorte e ampliação seguem a resolução da imagem: o recorte ampliado tem sempre o mesmo tamanho
+    static String detectAndDecode(Mat image, String debugOutputPath, String baseFileName, ScanGeometry geo) throws Exception, NotFoundException {
         
-        final int w_recorte = QR_SEARCH_SIZE + QR_EXTRA_MARGIN;
-        final int h_recorte = QR_SEARCH_SIZE + QR_EXTRA_MARGIN;
+        final int w_recorte = geo.qrRecorte;
+        final int h_recorte = geo.qrRecorte;
 
         int x = Math.max(image.width() - w_recorte, 0);
         int y = Math.max(image.height() - h_recorte, 0);
@@ -51,7 +57,7 @@ public class QRCodeReader {
             // 2. Ampliação
             enlarged = new Mat();
             Imgproc.resize(qrRecortado, enlarged,
-                    new Size(qrRecortado.width() * 5, qrRecortado.height() * 5),
+                    new Size(qrRecortado.width() * geo.qrAmpliacao, qrRecortado.height() * geo.qrAmpliacao),
                     0, 0, Imgproc.INTER_LINEAR); 
 
             // 3. Converte para Cinza e Processamento Avançado (Recuperação de Dano)
@@ -72,7 +78,7 @@ public class QRCodeReader {
             Imgproc.threshold(adjusted, thresholded, 150, 255, Imgproc.THRESH_BINARY | Imgproc.THRESH_OTSU);
             
             // --- DEBUG VISUAL: Imagem Binarizada ---
-            if (debugOutputPath != null && baseFileName != null) {
+            if (debugOutputPath != null && baseFileName != null && Tuning.getDebugLevel() >= Tuning.DEBUG_PADRAO) {
                 Imgcodecs.imwrite(debugOutputPath + File.separator + baseFileName + "_QR_3_Binarizado.jpg", thresholded);
             }
 
@@ -110,20 +116,43 @@ public class QRCodeReader {
      * @return Dados do QR, ou null se falhar.
      */
     public static QrData extractAndParseFromRawImage(Mat rawImage, String debugOutputPath, String baseFileName) {
+        return extractAndParseFromRawImage(rawImage, debugOutputPath, baseFileName, 0, ScanGeometry.NOMINAL);
+    }
+
+    /**
+     * Igual a {@link #extractAndParseFromRawImage(Mat, String, String)}, informando a orientação (0 ou 180)
+     * da tentativa para o evento JFR da etapa e a geometria da digitalização.
+     */
+    public static QrData extractAndParseFromRawImage(Mat rawImage, String debugOutputPath, String baseFileName, int orientacao, ScanGeometry geo) {
         long startTime = System.nanoTime();
         String qrDataBruta = null;
+        String resultado = "nao_encontrado";
+        JfrEvents.StageEvent evento = new JfrEvents.StageEvent();
+        evento.begin();
         
         try {
-            qrDataBruta = detectAndDecode(rawImage, debugOutputPath, baseFileName);
+            qrDataBruta = detectAndDecode(rawImage, debugOutputPath, baseFileName, geo);
             
             if (qrDataBruta != null) {
                 // System.out.printf("  [DEB] Decodificação ZXing CONCLUÍDA. Tempo: %d ms\n", (System.nanoTime() - startTime) / 1_000_000);
-                return parseQrCode(qrDataBruta);
+                QrData dados = parseQrCode(qrDataBruta);
+                resultado = dados != null ? "ok" : "texto_invalido";
+                return dados;
             }
         } catch (NotFoundException e) {
             // Ignora NotFoundException, pois é uma falha esperada na Decodificação
         } catch (Exception e) {
-            System.err.printf("  ❌ ERRO INESPERADO no processamento do QR Code: %s\n", e.getMessage());
+            resultado = "erro";
+            Log.error("Erro inesperado no processamento do QR Code", "arquivo", baseFileName, "etapa", "qr", "erro", e.getMessage());
+        } finally {
+            if (evento.shouldCommit()) {
+                evento.arquivo = baseFileName;
+                evento.etapa = orientacao == 180 ? "qr_180" : "qr_0";
+                evento.orientacao = orientacao;
+                evento.qrTamanho = qrDataBruta != null ? qrDataBruta.length() : 0;
+                evento.resultado = resultado;
+                evento.commit();
+            }
         }
         return null;
     }
@@ -134,9 +163,9 @@ public class QRCodeReader {
          return extractAndParseFromRawImage(warpedImage, debugOutputPath, baseFileName);
     }
   
-    private static QrData parseQrCode(String qrTexto) {
+    static QrData parseQrCode(String qrTexto) {
         if (qrTexto == null || qrTexto.length() < 16) {
-            System.err.println("  ⚠ Erro de QR Code: texto é nulo ou curto. ('" + qrTexto + "')");
+            Log.warn("Texto do QR Code nulo ou curto", "etapa", "qr", "texto", qrTexto);
             return null;
         }
         try {
@@ -152,7 +181,7 @@ public class QRCodeReader {
             return dados;
 
         } catch (NumberFormatException e) {
-            System.err.printf("  ⚠ Erro ao decodificar o texto do QR Code: %s\n", e.getMessage());
+            Log.warn("Erro ao decodificar o texto do QR Code", "etapa", "qr", "texto", qrTexto, "erro", e.getMessage());
             return null;
         }
     }
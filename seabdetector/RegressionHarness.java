@@ -0,0 +1,310 @@
+package seabdetector;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static seabdetector.Constants.*;
+import static seabdetector.DataModels.*;
+
+/**
+ * Regressão ponta a ponta de desempenho E de qualidade de leitura.
+ *
+ * Roda o SaebDetector de ponta a ponta (QR, âncoras, warp, OMR, pulmão e gravação das saídas numa pasta temporária)
+ * sobre um corpus rotulado (imagens + {@value SyntheticSheetGenerator#ARQUIVO_ESPERADO}, como o gerado pelo
+ * SyntheticSheetGenerator), uma vez para cada quantidade de workers, e mede folhas/s, latência p50/p95/p99 por folha,
+ * pico de RSS e de heap, taxas de falha de QR/âncoras e acurácia das respostas. Cada execução começa do zero:
+ * pulmão, índice de redigitalizações e janelas de busca das âncoras ({@link AnchorPriors}) são zerados. O relatório é gravado em formato chave=valor
+ * (java.util.Properties) e comparado com um relatório de referência, se informado.
+ *
+ * Uso: {@code RegressionHarness <corpus> [workers=1,2,4] [relatorio] [baseline]}.
+ * O código de saída é 2 quando a comparação com a referência aponta regressão.
+ */
+public class RegressionHarness {
+
+    // Tolerâncias da comparação com a referência
+    private static final double TOLERANCIA_VAZAO = 0.05;      // queda relativa de folhas/s
+    private static final double TOLERANCIA_LATENCIA = 0.10;   // aumento relativo de p95/p99
+    private static final double TOLERANCIA_TAXA = 0.001;      // aumento absoluto de acurácia/falhas
+
+    private static final int FOLHAS_AQUECIMENTO = Integer.getInteger("seab.harness.warmup", 20);
+
+    static {
+        System.load(OPENCV_DLL_PATH_HOME);
+    }
+
+    /** Métricas de uma execução com N workers. */
+    static class RunStats {
+        int workers, folhas, qrFalhas, ancoraFalhas, outrasFalhas;
+        long questoes, questoesLidas, acertos;
+        double segundos;
+        long picoRssBytes, picoHeapBytes;
+        long[] latenciasMs;
+        int latencias;
+
+        double percentile(double p) {
+            if (latencias == 0) return 0;
+            long[] ordenadas = Arrays.copyOf(latenciasMs, latencias);
+            Arrays.sort(ordenadas);
+            int idx = (int) Math.ceil(p / 100.0 * ordenadas.length) - 1;
+            return ordenadas[Math.max(0, Math.min(idx, ordenadas.length - 1))];
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Uso: RegressionHarness <corpus> [workers=1,2,4] [relatorio] [baseline]");
+            return;
+        }
+        Log.setDefaultLevel(Log.Level.WARN); // As folhas com defeito do corpus não devem poluir a medição
+        Path corpus = Paths.get(args[0]);
+        int[] workers = Arrays.stream((args.length > 1 ? args[1] : "1,2,4").split(",")).mapToInt(w -> Integer.parseInt(w.trim())).toArray();
+        String caminhoRelatorio = args.length > 2 ? args[2] : "harness_report.properties";
+        String caminhoBaseline = args.length > 3 ? args[3] : null;
+
+        Map<String, Map<String, String>> esperado = loadExpected(corpus.resolve(SyntheticSheetGenerator.ARQUIVO_ESPERADO));
+        List<Path> arquivos = new ArrayList<>();
+        InputDiscovery.forEachBatch(corpus, 1000, false, arquivos::addAll);
+        if (arquivos.isEmpty()) {
+            System.err.println("Nenhuma imagem encontrada em " + corpus);
+            return;
+        }
+
+        LayoutRegistry layouts = LayoutRegistry.load();
+        if (layouts.defaultTemplate() == null) {
+            System.err.println("ERRO FATAL: Nenhum template carregado.");
+            return;
+        }
+
+        // Aquecimento (JIT, cache de disco) fora das medições
+        run(1, corpus, arquivos.subList(0, Math.min(FOLHAS_AQUECIMENTO, arquivos.size())), esperado, layouts);
+
+        List<RunStats> execucoes = new ArrayList<>();
+        for (int w : workers) {
+            RunStats stats = run(w, corpus, arquivos, esperado, layouts);
+            execucoes.add(stats);
+            System.out.printf("[HARNESS] workers=%d  %.2f folhas/s  p50=%.0f p95=%.0f p99=%.0f ms  acurácia=%.4f%n",
+                    w, stats.folhas / stats.segundos, stats.percentile(50), stats.percentile(95), stats.percentile(99),
+                    ratio(stats.acertos, stats.questoes));
+        }
+        layouts.release();
+        Log.flush();
+
+        Map<String, Double> relatorio = toReport(execucoes);
+        writeReport(relatorio, caminhoRelatorio);
+        System.out.println("\nRelatório gravado em: " + caminhoRelatorio);
+
+        if (caminhoBaseline != null && compareWithBaseline(relatorio, caminhoBaseline)) {
+            System.exit(2);
+        }
+    }
+
+    private static RunStats run(int workers, Path corpus, List<Path> arquivos, Map<String, Map<String, String>> esperado,
+                                LayoutRegistry layouts) throws IOException {
+        RunStats stats = new RunStats();
+        stats.workers = workers;
+        stats.latenciasMs = new long[Math.max(16, arquivos.size())];
+
+        // Cada execução passa pelo mesmo corpus: não são redigitalizações, e nenhuma herda as janelas de busca da anterior
+        DuplicateDetector.reset();
+        AnchorPriors.reset();
+        SaebDetector.resetConsolidation();
+        Path saida = Files.createTempDirectory("seab-harness-");
+        SaebDetector.openOutputs(saida, layouts.allQuestions(), false);
+
+        MemorySampler amostrador = new MemorySampler();
+        amostrador.start();
+        long inicio = System.nanoTime();
+        try (SheetPipeline pipeline = new SheetPipeline(workers,
+                folha -> SaebDetector.processSheet(folha, layouts),
+                resultado -> {
+                    account(stats, resultado, esperado);
+                    SaebDetector.handleResult(resultado); // Pulmão e saídas, como numa execução normal
+                })) {
+            for (Path arquivo : arquivos) {
+                for (SheetInput folha : SheetInput.fromFile(corpus, arquivo)) pipeline.submit(folha);
+            }
+        }
+        SaebDetector.closeOutputs();
+        stats.segundos = (System.nanoTime() - inicio) / 1e9;
+
+        amostrador.finish();
+        stats.picoRssBytes = amostrador.picoRss;
+        stats.picoHeapBytes = amostrador.picoHeap;
+        deleteTree(saida);
+        return stats;
+    }
+
+    private static void deleteTree(Path pasta) throws IOException {
+        List<Path> caminhos;
+        try (Stream<Path> s = Files.walk(pasta)) {
+            caminhos = s.sorted(Comparator.reverseOrder()).collect(Collectors.toList()); // Arquivos antes das pastas
+        }
+        for (Path p : caminhos) Files.deleteIfExists(p);
+    }
+
+    private static void account(RunStats stats, SheetResult resultado, Map<String, Map<String, String>> esperado) {
+        stats.folhas++;
+        if (stats.latencias == stats.latenciasMs.length) stats.latenciasMs = Arrays.copyOf(stats.latenciasMs, stats.latencias * 2);
+        stats.latenciasMs[stats.latencias++] = resultado.duracaoMs;
+
+        if (!resultado.isSucesso()) {
+            if ("qr_nao_lido".equals(resultado.motivoFalha)) stats.qrFalhas++;
+            else if ("ancoras_nao_encontradas".equals(resultado.motivoFalha)) stats.ancoraFalhas++;
+            else stats.outrasFalhas++;
+        }
+
+        Map<String, String> gabarito = esperado.get(resultado.origem);
+        if (gabarito == null) return; // Imagem sem rótulo: entra só nas métricas de desempenho
+
+        stats.questoes += gabarito.size();
+        if (resultado.isSucesso()) {
+            stats.questoesLidas += gabarito.size();
+            for (Map.Entry<String, String> q : gabarito.entrySet()) {
+                if (q.getValue().equals(resultado.respostas.text(q.getKey()))) stats.acertos++;
+            }
+        }
+    }
+
+    /** Lê o gabarito: "arquivo;qr;questao;resposta" → arquivo (caminho relativo ao corpus) → (questão → resposta esperada). */
+    static Map<String, Map<String, String>> loadExpected(Path caminho) throws IOException {
+        Map<String, Map<String, String>> esperado = new HashMap<>();
+        if (!Files.exists(caminho)) {
+            System.err.println("⚠ Aviso: " + caminho + " não encontrado. Acurácia não será calculada.");
+            return esperado;
+        }
+        try (BufferedReader br = Files.newBufferedReader(caminho, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] partes = line.split(";", -1);
+                if (partes.length != 4) continue;
+                esperado.computeIfAbsent(partes[0], k -> new LinkedHashMap<>()).put(partes[2], partes[3]);
+            }
+        }
+        return esperado;
+    }
+
+    private static Map<String, Double> toReport(List<RunStats> execucoes) {
+        Map<String, Double> relatorio = new TreeMap<>();
+        double vazaoBase = 0;
+        for (RunStats s : execucoes) {
+            String p = "run." + s.workers + ".";
+            double vazao = s.folhas / s.segundos;
+            if (vazaoBase == 0) vazaoBase = vazao;
+            relatorio.put(p + "sheets", (double) s.folhas);
+            relatorio.put(p + "sheets_per_sec", vazao);
+            relatorio.put(p + "scaling", vazao / vazaoBase);
+            relatorio.put(p + "latency_p50_ms", s.percentile(50));
+            relatorio.put(p + "latency_p95_ms", s.percentile(95));
+            relatorio.put(p + "latency_p99_ms", s.percentile(99));
+            relatorio.put(p + "peak_rss_mb", s.picoRssBytes / (1024.0 * 1024.0));
+            relatorio.put(p + "peak_heap_mb", s.picoHeapBytes / (1024.0 * 1024.0));
+            relatorio.put(p + "qr_failure_rate", ratio(s.qrFalhas, s.folhas));
+            relatorio.put(p + "anchor_failure_rate", ratio(s.ancoraFalhas, s.folhas));
+            relatorio.put(p + "other_failure_rate", ratio(s.outrasFalhas, s.folhas));
+            relatorio.put(p + "accuracy", ratio(s.acertos, s.questoes));
+            relatorio.put(p + "accuracy_read", ratio(s.acertos, s.questoesLidas));
+        }
+        return relatorio;
+    }
+
+    private static void writeReport(Map<String, Double> relatorio, String caminho) throws IOException {
+        try (BufferedWriter bw = Files.newBufferedWriter(Paths.get(caminho), StandardCharsets.UTF_8)) {
+            bw.write("# RegressionHarness - " + new Date());
+            bw.newLine();
+            for (Map.Entry<String, Double> e : relatorio.entrySet()) {
+                bw.write(e.getKey() + "=" + String.format(Locale.ROOT, "%.6f", e.getValue()));
+                bw.newLine();
+            }
+        }
+    }
+
+    /**
+     * Imprime a diferença para a referência.
+     * @return true se alguma métrica piorou além da tolerância.
+     */
+    private static boolean compareWithBaseline(Map<String, Double> atual, String caminhoBaseline) throws IOException {
+        Properties baseline = new Properties();
+        try (Reader r = Files.newBufferedReader(Paths.get(caminhoBaseline), StandardCharsets.UTF_8)) {
+            baseline.load(r);
+        }
+
+        boolean regressao = false;
+        System.out.println("\n===== COMPARAÇÃO COM A REFERÊNCIA (" + caminhoBaseline + ") =====");
+        for (Map.Entry<String, Double> e : atual.entrySet()) {
+            String valorBase = baseline.getProperty(e.getKey());
+            if (valorBase == null) continue;
+            double antes = Double.parseDouble(valorBase);
+            double agora = e.getValue();
+            String metrica = e.getKey().substring(e.getKey().lastIndexOf('.') + 1);
+
+            boolean piorou;
+            if (metrica.equals("sheets_per_sec")) piorou = agora < antes * (1 - TOLERANCIA_VAZAO);
+            else if (metrica.startsWith("latency_p9")) piorou = agora > antes * (1 + TOLERANCIA_LATENCIA);
+            else if (metrica.startsWith("accuracy")) piorou = agora < antes - TOLERANCIA_TAXA;
+            else if (metrica.endsWith("failure_rate")) piorou = agora > antes + TOLERANCIA_TAXA;
+            else piorou = false;
+
+            regressao |= piorou;
+            double delta = antes != 0 ? (agora - antes) / antes * 100 : 0;
+            System.out.printf(Locale.ROOT, "  %-32s %12.4f -> %12.4f  (%+.1f%%)%s%n", e.getKey(), antes, agora, delta, piorou ? "  ⚠ REGRESSÃO" : "");
+        }
+        System.out.println(regressao ? "Resultado: REGRESSÃO detectada." : "Resultado: sem regressões.");
+        return regressao;
+    }
+
+    private static double ratio(long parte, long total) {
+        return total > 0 ? (double) parte / total : 0;
+    }
+
+    /** Amostra o RSS do processo (Linux: /proc/self/status) enquanto uma execução roda. */
+    /**
+     * Amostra RSS e heap usado (total, num mesmo instante) a cada 50 ms. Somar o pico de cada pool do heap
+     * superestimaria o pico real: os pools atingem os seus máximos em momentos diferentes.
+     */
+    private static class MemorySampler extends Thread {
+        private volatile boolean ativo = true;
+        long picoRss, picoHeap;
+
+        MemorySampler() {
+            super("seab-memory-sampler");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (ativo) {
+                sample();
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        private void sample() {
+            picoRss = Math.max(picoRss, PipelineControl.residentSetBytes());
+            picoHeap = Math.max(picoHeap, ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+        }
+
+        /** Encerra a amostragem; os picos podem ser lidos depois disso. */
+        void finish() {
+            ativo = false;
+            interrupt();
+            try {
+                join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            sample();
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package seabdetector;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static seabdetector.Constants.*;
+import static seabdetector.DataModels.*;
+
+/**
+ * Cache em disco do resultado de cada folha, endereçado pelo conteúdo: chave = SHA-256(bytes da imagem + impressão
+ * digital dos layouts e parâmetros). Reexecuções sobre as mesmas pastas (depois de corrigir um config, acrescentar uma
+ * pasta atrasada ou retomar uma execução interrompida) só processam as imagens novas ou alteradas.
+ *
+ * A impressão digital cobre o conteúdo de config.txt/templates.txt (padrão e de cada edição em seab.layouts.dir) e os
+ * parâmetros que mudam a leitura; qualquer mudança neles invalida o cache inteiro sem precisar apagá-lo.
+ * Cada entrada guarda o motivo da falha (ou sucesso), o texto do QR, os centros das âncoras e as respostas.
+ * Só resultados determinísticos entram no cache: sucessos e falhas de QR, âncoras, warp e layout. "duplicada" não
+ * entra: depende das outras folhas da execução e da ordem delas, não da imagem. Com {@code seab.dedup} ligado os
+ * sucessos guardam também a miniatura do DuplicateDetector, e num acerto (sem carregar a imagem) a comparação com as
+ * folhas recentes é refeita na execução atual.
+ *
+ * Limite: {@code seab.cache.max.mb}; as entradas menos usadas (data de modificação, renovada a cada acerto) são
+ * apagadas na abertura e no fechamento até sobrar 90% do limite.
+ */
+public class ResultCache implements AutoCloseable {
+
+    // 2: respostas como opção do config.txt (o código de OptionCodes muda entre execuções); 3: miniatura do DuplicateDetector
+    private static final int VERSAO = 3;
+    // Aumentar quando a leitura (QR, âncoras, OMR) mudar de um jeito que os parâmetros abaixo não capturam
+    private static final int VERSAO_LEITURA = 1;
+    private static final Set<String> MOTIVOS_CACHEAVEIS = Set.of("qr_nao_lido", "ancoras_nao_encontradas", "warp_falhou", "layout_ausente");
+
+    /** Arquivo do cache com tamanho e data, para a limpeza. */
+    private static class Entrada {
+        final Path caminho;
+        final long tamanho;
+        final long data;
+
+        Entrada(Path caminho, long tamanho, long data) {
+            this.caminho = caminho; this.tamanho = tamanho; this.data = data;
+        }
+    }
+
+    private final Path pasta;
+    private final long limiteBytes;
+    private final byte[] impressaoDigital;
+    private final AtomicLong acertos = new AtomicLong();
+    private final AtomicLong gravacoes = new AtomicLong();
+
+    public ResultCache(Path pasta, long limiteBytes) throws IOException {
+        this.pasta = pasta;
+        this.limiteBytes = limiteBytes;
+        this.impressaoDigital = fingerprint();
+        Files.createDirectories(pasta);
+        trim();
+    }
+
+    /** Cache em {@code seab.cache.dir}; null se desligado (diretório vazio) ou impossível de abrir. */
+    public static ResultCache open() {
+        if (CACHE_DIR.isEmpty()) return null;
+        try {
+            return new ResultCache(Paths.get(CACHE_DIR), CACHE_MAX_MB * 1024 * 1024);
+        } catch (IOException e) {
+            Log.warn("Cache de resultados indisponível", "pasta", CACHE_DIR, "erro", e.getMessage());
+            return null;
+        }
+    }
+
+    /** Chave da folha (hex), ou null se os bytes de origem não puderem ser lidos. Chamar antes de {@code load()}. */
+    public String key(SheetInput entrada) {
+        try {
+            byte[] conteudo = entrada.digest();
+            if (conteudo == null) return null;
+            MessageDigest md = SheetInput.sha256();
+            md.update(conteudo);
+            md.update(impressaoDigital);
+            return hex(md.digest());
+        } catch (IOException e) {
+            Log.debug("Sem chave de cache", "arquivo", entrada.id(), "erro", e.getMessage());
+            return null;
+        }
+    }
+
+    /** Resultado guardado para a chave, atribuído à folha {@code origem}; null se não houver. */
+    public SheetResult get(String chave, String origem) {
+        Path arquivo = path(chave);
+        long inicio = System.nanoTime();
+        try (InputStream is = Files.newInputStream(arquivo); DataInputStream in = new DataInputStream(is)) {
+            if (in.readInt() != VERSAO) return null;
+            SheetResult resultado = readResult(in, origem, (System.nanoTime() - inicio) / 1_000_000);
+            if (in.readBoolean()) {
+                byte[] miniatura = new byte[in.readInt()];
+                in.readFully(miniatura);
+                resultado = resultado.withThumbnail(miniatura);
+            }
+            Files.setLastModifiedTime(arquivo, FileTime.fromMillis(System.currentTimeMillis())); // Mais recente no LRU
+            acertos.incrementAndGet();
+            return resultado;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            Log.warn("Entrada de cache ilegível; a folha será processada", "arquivo", origem, "entrada", arquivo, "erro", e.getMessage());
+            return null;
+        }
+    }
+
+    /** Guarda o resultado, se for determinístico (ver {@link #MOTIVOS_CACHEAVEIS}). */
+    public void put(String chave, SheetResult resultado) {
+        if (!resultado.isSucesso() && !MOTIVOS_CACHEAVEIS.contains(resultado.motivoFalha)) return;
+        Path arquivo = path(chave);
+        Path temp = null;
+        try {
+            Files.createDirectories(arquivo.getParent());
+            temp = Files.createTempFile(arquivo.getParent(), chave, ".tmp"); // Dois workers podem gravar a mesma chave
+            try (OutputStream os = Files.newOutputStream(temp); DataOutputStream out = new DataOutputStream(os)) {
+                out.writeInt(VERSAO);
+                writeResult(out, resultado);
+                out.writeBoolean(resultado.miniatura != null);
+                if (resultado.miniatura != null) {
+                    out.writeInt(resultado.miniatura.length);
+                    out.write(resultado.miniatura);
+                }
+            }
+            Files.move(temp, arquivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            gravacoes.incrementAndGet();
+        } catch (IOException e) {
+            Log.warn("Não foi possível gravar no cache", "arquivo", resultado.origem, "erro", e.getMessage());
+            if (temp != null) {
+                try { Files.deleteIfExists(temp); } catch (IOException ignorada) { }
+            }
+        }
+    }
+
+    /**
+     * Grava motivo, texto do QR, âncoras e respostas (as opções como no config.txt, não os códigos desta execução).
+     * Mesmo registro das entradas do cache e do diário das partições ({@link Partition}).
+     */
+    static void writeResult(DataOutputStream out, SheetResult resultado) throws IOException {
+        out.writeUTF(resultado.isSucesso() ? "" : resultado.motivoFalha);
+        out.writeUTF(resultado.dadosQR != null ? resultado.dadosQR.qrTextoCompleto : "");
+        out.writeBoolean(resultado.ancoras != null);
+        if (resultado.ancoras != null) for (double v : resultado.ancoras) out.writeDouble(v);
+        out.writeInt(resultado.respostas != null ? resultado.respostas.size() : -1);
+        if (resultado.respostas != null) {
+            for (int i = 0; i < resultado.respostas.size(); i++) {
+                out.writeUTF(resultado.respostas.questoes.questoes.get(i));
+                out.writeUTF(OptionCodes.option(resultado.respostas.codigos[i]));
+            }
+        }
+    }
+
+    /** Lê o registro de {@link #writeResult}, atribuído à folha {@code origem}. */
+    static SheetResult readResult(DataInputStream in, String origem, long duracaoMs) throws IOException {
+        String motivo = in.readUTF();
+        String qrTexto = in.readUTF();
+        double[] ancoras = null;
+        if (in.readBoolean()) {
+            ancoras = new double[8];
+            for (int i = 0; i < 8; i++) ancoras[i] = in.readDouble();
+        }
+        int n = in.readInt();
+        SheetAnswers respostas = null;
+        if (n >= 0) {
+            List<String> questoes = new ArrayList<>(n);
+            byte[] codigos = new byte[n];
+            for (int i = 0; i < n; i++) {
+                questoes.add(in.readUTF());
+                codigos[i] = OptionCodes.code(in.readUTF());
+            }
+            respostas = new SheetAnswers(QuestionSet.of(questoes), codigos);
+        }
+
+        QrData dadosQR = qrTexto.isEmpty() ? null : QRCodeReader.parseQrCode(qrTexto);
+        SheetResult resultado = motivo.isEmpty()
+                ? SheetResult.sucesso(origem, dadosQR, respostas, duracaoMs)
+                : SheetResult.falha(origem, dadosQR, motivo, duracaoMs);
+        return resultado.withAnchors(ancoras);
+    }
+
+    public long getHits() {
+        return acertos.get();
+    }
+
+    public long getWrites() {
+        return gravacoes.get();
+    }
+
+    @Override
+    public void close() {
+        try {
+            trim();
+        } catch (IOException e) {
+            Log.warn("Não foi possível limpar o cache", "pasta", pasta, "erro", e.getMessage());
+        }
+    }
+
+    /** Apaga as entradas menos usadas até o cache ocupar no máximo 90% do limite. */
+    private void trim() throws IOException {
+        if (limiteBytes <= 0) return;
+        List<Path> arquivos;
+        try (Stream<Path> s = Files.walk(pasta, 2)) {
+            arquivos = s.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+        long total = 0;
+        List<Entrada> entradas = new ArrayList<>(arquivos.size());
+        for (Path p : arquivos) {
+            try {
+                Entrada e = new Entrada(p, Files.size(p), Files.getLastModifiedTime(p).toMillis());
+                total += e.tamanho;
+                entradas.add(e);
+            } catch (NoSuchFileException e) {
+                // Removida por outra execução
+            }
+        }
+        if (total <= limiteBytes) return;
+
+        entradas.sort((a, b) -> Long.compare(a.data, b.data));
+        long alvo = limiteBytes * 9 / 10;
+        int removidas = 0;
+        for (Entrada e : entradas) {
+            if (total <= alvo) break;
+            Files.deleteIfExists(e.caminho);
+            total -= e.tamanho;
+            removidas++;
+        }
+        Log.info("Cache de resultados reduzido", "pasta", pasta, "removidas", removidas, "bytes", total);
+    }
+
+    /** Dois níveis (00/0011...) para não acumular centenas de milhares de arquivos numa pasta só. */
+    private Path path(String chave) {
+        return pasta.resolve(chave.substring(0, 2)).resolve(chave.substring(2));
+    }
+
+    /** SHA-256 dos layouts (padrão e edições) e dos parâmetros que afetam a leitura. */
+    private static byte[] fingerprint() throws IOException {
+        MessageDigest md = SheetInput.sha256();
+        List<Path> fontes = new ArrayList<>();
+        fontes.add(Paths.get(PATH_CONFIG));
+        fontes.add(Paths.get(PATH_TEMPLATES));
+        Path layouts = Paths.get(LAYOUTS_DIR);
+        if (Files.isDirectory(layouts)) {
+            List<Path> edicoes = new ArrayList<>();
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(layouts, Files::isDirectory)) {
+                ds.forEach(edicoes::add);
+            }
+            edicoes.sort(null);
+            for (Path edicao : edicoes) {
+                fontes.add(edicao.resolve("config.txt"));
+                fontes.add(edicao.resolve("templates.txt"));
+            }
+        }
+        for (Path fonte : fontes) {
+            md.update(fonte.toString().getBytes(StandardCharsets.UTF_8));
+            if (Files.exists(fonte)) md.update(SheetInput.sha256(fonte));
+        }
+        String parametros = String.join("|",
+                "leitura=" + VERSAO_LEITURA, ANCHOR_STRATEGY, ANCHOR_SEARCH_LEVELS, String.valueOf(ANCHOR_PRIOR_MARGIN),
+                String.valueOf(ANCHOR_MIN_AREA), String.valueOf(ANCHOR_MAX_AREA), String.valueOf(ANCHOR_APPROX_EPSILON),
+                String.valueOf(ADAPTIVE_THRESH_BLOCK_SIZE), String.valueOf(ADAPTIVE_THRESH_C), String.valueOf(ANCHOR_ASPECT_TOLERANCE),
+                String.valueOf(TEMPLATE_DPI), String.valueOf(SCAN_DPI), String.valueOf(BUBBLE_RADIUS), String.valueOf(RELATIVE_MARK_THRESHOLD),
+                "miniatura=" + (DuplicateDetector.POLITICA != DuplicateDetector.Policy.DESLIGADO)); // Ligar a detecção exige miniaturas
+        md.update(parametros.getBytes(StandardCharsets.UTF_8));
+        return md.digest();
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        return sb.toString();
+    }
+}
@@ -4,12 +4,11 @@ import org.opencv.core.*;
 import org.opencv.imgcodecs.Imgcodecs;
 
 import java.io.*;
-import java.nio.file.Files;
+import java.net.InetSocketAddress;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.function.Consumer;
 
 import static seabdetector.Constants.*;
 import static seabdetector.DataModels.*;
@@ -21,303 +20,779 @@ public class SaebDetector {
         System.load(OPENCV_DLL_PATH_HOME); 
     }
 
-    // 1. CONSTANTE PARA CONTROLE DE LOTES (CUSTOMIZÁVEL)
-    private static final int BATCH_SIZE = 100;
-
     // ESTA CONSTANTE É CRÍTICA: Número de folhas que compõem 1 caderno.
     private static final int FILES_PER_BOOKLET = 5;
 
     // NOVO: Pulmão/Buffer de Processamento (Para agregar folhas por caderno)
-    private static final Map<String, Map<String, Map<String, String>>> pulmaoRespostas = new LinkedHashMap<>();
+    // Cada folha guarda só as questões internadas do layout e 1 byte por resposta (ver SheetAnswers)
+    private static final Map<String, Map<String, SheetAnswers>> pulmaoRespostas = new LinkedHashMap<>();
 
     // NOVO: Contador que avança APENHAS quando um caderno está COMPLETO.
     private final static Map<String, Integer> respondenteBookletIndex = new HashMap<>();
 
     // Mapa FINAL de resultados consolidados (1 linha por caderno completo)
-    private static final Map<String, Map<String, String>> finalRespostasPorBooklet = new LinkedHashMap<>();
+    private static final Map<String, BookletAnswers> finalRespostasPorBooklet = new LinkedHashMap<>();
+
+    // Chave do QR de cada caderno (apenas para metadados de saída)
+    private static final Map<String, QrKey> dadosQrPorBooklet = new LinkedHashMap<>();
+
 
-    // Mapa de dados QR (apenas para metadados de saída)
-    private static final Map<String, QrData> dadosQrPorBooklet = new LinkedHashMap<>();
+    // Totais para o sumário final
+    private static long totalProcessingTimeMs = 0;
+    private static int processedCount = 0;
+
+    // Saídas incrementais (abertas em main)
+    private static OrganizedResultWriter resultWriter;
+    private static ColumnarResultWriter colunarWriter;
+    private static ShardedResultWriter shardWriter;
+    private static BufferedWriter falhasWriter;
 
 
     public static void main(String[] args) {
+        // Modo quadros: a saída padrão é do protocolo; mensagens e sumário vão para a saída de erro
+        PrintStream protocolo = System.out;
+        if (args.length > 0 && "quadros".equalsIgnoreCase(args[0])) System.setOut(System.err);
 
         File outputDirFile = new File(PATH_OUTPUT_DIR);
         if (!outputDirFile.exists()) {
             outputDirFile.mkdirs();
         }
 
-        List<Alternativa> todasAlternativas = ConfigLoader.loadAlternativas(PATH_CONFIG);
-        Map<String, FolhaTemplate> templates = ConfigLoader.loadTemplates(PATH_TEMPLATES);
+        LayoutRegistry layouts = LayoutRegistry.load();
 
-        if (templates.isEmpty()) {
-            System.err.println("ERRO FATAL: Nenhum template carregado. Impossível realizar o alinhamento inicial.");
+        if (layouts.defaultTemplate() == null) {
+            Log.error("Nenhum template carregado; impossível realizar o alinhamento inicial", "config", PATH_CONFIG, "templates", PATH_TEMPLATES);
+            Log.flush();
             return;
         }
 
-        // Template genérico para o primeiro alinhamento (que nos dá o recorte)
-        FolhaTemplate templateGenerico = templates.values().iterator().next(); 
+        Set<String> todasAsQuestoes = layouts.allQuestions();
+
+        String modo = args.length > 0 ? args[0].toLowerCase() : "batch";
+        // Nos modos contínuos (pasta monitorada, serviço e quadros) cada caderno vai para o disco assim que fica completo
+        boolean modoWatch = "watch".equals(modo) || "servico".equals(modo) || "quadros".equals(modo);
+        // Mensagens por folha (INFO) só aparecem por padrão nos modos contínuos; em lote ficam só avisos e erros
+        Log.setDefaultLevel(modoWatch ? Log.Level.INFO : Log.Level.WARN);
 
-        long totalProcessingTimeMs = 0;
-        int processedCount = 0;
+        if ("particao".equals(modo)) {
+            // Sem pulmão nem arquivos de saída: só o diário da fatia, juntado depois pelo modo "merge"
+            runPartitionMode(args.length > 1 ? args[1] : "", outputDirFile.toPath(), layouts);
+            layouts.release();
+            return;
+        }
 
-        Set<String> todasAsQuestoes = todasAlternativas.stream()
-                .map(a -> a.questao)
-                .collect(Collectors.toCollection(LinkedHashSet::new));
+        try {
+            openOutputs(outputDirFile.toPath(), todasAsQuestoes, modoWatch);
+        } catch (IOException | IllegalArgumentException e) {
+            Log.error("Erro ao abrir arquivos de saída", "pasta", PATH_OUTPUT_DIR, "erro", e.getMessage());
+            Log.flush();
+            layouts.release();
+            return;
+        }
 
+        if ("merge".equals(modo)) {
+            runMergeMode(args.length > 1 ? Paths.get(args[1]) : outputDirFile.toPath().resolve(Partition.PASTA));
+            closeOutputs();
+            Log.flush();
+            printFinalSummary(totalProcessingTimeMs, processedCount);
+            layouts.release();
+            return;
+        }
 
+        // QR/âncoras/OMR em WORKER_COUNT threads; pulmão e saídas na thread principal, na ordem de entrada
+        Metrics.startSnapshots(outputDirFile.toPath(), METRICS_INTERVAL_S);
+        if (!JFR_OUTPUT.isEmpty()) JfrEvents.startRecording(Paths.get(JFR_OUTPUT));
+        ResultCache cache = ResultCache.open();
+        if ("servico".equals(modo)) {
+            runServiceMode(layouts, cache);
+        } else if ("quadros".equals(modo)) {
+            runFrameMode(layouts, cache, protocolo);
+        } else {
+            SheetPipeline pipeline = new SheetPipeline(WORKER_COUNT,
+                    folha -> processSheet(folha, layouts, cache), SaebDetector::handleResult);
+            PipelineControl.register(pipeline, pulmaoRespostas::size);
+
+            if ("watch".equals(modo)) {
+                runWatchMode(pipeline);
+            } else if ("zip".equals(modo)) {
+                runZipMode(Arrays.asList(args).subList(1, args.length), pipeline);
+            } else {
+                runBatchMode(pipeline, null, null);
+            }
+            pipeline.close();
+        }
+
+        closeOutputs();
+        if (cache != null) cache.close();
+        Metrics.stopSnapshots(outputDirFile.toPath());
+        JfrEvents.stopRecording();
+        Log.flush();
+        printFinalSummary(totalProcessingTimeMs, processedCount);
+        if (cache != null) {
+            System.out.printf("  Cache de resultados: %d folhas reaproveitadas, %d gravadas (%s)\n", cache.getHits(), cache.getWrites(), CACHE_DIR);
+        }
+        layouts.release();
+    }
+
+    /**
+     * Modo original: percorre PATH_INPUT_DIR uma única vez, processa em lotes e encerra.
+     * A descoberta é em streaming (InputDiscovery): o primeiro lote começa a ser processado
+     * assim que é lido, sem listar nem ordenar o acervo inteiro antes.
+     * Com {@code particao}, só os arquivos da fatia são lidos e cada folha tem a sua posição registrada no {@code diario}.
+     * @return Arquivos descobertos (de todas as fatias), ou -1 se a pasta de entrada não pôde ser percorrida.
+     */
+    private static long runBatchMode(SheetPipeline pipeline, Partition particao, Partition.Journal diario) {
         Path pastaEntradaPath = Paths.get(PATH_INPUT_DIR);
-        List<File> todosOsArquivos = Collections.emptyList();
+        int[] contadorLotes = {0, 0}; // {lotes, arquivos}
+        // As posições do diário são a ordem da descoberta, que a descoberta paralela não garante
+        boolean descobertaParalela = DISCOVERY_PARALLEL && particao == null;
+        Consumer<SheetInput> submeter = diario == null ? pipeline::submit : folha -> {
+            diario.expect(folha);
+            pipeline.submit(folha);
+        };
+        // Uma thread de I/O para a execução inteira: a leitura antecipada continua entre um lote e o próximo
+        PrefetchingReader prefetcher = PREFETCH_AHEAD > 0 ? new PrefetchingReader(PREFETCH_AHEAD, PREFETCH_MMAP, pastaEntradaPath, submeter) : null;
+
+        System.out.printf("Processando %s em lotes de %d com %d worker(s)%s...\n", PATH_INPUT_DIR, Tuning.getBatchSize(), pipeline.getWorkers(),
+                descobertaParalela ? " (descoberta paralela por subpasta)" : "");
+
+        try {
+            InputDiscovery.forEachBatch(pastaEntradaPath, Tuning::getBatchSize, descobertaParalela, batchAtual -> {
+                int batchStart = contadorLotes[1];
+                contadorLotes[0]++;
+                contadorLotes[1] += batchAtual.size();
+
+                List<Path> lote = batchAtual;
+                List<Long> ordens = null;
+                if (particao != null) {
+                    lote = new ArrayList<>();
+                    ordens = new ArrayList<>();
+                    for (int i = 0; i < batchAtual.size(); i++) {
+                        if (!particao.owns(batchAtual.get(i))) continue;
+                        lote.add(batchAtual.get(i));
+                        ordens.add((long) batchStart + i);
+                    }
+                    if (lote.isEmpty()) return;
+                }
 
-        try (Stream<Path> pathStream = Files.walk(pastaEntradaPath)) {
+                // Roda logo antes da primeira folha do lote ser submetida: com leitura antecipada, as folhas do lote
+                // anterior ainda podem estar sendo entregues quando este lote é enfileirado
+                List<Path> arquivosLote = lote;
+                List<Long> ordensLote = ordens;
+                int numeroLote = contadorLotes[0], ultimoArquivo = contadorLotes[1];
+                Runnable inicioLote = () -> {
+                    if (diario != null) diario.beginBatch(pastaEntradaPath, arquivosLote, ordensLote);
+                    Log.info("Processando lote", "lote", numeroLote, "arquivos", (batchStart + 1) + "-" + ultimoArquivo);
+                };
+
+                if (prefetcher != null) {
+                    // Leitura antecipada em thread de I/O + imdecode a partir de buffers diretos
+                    prefetcher.submit(lote, inicioLote);
+                    return;
+                }
+
+                inicioLote.run();
+                for (Path arquivoImagem : lote) {
+                    // TIFFs multipágina viram uma folha por página, decodificadas uma de cada vez
+                    for (SheetInput folha : SheetInput.fromFile(pastaEntradaPath, arquivoImagem)) {
+                        submeter.accept(folha);
+                    }
+                }
+            });
+        } catch (IOException e) {
+            Log.error("Erro ao listar arquivos na pasta de entrada", "pasta", PATH_INPUT_DIR, "erro", e.getMessage());
+            return -1;
+        } finally {
+            if (prefetcher != null) prefetcher.close(); // Entrega o que ainda está na fila de leitura
+        }
 
-            todosOsArquivos = pathStream
-                    .filter(Files::isRegularFile)
-                    .filter(p -> {
-                        String nome = p.getFileName().toString().toLowerCase();
-                        return nome.endsWith(".jpg") || nome.endsWith(".jpeg") || nome.endsWith(".png") || nome.endsWith(".tif") || nome.endsWith(".tiff");
-                    })
-                    .map(Path::toFile)
-                    .collect(Collectors.toList());
+        if (contadorLotes[1] == 0) {
+            System.out.println("Nenhum arquivo de imagem encontrado em: " + PATH_INPUT_DIR);
+        }
+        return contadorLotes[1];
+    }
+
+    /**
+     * Modo partição ({@code particao K/N}): lê só a fatia K de N do acervo (ver {@link Partition}) e grava o diário
+     * das folhas em {@code particoes/}. Vários processos, na mesma máquina ou não, dividem o acervo sem coordenador.
+     */
+    private static void runPartitionMode(String especificacao, Path pastaSaida, LayoutRegistry layouts) {
+        Partition particao;
+        Partition.Journal diario;
+        Path pastaParticoes = pastaSaida.resolve(Partition.PASTA);
+        try {
+            particao = Partition.parse(especificacao, PARTITION_BY, Paths.get(PATH_INPUT_DIR));
+            diario = new Partition.Journal(pastaParticoes, particao, Tuning.getBatchSize());
+        } catch (IllegalArgumentException | IOException e) {
+            Log.error("Erro ao iniciar a partição", "particao", especificacao, "erro", e.getMessage());
+            Log.flush();
+            return;
+        }
+        if (DISCOVERY_PARALLEL) Log.warn("Descoberta paralela ignorada no modo partição: o diário depende da ordem da descoberta");
+
+        // Métricas de cada parte na sua própria pasta: os processos compartilham a pasta de saída
+        Path pastaMetricas = pastaParticoes.resolve(particao.fileName().replace(".bin", ""));
+        pastaMetricas.toFile().mkdirs();
+        Metrics.startSnapshots(pastaMetricas, METRICS_INTERVAL_S);
+        if (!JFR_OUTPUT.isEmpty()) JfrEvents.startRecording(Paths.get(JFR_OUTPUT));
+        ResultCache cache = ResultCache.open();
+        SheetPipeline pipeline = new SheetPipeline(WORKER_COUNT, folha -> processSheet(folha, layouts, cache), resultado -> {
+            diario.write(resultado);
+            if (resultado.isSucesso()) {
+                Metrics.sheetRead();
+            } else {
+                Metrics.failure(resultado.motivoFalha);
+            }
+        });
+        PipelineControl.register(pipeline, () -> 0);
+
+        System.out.printf("Partição %d de %d (por %s)\n", particao.indice, particao.total, PARTITION_BY);
+        long arquivos = runBatchMode(pipeline, particao, diario);
+        pipeline.close();
+        try {
+            if (arquivos >= 0) {
+                diario.finish(arquivos);
+                System.out.printf("Diário da partição: %s (%d folhas de %d arquivos descobertos)\n", diario.getFile(), diario.getSheets(), arquivos);
+            } else {
+                diario.close();
+            }
+        } catch (IOException e) {
+            Log.error("Erro ao gravar o diário da partição", "arquivo", diario.getFile(), "erro", e.getMessage());
+        }
+        if (cache != null) cache.close();
+        Metrics.stopSnapshots(pastaMetricas);
+        JfrEvents.stopRecording();
+        Log.flush();
+    }
 
+    /**
+     * Modo junção ({@code merge [pasta]}): intercala os diários das partições na ordem da descoberta e consolida
+     * as folhas como um processo único, gravando os arquivos de saída normais.
+     */
+    private static void runMergeMode(Path pastaParticoes) {
+        try {
+            long folhas = Partition.merge(pastaParticoes, SaebDetector::handleResult);
+            System.out.printf("%d folhas juntadas de %s\n", folhas, pastaParticoes);
         } catch (IOException e) {
-            System.err.println("Erro ao listar arquivos na pasta de entrada: " + e.getMessage());
-            templates.values().forEach(FolhaTemplate::release);
+            Log.error("Erro ao juntar as partições", "pasta", pastaParticoes, "erro", e.getMessage());
+        }
+    }
+
+    /**
+     * Modo ZIP: lê as imagens diretamente dos arquivos informados (ou de todos os .zip em PATH_INPUT_DIR),
+     * sem extraí-los. As folhas são identificadas como "arquivo.zip!entrada".
+     */
+    private static void runZipMode(List<String> caminhos, SheetPipeline pipeline) {
+        List<Path> arquivosZip = new ArrayList<>();
+        for (String caminho : caminhos) arquivosZip.add(Paths.get(caminho));
+
+        if (arquivosZip.isEmpty()) {
+            File[] encontrados = new File(PATH_INPUT_DIR).listFiles((dir, nome) -> nome.toLowerCase().endsWith(".zip"));
+            if (encontrados != null) {
+                Arrays.sort(encontrados);
+                for (File f : encontrados) arquivosZip.add(f.toPath());
+            }
+        }
+
+        if (arquivosZip.isEmpty()) {
+            System.out.println("Nenhum arquivo ZIP encontrado em: " + PATH_INPUT_DIR);
             return;
         }
 
-        if (todosOsArquivos.isEmpty()) {
-            //System.out.println("Nenhum arquivo de imagem encontrado em: " + PATH_INPUT_DIR);
-            templates.values().forEach(FolhaTemplate::release);
+        System.out.printf("Lendo %d arquivo(s) ZIP com até %d leitores em paralelo...\n", arquivosZip.size(), ZIP_READERS);
+        ZipInputSource.forEachEntry(arquivosZip, ZIP_READERS, pipeline::submit);
+    }
+
+    /**
+     * Modo pasta monitorada: processa cada imagem assim que o scanner termina de gravá-la e
+     * grava cada caderno no arquivo organizado assim que ele fica completo. Encerra com Ctrl+C.
+     */
+    private static void runWatchMode(SheetPipeline pipeline) {
+        Path pastaEntrada = Paths.get(PATH_INPUT_DIR);
+        HotFolderWatcher watcher;
+        try {
+            watcher = new HotFolderWatcher(pastaEntrada, WATCH_POLL_MS, WATCH_STABLE_MS);
+        } catch (IOException e) {
+            Log.error("Erro ao monitorar a pasta de entrada", "pasta", PATH_INPUT_DIR, "erro", e.getMessage());
             return;
         }
 
-        Collections.sort(todosOsArquivos);
-
-        System.out.printf("Encontrados %d arquivos. Processando em lotes de %d...\n", todosOsArquivos.size(), BATCH_SIZE);
-
-        for (int i = 0; i < todosOsArquivos.size(); i += BATCH_SIZE) {
-            int batchStart = i;
-            int batchEnd = Math.min(i + BATCH_SIZE, todosOsArquivos.size());
-
-            List<File> batchAtual = todosOsArquivos.subList(batchStart, batchEnd);
-
-            System.out.printf("\n--- PROCESSANDO LOTE %d (Arquivos %d a %d) ---\n", (i / BATCH_SIZE + 1), (batchStart + 1), batchEnd);
-
-            for (File arquivoImagem : batchAtual) {
-
-                String nomeArquivoBase = arquivoImagem.getName().substring(0, arquivoImagem.getName().lastIndexOf('.'));
-                System.out.printf("\n➡ Processando %s\n", arquivoImagem.getName());
-                long totalStartTime = System.nanoTime();
-                long stepStartTime, stepEndTime;
-
-                Mat imagem = null; // Imagem bruta original (base)
-                Mat imagemParaProcessamento = null; // Imagem bruta final (0° ou 180°), usada para Warp
-                Mat recorteFinal = null; // Imagem alinhada final para OMR
-                
-                QrData dadosQR = null;
-
-                try {
-                    // 4.1. Carregar Imagem Bruta
-                    stepStartTime = System.nanoTime();
-                    imagem = Imgcodecs.imread(arquivoImagem.getAbsolutePath());
-                    if (imagem.empty()) continue;
-                    stepEndTime = System.nanoTime();
-                    //System.out.printf("  [TIMER] 1. Carregar Imagem:      %d ms\n", (stepEndTime - stepStartTime) / 1_000_000);
-                    
-                    // --- 4.2. Detecção de Orientação na Imagem Bruta ---
-                    
-                    // TENTATIVA 1: Orientação 0° (Bruta)
-                    stepStartTime = System.nanoTime();
-                    dadosQR = QRCodeReader.extractAndParseFromRawImage(imagem, PATH_OUTPUT_DIR, nomeArquivoBase); 
-                    
-                    if (dadosQR == null) {
-                        //System.out.println("  ⚠ QR Code não lido na orientação 0° BRUTA. Tentando rotação de 180°...");
-                        
-                        // Rotaciona a IMAGEM BRUTA
-                        Mat imagemRotacionada = rotate180(imagem);
-                        
-                        // TENTATIVA 2: Orientação 180° (Rotacionada Bruta)
-                        dadosQR = QRCodeReader.extractAndParseFromRawImage(imagemRotacionada, PATH_OUTPUT_DIR, nomeArquivoBase + "_ROTATED");
-                        
-                        // Define qual imagem bruta será usada para o Warp (Rotacionada)
-                        imagemParaProcessamento = imagemRotacionada;
-                        
-                        // Libera a imagem original se a rotacionada for usada, ou vice-versa
-                        if (dadosQR == null) {
-                            imagemRotacionada.release(); // Rotacionada falhou, libera.
-                        } else {
-                            imagem.release(); // Se rotacionada funcionou, libera a original.
-                        }
-                    } else {
-                        // Orientação 0° funcionou.
-                        imagemParaProcessamento = imagem;
-                    }
-                    
-                    stepEndTime = System.nanoTime();
-                    //System.out.printf("  [TIMER] 2. Detecção QR (Total):  %d ms\n", (stepEndTime - stepStartTime) / 1_000_000);
-                    
-                    // Fim da detecção de orientação
-                    if (dadosQR == null) {
-                        System.err.println("  ⚠ ERRO FATAL: Não foi possível ler o QR Code em nenhuma orientação. Folha descartada.");
-                        continue;
-                    }
+        Thread threadPrincipal = Thread.currentThread();
+        Thread encerramento = new Thread(() -> {
+            try {
+                watcher.close();
+                threadPrincipal.join(); // Aguarda a folha em andamento e o fechamento das saídas
+            } catch (IOException | InterruptedException ignored) {
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(encerramento);
 
-                    // 4.3. Alinhar a Imagem (Warp) NA ORIENTAÇÃO CORRETA
-                    stepStartTime = System.nanoTime();
-                    
-                    // 1. Detecção de âncoras na imagem bruta com orientação correta
-                    List<Point> pontosAncorasBrutos = AnchorDetector.findAnchorPoints(imagemParaProcessamento, PATH_OUTPUT_DIR, nomeArquivoBase);
-                    
-                    if (pontosAncorasBrutos == null) {
-                         System.err.println("  ⚠ ERRO FATAL: Âncoras não encontradas na imagem após correção de orientação.");
-                         continue;
-                    }
+        // Ao fim de cada varredura consolida o que estiver em voo, para não segurar cadernos prontos
+        watcher.run(caminho -> {
+            for (SheetInput folha : SheetInput.fromFile(pastaEntrada, caminho)) {
+                pipeline.submit(folha);
+            }
+        }, pipeline::drain);
+    }
+
+    /**
+     * Como {@link #processSheet(SheetInput, LayoutRegistry)}, reaproveitando o resultado guardado no {@code cache}
+     * (null = sem cache) quando os bytes da imagem, os layouts e os parâmetros são os mesmos de uma execução anterior.
+     */
+    static SheetResult processSheet(SheetInput entrada, LayoutRegistry layouts, ResultCache cache) {
+        String chave = cache != null ? cache.key(entrada) : null;
+        if (chave != null) {
+            SheetResult guardado = cache.get(chave, entrada.id());
+            if (guardado != null) {
+                entrada.discard(); // Sem load(): devolve ao pool o buffer da leitura antecipada
+                if (Log.isDebugEnabled()) Log.debug("Resultado do cache", "arquivo", entrada.id(), "chave", chave);
+                return checkDuplicate(guardado);
+            }
+        }
+        SheetResult resultado = processSheet(entrada, layouts);
+        if (chave != null) cache.put(chave, resultado);
+        return resultado;
+    }
 
-                    // 2. Warp: Cria o recorte alinhado usando a imagem com orientação correta
-                    recorteFinal = AnchorDetector.warpImage(imagemParaProcessamento, templateGenerico, pontosAncorasBrutos, PATH_OUTPUT_DIR, nomeArquivoBase, true);
+    /**
+     * Redigitalização de uma folha vinda do cache. "duplicada" depende das outras folhas desta execução e da ordem
+     * delas, não dos bytes da imagem: o cache guarda a miniatura e a comparação é refeita aqui, como em readSheet.
+     */
+    private static SheetResult checkDuplicate(SheetResult guardado) {
+        if (!guardado.isSucesso()) return guardado; // Falhas não entram no índice
+        return registerSheet(guardado, DuplicateDetector.fingerprintOf(guardado.miniatura));
+    }
 
-                    stepEndTime = System.nanoTime();
-                    //System.out.printf("  [TIMER] 3. Alinhamento (Warp):   %d ms\n", (stepEndTime - stepStartTime) / 1_000_000);
+    /**
+     * Registra uma folha lida com sucesso no índice de redigitalizações, no próprio worker, e aplica a política se ela
+     * for cópia de outra já lida: com {@code primeira} vira a falha "duplicada", com {@code ultima} substitui a anterior.
+     */
+    private static SheetResult registerSheet(SheetResult sucesso, DuplicateDetector.Fingerprint digital) {
+        String duplicataDe = DuplicateDetector.register(digital, sucesso.origem, sucesso.dadosQR.qrTextoCompleto);
+        if (duplicataDe == null) return sucesso;
+        if (DuplicateDetector.POLITICA == DuplicateDetector.Policy.PRIMEIRA) {
+            Log.info("Folha redigitalizada; descartada", "arquivo", sucesso.origem, "original", duplicataDe, "motivo", "duplicada");
+            return SheetResult.falha(sucesso.origem, sucesso.dadosQR, "duplicada", sucesso.duracaoMs);
+        }
+        Log.info("Folha redigitalizada; substitui a anterior", "arquivo", sucesso.origem, "original", duplicataDe);
+        return sucesso.replacing(duplicataDe);
+    }
 
-                    if (recorteFinal == null) continue;
+    /**
+     * Executa QR, âncoras, alinhamento e OMR de UMA folha. Não altera o pulmão, então pode
+     * ser chamado por vários workers ao mesmo tempo.
+     * @return Resultado da folha (sucesso ou falha com o motivo).
+     */
+    static SheetResult processSheet(SheetInput entrada, LayoutRegistry layouts) {
+        JfrEvents.SheetEvent evento = new JfrEvents.SheetEvent();
+        evento.begin();
+        evento.orientacao = -1;
 
-                    // 4.4. Puxar Configurações específicas e OMR
-                    String respondenteID = dadosQR.getRespondenteKey();
-                    String folhaNome = dadosQR.folhaNome;
-                    FolhaTemplate templateCorreto = templates.get(folhaNome);
-                    List<Alternativa> alternativasFolha = todasAlternativas.stream()
-                            .filter(a -> a.folha.equals(folhaNome))
-                            .collect(Collectors.toList());
+        SheetResult resultado = readSheet(entrada, layouts, evento);
 
-                    if (templateCorreto == null || alternativasFolha.isEmpty()) {
-                        if (templateCorreto == null) System.err.println("  ⚠ ERRO FATAL: Não há gabarito (template) para '" + folhaNome + "'.");
-                        if (alternativasFolha.isEmpty()) System.err.println("  ⚠ ERRO FATAL: Não há perguntas para '" + folhaNome + "' em config.txt.");
-                        continue;
-                    }
+        if (evento.shouldCommit()) {
+            evento.arquivo = resultado.origem;
+            evento.resultado = resultado.isSucesso() ? "ok" : resultado.motivoFalha;
+            evento.commit();
+        }
+        return resultado;
+    }
 
-                    // 4.5. Ler Bolhas (OMR)
-                    stepStartTime = System.nanoTime();
-                    Map<String, String> respostasDaFolha = OmrReader.readBubbles(recorteFinal, alternativasFolha, PATH_OUTPUT_DIR, nomeArquivoBase);
-                    stepEndTime = System.nanoTime();
-                    //System.out.printf("  [TIMER] 5. Ler Bolhas (OMR):     %d ms\n", (stepEndTime - stepStartTime) / 1_000_000);
-
-                    // 4.6. LÓGICA DO PULMÃO E CONSOLIDAÇÃO
-                    
-                    // Salva o resultado visual
-                    //String nomeArquivoSaida = OUTPUT_IMAGE_PREFIX + respondenteID + "_" + folhaNome.replace(" ", "") + ".jpg";
-                    //Imgcodecs.imwrite(PATH_OUTPUT_DIR + nomeArquivoSaida, recorteFinal); 
-                    
-                    // Lógica do Pulmão/Consolidação 
-                    int currentBookletIndex = respondenteBookletIndex.getOrDefault(respondenteID, 0);
-                    String bookletId = respondenteID + "_" + String.format("%03d", currentBookletIndex);
-                    Map<String, Map<String, String>> bookletSheets = pulmaoRespostas.computeIfAbsent(bookletId, k -> new LinkedHashMap<>());
-
-                    if (bookletSheets.containsKey(folhaNome)) {
-                        //System.out.printf("  ⚠ Aviso: Folha '%s' já processada para o Caderno %s. Pulando.\n", folhaNome, bookletId);
-                        continue;
-                    }
+    /** Corpo de {@link #processSheet}; registra em {@code evento} a orientação em que o QR foi lido. */
+    private static SheetResult readSheet(SheetInput entrada, LayoutRegistry layouts, JfrEvents.SheetEvent evento) {
+
+        // Template genérico só para estimar a resolução antes do QR (o warp usa o template da folha)
+        FolhaTemplate templateGenerico = layouts.defaultTemplate();
+
+        String origem = entrada.id();
+        String nomeArquivoBase = entrada.baseName();
+        if (Log.isInfoEnabled()) Log.info("Processando", "arquivo", origem);
+        long totalStartTime = System.nanoTime();
+        long stepStartTime, stepEndTime;
+
+        Mat imagem = null; // Imagem bruta original (base)
+        Mat imagemParaProcessamento = null; // Imagem bruta final (0° ou 180°), usada para Warp
+        Mat recorteFinal = null; // Imagem alinhada final para OMR
+
+        QrData dadosQR = null;
+        ScanGeometry geo = ScanGeometry.NOMINAL;
+
+        try {
+            // 4.1. Carregar Imagem Bruta
+            JfrEvents.StageEvent eventoCarga = new JfrEvents.StageEvent();
+            eventoCarga.begin();
+            stepStartTime = System.nanoTime();
+            imagem = entrada.load();
+            if (!imagem.empty()) {
+                // Digitalizações de alta resolução são reduzidas aqui (pirâmide), e o tempo conta como carga
+                geo = ScanGeometry.forScale(ScanGeometry.estimateScale(imagem, templateGenerico));
+                imagem = geo.reduce(imagem);
+                if (geo != ScanGeometry.NOMINAL && Log.isDebugEnabled()) {
+                    Log.debug("Resolução da digitalização", "arquivo", origem, "etapa", "load", "dpi", geo.estimatedDpi(),
+                            "piramide", geo.niveisPiramide, "escala", Math.round(geo.escala * 100) / 100.0);
+                }
+            }
+            stepEndTime = System.nanoTime();
+            Metrics.record(Metrics.Stage.LOAD, stepEndTime - stepStartTime);
+            if (eventoCarga.shouldCommit()) {
+                eventoCarga.arquivo = origem;
+                eventoCarga.etapa = "load";
+                eventoCarga.resultado = imagem.empty() ? "imagem_ilegivel" : "ok";
+                eventoCarga.commit();
+            }
+            if (imagem.empty()) return SheetResult.falha(origem, null, "imagem_ilegivel", elapsedMs(totalStartTime));
 
-                    bookletSheets.put(folhaNome, respostasDaFolha);
-
-                    if (bookletSheets.size() == FILES_PER_BOOKLET) {
-                        //System.out.printf("  *** CADERNO COMPLETO DETECTADO: %s ***\n", bookletId);
-                        Map<String, String> consolidatedAnswers = new LinkedHashMap<>();
-                        for (Map<String, String> sheetAnswers : bookletSheets.values()) {
-                            consolidatedAnswers.putAll(sheetAnswers);
-                        }
-
-                        finalRespostasPorBooklet.put(bookletId, consolidatedAnswers);
-                        dadosQrPorBooklet.put(bookletId, dadosQR);
-                        pulmaoRespostas.remove(bookletId);
-                        respondenteBookletIndex.put(respondenteID, currentBookletIndex + 1);
-                    } else {
-                        //System.out.printf("  [DEB] Folha '%s' adicionada. Faltam %d.\n", folhaNome, (FILES_PER_BOOKLET - bookletSheets.size()));
-                        dadosQrPorBooklet.putIfAbsent(bookletId, dadosQR);
-                    }
+            // Impressão digital da folha (seab.dedup); a comparação com as recentes espera o texto do QR
+            DuplicateDetector.Fingerprint digital = DuplicateDetector.fingerprintOf(imagem);
+            //System.out.printf("  [TIMER] 1. Carregar Imagem:      %d ms\n", (stepEndTime - stepStartTime) / 1_000_000);
+
+            // --- 4.2. Detecção de Orientação na Imagem Bruta ---
+
+            // Tentativas na ordem configurada (padrão: 0° e depois 180°; ajustável via JMX)
+            for (int orientacao : Tuning.getQrOrder()) {
+                stepStartTime = System.nanoTime();
 
+                // Rotaciona a IMAGEM BRUTA se a tentativa for de 180°
+                Mat candidata = orientacao == 180 ? rotate180(imagem) : imagem;
+                String sufixo = orientacao == 180 ? "_ROTATED" : "";
+                dadosQR = QRCodeReader.extractAndParseFromRawImage(candidata, PATH_OUTPUT_DIR, nomeArquivoBase + sufixo, orientacao, geo);
 
-                    String vetorRespostas = respostasDaFolha.values().stream().collect(Collectors.joining(","));
-                    //System.out.printf("  ✓ Respostas lidas: %s\n", vetorRespostas);
-
-                    long totalEndTime = System.nanoTime();
-                    long totalDurationMs = (totalEndTime - totalStartTime) / 1_000_000;
-                    //System.out.printf("  ⏱️ --- Tempo Total da Folha: %d ms ---\n", totalDurationMs);
-
-                    totalProcessingTimeMs += totalDurationMs;
-                    processedCount++;
-                } catch (Exception e) {
-                    System.err.printf("  ❌ Erro inesperado ao processar folha: %s - %s\n", arquivoImagem.getName(), e.getMessage());
-                    e.printStackTrace();
-                } finally {
-                    // Liberação final das matrizes
-                    // Libera 'imagem' ou 'imagemParaProcessamento' (que não é o mesmo objeto que 'imagem' se tiver sido rotacionado)
-                    if (imagem != null && imagem.empty() == false && imagemParaProcessamento != imagem) imagem.release();
-                    if (imagemParaProcessamento != null) imagemParaProcessamento.release();
-                    if (recorteFinal != null) recorteFinal.release(); 
+                stepEndTime = System.nanoTime();
+                Metrics.record(orientacao == 180 ? Metrics.Stage.QR_180 : Metrics.Stage.QR_0, stepEndTime - stepStartTime);
+
+                if (dadosQR != null) {
+                    // Define qual imagem bruta será usada para o Warp
+                    imagemParaProcessamento = candidata;
+                    if (candidata != imagem) imagem.release(); // Se rotacionada funcionou, libera a original.
+                    evento.orientacao = orientacao;
+                    break;
                 }
+                if (candidata != imagem) candidata.release(); // Rotacionada falhou, libera.
+                //System.out.println("  ⚠ QR Code não lido na orientação " + orientacao + "°. Tentando a próxima...");
             }
-        } 
 
-        writeOrganizedResults(finalRespostasPorBooklet, dadosQrPorBooklet, todasAsQuestoes);
-        printFinalSummary(totalProcessingTimeMs, processedCount);
-        templates.values().forEach(FolhaTemplate::release);
+            //System.out.printf("  [TIMER] 2. Detecção QR (Total):  %d ms\n", (stepEndTime - stepStartTime) / 1_000_000);
+
+            // Fim da detecção de orientação
+            if (dadosQR == null) {
+                Log.warn("QR Code não lido em nenhuma orientação; folha descartada", "arquivo", origem, "etapa", "qr", "motivo", "qr_nao_lido");
+                return SheetResult.falha(origem, null, "qr_nao_lido", elapsedMs(totalStartTime));
+            }
+
+            // Redigitalização de uma folha já lida (mesma miniatura e mesmo QR): com "primeira" é descartada antes das âncoras.
+            // O índice só muda no fim (registerSheet), quando se sabe que esta folha foi lida
+            if (DuplicateDetector.POLITICA == DuplicateDetector.Policy.PRIMEIRA) {
+                String duplicataDe = DuplicateDetector.find(digital, dadosQR.qrTextoCompleto);
+                if (duplicataDe != null) {
+                    Log.info("Folha redigitalizada; descartada", "arquivo", origem, "original", duplicataDe, "motivo", "duplicada");
+                    return SheetResult.falha(origem, dadosQR, "duplicada", elapsedMs(totalStartTime));
+                }
+            }
+
+            // Layout da folha na edição do QR (ano, tipo de prova); sem layout não vale a pena buscar âncoras
+            String folhaNome = dadosQR.folhaNome;
+            LayoutRegistry.SheetLayout layoutFolha = layouts.find(dadosQR);
+            if (layoutFolha == null) {
+                Log.warn("Não há template ou perguntas para a folha", "arquivo", origem, "folha", folhaNome,
+                        "ano", dadosQR.ano, "tipo", dadosQR.tipoProva, "motivo", "layout_ausente");
+                return SheetResult.falha(origem, dadosQR, "layout_ausente", elapsedMs(totalStartTime));
+            }
+
+            // 4.3. Alinhar a Imagem (Warp) NA ORIENTAÇÃO CORRETA
+            stepStartTime = System.nanoTime();
+
+            // 1. Detecção de âncoras na imagem bruta com orientação correta
+            // A estratégia de localização pode ser definida por template (linha "ANCORA:" do templates.txt)
+            AnchorStrategy estrategia = AnchorStrategy.forTemplate(layoutFolha.template);
+            List<Point> pontosAncorasBrutos = AnchorDetector.findAnchorPoints(imagemParaProcessamento, PATH_OUTPUT_DIR, nomeArquivoBase, estrategia, geo);
+            stepEndTime = System.nanoTime();
+            Metrics.record(Metrics.Stage.ANCHORS, stepEndTime - stepStartTime);
+
+            if (pontosAncorasBrutos == null) {
+                 Log.warn("Âncoras não encontradas; folha descartada", "arquivo", origem, "etapa", "anchors", "motivo", "ancoras_nao_encontradas");
+                 return SheetResult.falha(origem, dadosQR, "ancoras_nao_encontradas", elapsedMs(totalStartTime));
+            }
+
+            // 2. Warp: Cria o recorte alinhado usando a imagem com orientação correta, direto no template da folha
+            JfrEvents.StageEvent eventoWarp = new JfrEvents.StageEvent();
+            eventoWarp.begin();
+            stepStartTime = System.nanoTime();
+            recorteFinal = AnchorDetector.warpImage(imagemParaProcessamento, layoutFolha.template, pontosAncorasBrutos, PATH_OUTPUT_DIR, nomeArquivoBase, true);
+
+            stepEndTime = System.nanoTime();
+            Metrics.record(Metrics.Stage.WARP, stepEndTime - stepStartTime);
+            if (eventoWarp.shouldCommit()) {
+                eventoWarp.arquivo = origem;
+                eventoWarp.etapa = "warp";
+                eventoWarp.orientacao = evento.orientacao;
+                eventoWarp.resultado = recorteFinal != null ? "ok" : "warp_falhou";
+                eventoWarp.commit();
+            }
+            //System.out.printf("  [TIMER] 3. Alinhamento (Warp):   %d ms\n", (stepEndTime - stepStartTime) / 1_000_000);
+
+            if (recorteFinal == null) return SheetResult.falha(origem, dadosQR, "warp_falhou", elapsedMs(totalStartTime));
+
+            // 4.5. Ler Bolhas (OMR)
+            stepStartTime = System.nanoTime();
+            SheetAnswers respostasDaFolha = OmrReader.readBubbles(recorteFinal, layoutFolha.alternativas, PATH_OUTPUT_DIR, nomeArquivoBase);
+            stepEndTime = System.nanoTime();
+            Metrics.record(Metrics.Stage.OMR, stepEndTime - stepStartTime);
+            //System.out.printf("  [TIMER] 5. Ler Bolhas (OMR):     %d ms\n", (stepEndTime - stepStartTime) / 1_000_000);
+
+            // Salva o resultado visual
+            //String nomeArquivoSaida = OUTPUT_IMAGE_PREFIX + dadosQR.getRespondenteKey() + "_" + folhaNome.replace(" ", "") + ".jpg";
+            //Imgcodecs.imwrite(PATH_OUTPUT_DIR + nomeArquivoSaida, recorteFinal);
+
+
+            long totalDurationMs = elapsedMs(totalStartTime);
+            Metrics.record(Metrics.Stage.SHEET, System.nanoTime() - totalStartTime);
+            //System.out.printf("  ⏱️ --- Tempo Total da Folha: %d ms ---\n", totalDurationMs);
+
+            SheetResult sucesso = SheetResult.sucesso(origem, dadosQR, respostasDaFolha, totalDurationMs)
+                    .withAnchors(anchorCenters(pontosAncorasBrutos, geo))
+                    .withThumbnail(digital != null ? digital.miniatura : null);
+            return registerSheet(sucesso, digital);
+        } catch (Exception e) {
+            Log.error("Erro inesperado ao processar folha", e, "arquivo", origem, "motivo", "erro_inesperado");
+            return SheetResult.falha(origem, dadosQR, "erro_inesperado", elapsedMs(totalStartTime));
+        } finally {
+            // Liberação final das matrizes
+            // Libera 'imagem' ou 'imagemParaProcessamento' (que não é o mesmo objeto que 'imagem' se tiver sido rotacionado)
+            if (imagem != null && imagem.empty() == false && imagemParaProcessamento != imagem) imagem.release();
+            if (imagemParaProcessamento != null) imagemParaProcessamento.release();
+            if (recorteFinal != null) recorteFinal.release();
+        }
     }
-    
+
     /**
-     * Rotaciona a Mat em 180 graus.
-     * @param src A Mat de origem.
-     * @return A Mat rotacionada (NOVA MAT).
+     * Modo serviço: recebe as folhas por HTTP (ver {@link SheetService}) em vez da pasta de entrada. A consolidação é a
+     * mesma dos outros modos, uma folha por vez. Encerra com Ctrl+C, depois de responder às requisições em andamento.
      */
-    private static Mat rotate180(Mat src) {
-        Mat dst = new Mat();
-        Core.flip(src, dst, -1); 
-        return dst;
+    private static void runServiceMode(LayoutRegistry layouts, ResultCache cache) {
+        SheetService servico;
+        try {
+            servico = new SheetService(new InetSocketAddress(SERVICE_HOST, SERVICE_PORT), WORKER_COUNT, SERVICE_QUEUE,
+                    folha -> processSheet(folha, layouts, cache), SaebDetector::handleServiceResult);
+        } catch (IOException e) {
+            Log.error("Erro ao abrir o serviço HTTP", "endereco", SERVICE_HOST + ":" + SERVICE_PORT, "erro", e.getMessage());
+            return;
+        }
+
+        Thread threadPrincipal = Thread.currentThread();
+        Thread encerramento = new Thread(() -> {
+            servico.close();
+            try {
+                threadPrincipal.join(); // Aguarda o fechamento das saídas
+            } catch (InterruptedException ignored) {
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(encerramento);
+
+        servico.start();
+        System.out.printf("Serviço HTTP em http://%s:%d/folhas (%d leitores, fila de %d folhas)\n",
+                SERVICE_HOST, servico.getPort(), WORKER_COUNT, SERVICE_QUEUE);
+        try {
+            servico.awaitShutdown();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            servico.close();
+        }
+        System.out.printf("Serviço encerrado: %d folhas aceitas, %d recusadas por fila cheia\n", servico.getAccepted(), servico.getRejected());
     }
 
+    /**
+     * Modo quadros: imagens pela entrada padrão, uma linha JSON por folha na saída padrão (ver {@link FrameStreamService}).
+     * Termina quando o remetente fecha a entrada.
+     */
+    private static void runFrameMode(LayoutRegistry layouts, ResultCache cache, PrintStream protocolo) {
+        FrameStreamService quadros = new FrameStreamService(WORKER_COUNT, STREAM_IN_FLIGHT, SERVICE_MAX_MB * 1024L * 1024,
+                folha -> processSheet(folha, layouts, cache), SaebDetector::handleServiceResult);
+        long recebidos = quadros.run(System.in, protocolo);
+        System.out.printf("Entrada encerrada: %d quadros recebidos, %d respondidos\n", recebidos, quadros.getAnswered());
+    }
+
+    /** {@link #handleResult} para o serviço e o modo quadros: diz em que caderno a folha entrou e se ela o completou. */
+    private static SheetService.BookletStatus handleServiceResult(SheetResult resultado) {
+        if (!resultado.isSucesso()) {
+            handleResult(resultado);
+            return null;
+        }
+        String respondenteID = resultado.dadosQR.getRespondenteKey();
+        int indice = respondenteBookletIndex.getOrDefault(respondenteID, 0);
+        String bookletId = respondenteID + "_" + String.format("%03d", indice);
+        handleResult(resultado);
+        if (respondenteBookletIndex.getOrDefault(respondenteID, 0) > indice) {
+            return new SheetService.BookletStatus(bookletId, FILES_PER_BOOKLET, true);
+        }
+        Map<String, SheetAnswers> folhas = pulmaoRespostas.get(bookletId);
+        return new SheetService.BookletStatus(bookletId, folhas != null ? folhas.size() : 0, false);
+    }
 
-    private static void writeOrganizedResults(Map<String, Map<String, String>> respostasPorBooklet, Map<String, QrData> dadosQrPorBooklet, Set<String> todasAsQuestoes) {
-        //System.out.println("\n\n--- Gerando arquivo de respostas organizado (" + OUTPUT_TXT_FILE_ORGANIZED + ") ---");
-        String caminhoTXT = PATH_OUTPUT_DIR + OUTPUT_TXT_FILE_ORGANIZED;
+    /**
+     * Abre as saídas (organizado em texto e/ou colunar, ou as partes de {@code seab.output.shards}, e falhas) em {@code pastaSaida}.
+     * @param incremental Grava cada caderno no disco assim que fica completo (modos contínuos).
+     */
+    static void openOutputs(Path pastaSaida, Set<String> todasAsQuestoes, boolean incremental) throws IOException {
+        if (!OUTPUT_SHARDS.isEmpty()) {
+            shardWriter = ShardedResultWriter.open(pastaSaida, todasAsQuestoes, incremental);
+        } else if (!"colunar".equals(OUTPUT_FORMAT)) {
+            resultWriter = new OrganizedResultWriter(pastaSaida.resolve(OUTPUT_TXT_FILE_ORGANIZED).toString(), todasAsQuestoes, incremental);
+        }
+        if (OUTPUT_SHARDS.isEmpty() && !"texto".equals(OUTPUT_FORMAT)) {
+            colunarWriter = new ColumnarResultWriter(pastaSaida.resolve(OUTPUT_COLUMNAR_FILE).toString(), todasAsQuestoes, COLUMNAR_BLOCK_ROWS, incremental);
+        }
+        falhasWriter = new BufferedWriter(new FileWriter(pastaSaida.resolve(OUTPUT_FAILURES_FILE).toFile(), false));
+    }
 
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(caminhoTXT, false))) {
+    /** Esvazia o pulmão e esquece as saídas e os totais, para uma nova execução na mesma JVM (RegressionHarness). */
+    static void resetConsolidation() {
+        pulmaoRespostas.clear();
+        respondenteBookletIndex.clear();
+        finalRespostasPorBooklet.clear();
+        dadosQrPorBooklet.clear();
+        totalProcessingTimeMs = 0;
+        processedCount = 0;
+        resultWriter = null;
+        colunarWriter = null;
+        shardWriter = null;
+        falhasWriter = null;
+    }
 
-            // 1. Cabeçalho
-            StringBuilder header = new StringBuilder();
-            header.append("id_instituicao,id_respondente");
-            for (String questao : todasAsQuestoes) {
-                header.append(",").append(questao);
-            }
-            bw.write(header.toString());
-            bw.newLine();
+    /**
+     * Encaminha o resultado de uma folha: falhas vão para o arquivo de falhas, sucessos para o pulmão.
+     * Cadernos completados por esta folha são gravados imediatamente no arquivo organizado.
+     */
+    static void handleResult(SheetResult resultado) {
+        if (!resultado.isSucesso()) {
+            recordFailure(resultado);
+            return;
+        }
 
-            // 2. Itera sobre os resultados consolidados
-            for (Map.Entry<String, Map<String, String>> entry : respostasPorBooklet.entrySet()) {
+        long inicioSaida = System.nanoTime();
+        if (consolidate(resultado)) {
+            totalProcessingTimeMs += resultado.duracaoMs;
+            processedCount++;
+            Metrics.sheetRead();
+        }
+        Metrics.record(Metrics.Stage.OUTPUT, System.nanoTime() - inicioSaida);
+    }
 
-                String bookletId = entry.getKey();
-                Map<String, String> respostasTotais = entry.getValue();
+    /**
+     * 4.6. LÓGICA DO PULMÃO E CONSOLIDAÇÃO
+     * @return false se a folha já havia sido recebida para o caderno atual do respondente.
+     */
+    private static boolean consolidate(SheetResult resultado) {
+        QrData dadosQR = resultado.dadosQR;
+        String respondenteID = dadosQR.getRespondenteKey();
+        String folhaNome = dadosQR.folhaNome;
+
+        int currentBookletIndex = respondenteBookletIndex.getOrDefault(respondenteID, 0);
+        String bookletId = respondenteID + "_" + String.format("%03d", currentBookletIndex);
+        Map<String, SheetAnswers> bookletSheets = pulmaoRespostas.computeIfAbsent(bookletId, k -> new LinkedHashMap<>());
+
+        if (bookletSheets.containsKey(folhaNome)) {
+            if (resultado.duplicataDe != null) {
+                bookletSheets.put(folhaNome, resultado.respostas); // Política "ultima": a redigitalização vale
+                Log.info("Respostas substituídas pela redigitalização", "arquivo", resultado.origem, "original", resultado.duplicataDe, "caderno", bookletId);
+                return true;
+            }
+            //System.out.printf("  ⚠ Aviso: Folha '%s' já processada para o Caderno %s. Pulando.\n", folhaNome, bookletId);
+            return false;
+        }
+        if (resultado.duplicataDe != null) {
+            // O caderno da folha original já foi gravado; a cópia não pode abrir um caderno novo
+            Log.warn("Redigitalização de caderno já gravado; descartada", "arquivo", resultado.origem, "original", resultado.duplicataDe, "motivo", "duplicada");
+            if (bookletSheets.isEmpty()) pulmaoRespostas.remove(bookletId); // Criado vazio acima
+            recordFailure(SheetResult.falha(resultado.origem, resultado.dadosQR, "duplicada", resultado.duracaoMs));
+            return false;
+        }
 
-                QrData dadosQRRef = dadosQrPorBooklet.get(bookletId);
+        bookletSheets.put(folhaNome, resultado.respostas);
 
-                StringBuilder dataLine = new StringBuilder();
+        if (bookletSheets.size() == FILES_PER_BOOKLET) {
+            //System.out.printf("  *** CADERNO COMPLETO DETECTADO: %s ***\n", bookletId);
+            // Sem cópia das respostas: o caderno aponta para as folhas, e a última folha com a questão vale
+            QrKey chave = dadosQrPorBooklet.remove(bookletId);
+            BookletAnswers consolidatedAnswers = new BookletAnswers(chave != null ? chave : QrKey.of(dadosQR),
+                    bookletSheets.values().toArray(new SheetAnswers[0]));
 
-                dataLine.append(dadosQRRef != null ? dadosQRRef.instituicao : "N/A").append(",");
-                dataLine.append(dadosQRRef != null ? dadosQRRef.respondente : "N/A"); // Usa o ID original do respondente
+            finalRespostasPorBooklet.put(bookletId, consolidatedAnswers);
+            pulmaoRespostas.remove(bookletId);
+            respondenteBookletIndex.put(respondenteID, currentBookletIndex + 1);
+            emitBooklet(bookletId);
+            return true;
+        }
 
-                // Adiciona as respostas, na ordem do cabeçalho
-                for (String questao : todasAsQuestoes) {
-                    dataLine.append(",").append(respostasTotais.getOrDefault(questao, ""));
-                }
+        //System.out.printf("  [DEB] Folha '%s' adicionada. Faltam %d.\n", folhaNome, (FILES_PER_BOOKLET - bookletSheets.size()));
+        dadosQrPorBooklet.computeIfAbsent(bookletId, k -> QrKey.of(dadosQR));
+        return true;
+    }
 
-                bw.write(dataLine.toString());
-                bw.newLine();
-            }
+    /**
+     * Grava o caderno completo no arquivo organizado e o remove da memória,
+     * para que execuções longas não acumulem todos os resultados no heap.
+     */
+    private static void emitBooklet(String bookletId) {
+        BookletAnswers respostasTotais = finalRespostasPorBooklet.remove(bookletId);
+        try {
+            if (shardWriter != null) shardWriter.writeBooklet(respostasTotais);
+            if (resultWriter != null) resultWriter.writeBooklet(respostasTotais);
+            if (colunarWriter != null) colunarWriter.writeBooklet(respostasTotais);
+            Metrics.bookletCompleted();
+        } catch (IOException e) {
+            Log.error("Erro ao salvar respostas organizadas", "caderno", bookletId, "erro", e.getMessage());
+        }
+    }
+
+    private static void recordFailure(SheetResult resultado) {
+        Metrics.failure(resultado.motivoFalha);
+        try {
+            falhasWriter.write(resultado.origem + ";" + resultado.motivoFalha);
+            falhasWriter.newLine();
+            falhasWriter.flush();
+        } catch (IOException e) {
+            Log.error("Erro ao registrar falha", "arquivo", resultado.origem, "erro", e.getMessage());
+        }
+    }
 
+    static void closeOutputs() {
+        try {
+            if (resultWriter != null) resultWriter.close();
+            if (colunarWriter != null) colunarWriter.close();
+            if (shardWriter != null) shardWriter.close();
+            falhasWriter.close();
         } catch (IOException e) {
-            System.err.println("Erro ao salvar respostas organizadas: " + e.getMessage());
+            Log.error("Erro ao fechar arquivos de saída", "pasta", PATH_OUTPUT_DIR, "erro", e.getMessage());
         }
     }
 
+    /** Centros das âncoras (TL, TR, BL, BR) na resolução original, desfazendo a pirâmide da ScanGeometry. */
+    private static double[] anchorCenters(List<Point> pontos, ScanGeometry geo) {
+        double fator = 1 << geo.niveisPiramide;
+        double[] centros = new double[8];
+        for (int i = 0; i < 4; i++) {
+            centros[2 * i] = pontos.get(i).x * fator;
+            centros[2 * i + 1] = pontos.get(i).y * fator;
+        }
+        return centros;
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    /**
+     * Rotaciona a Mat em 180 graus.
+     * @param src A Mat de origem.
+     * @return A Mat rotacionada (NOVA MAT).
+     */
+    private static Mat rotate180(Mat src) {
+        Mat dst = new Mat();
+        Core.flip(src, dst, -1); 
+        return dst;
+    }
+
+
     private static void printFinalSummary(long totalProcessingTimeMs, int processedCount) {
         if (processedCount > 0) {
             long averageTime = totalProcessingTimeMs / processedCount;
@@ -325,8 +800,34 @@ public class SaebDetector {
             System.out.printf("  Total de Folhas Processadas: %d\n", processedCount);
             System.out.printf("  Tempo Total Geral: %d ms\n", totalProcessingTimeMs);
             System.out.printf("  Tempo Médio por Folha: %d ms\n", averageTime);
+            System.out.println("  Latência por etapa (ms):");
+            System.out.printf("    %-12s %8s %8s %8s %8s %8s\n", "etapa", "n", "p50", "p95", "p99", "máx");
+            for (Metrics.Stage etapa : Metrics.Stage.values()) {
+                LatencyHistogram.Snapshot h = Metrics.snapshot(etapa);
+                if (h.count == 0) continue;
+                System.out.printf("    %-12s %8d %8.1f %8.1f %8.1f %8.1f\n", etapa.nome, h.count,
+                        h.percentileMs(50), h.percentileMs(95), h.percentileMs(99), h.maxMicros / 1000.0);
+            }
+            System.out.println("  Busca de âncoras (acertos/tentativas por janela):");
+            for (int nivel = 0; nivel < AnchorPriors.levelCount(); nivel++) {
+                long tentativas = AnchorPriors.getAttempts(nivel);
+                if (tentativas == 0) continue;
+                System.out.printf("    %-12s %8d / %-8d (%.1f%%)\n", AnchorPriors.describeLevel(nivel), AnchorPriors.getHits(nivel),
+                        tentativas, 100.0 * AnchorPriors.getHits(nivel) / tentativas);
+            }
+            Map<String, Long> falhas = Metrics.getFalhasPorMotivo();
+            if (!falhas.isEmpty()) System.out.printf("  Folhas descartadas por motivo: %s\n", falhas);
             System.out.println("===================================");
-            System.out.printf("  Arquivo de Respostas Organizado (1 linha por respondente): %s\n", PATH_OUTPUT_DIR + OUTPUT_TXT_FILE_ORGANIZED);
+            if (resultWriter != null) {
+                System.out.printf("  Arquivo de Respostas Organizado (1 linha por respondente): %s\n", PATH_OUTPUT_DIR + OUTPUT_TXT_FILE_ORGANIZED);
+            }
+            if (colunarWriter != null) {
+                System.out.printf("  Arquivo de Respostas Colunar: %s\n", PATH_OUTPUT_DIR + OUTPUT_COLUMNAR_FILE);
+            }
+            if (shardWriter != null) {
+                System.out.printf("  Respostas em %d partes (%d linhas): %s\n", shardWriter.getShards(), shardWriter.getRows(),
+                        shardWriter.getDirectory().resolve(ShardedResultWriter.MANIFESTO));
+            }
         } else {
             System.out.println("\nProcessamento concluído. Nenhuma folha foi processada.");
         }
@@ -0,0 +1,98 @@
+package seabdetector;
+
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+import static seabdetector.Constants.*;
+import static seabdetector.DataModels.FolhaTemplate;
+
+/**
+ * Parâmetros geométricos (em pixels) para a resolução de UMA imagem, antes do warp.
+ *
+ * As constantes de âncora e de QR foram calibradas para a resolução do template (a de {@code idealSize}).
+ * A resolução da digitalização é estimada pelo tamanho da página em relação a {@code idealSize}
+ * (ou fixada com {@code -Dseab.scan.dpi}). Digitalizações com o dobro ou mais da resolução são reduzidas
+ * com pyrDown até ficarem entre 1x e 2x do template, e os parâmetros são escalados pelo fator restante:
+ * uma folha de 600 dpi custa praticamente o mesmo que uma de 200-300 dpi.
+ *
+ * O OMR roda sobre o recorte alinhado, que sempre tem o tamanho do template, então BUBBLE_RADIUS não muda.
+ */
+public class ScanGeometry {
+
+    // Desvio de escala abaixo do qual os parâmetros originais são usados sem arredondamentos
+    private static final double TOLERANCIA_ESCALA = 0.03;
+
+    /** Parâmetros originais (digitalização na resolução do template). */
+    public static final ScanGeometry NOMINAL = new ScanGeometry(1.0, 0);
+
+    /** Pixels da imagem (após a pirâmide) por pixel do template. */
+    public final double escala;
+    /** Quantas vezes a imagem original foi reduzida à metade. */
+    public final int niveisPiramide;
+
+    public final double anchorMinArea;
+    public final double anchorMaxArea;
+    public final int adaptiveBlockSize;
+    public final int priorMargin;
+    public final int[] searchLevels;
+    public final int qrRecorte;
+    public final double qrAmpliacao;
+
+    private ScanGeometry(double escala, int niveisPiramide) {
+        this.escala = escala;
+        this.niveisPiramide = niveisPiramide;
+        this.anchorMinArea = ANCHOR_MIN_AREA * escala * escala;
+        this.anchorMaxArea = ANCHOR_MAX_AREA * escala * escala;
+        int bloco = (int) Math.round(ADAPTIVE_THRESH_BLOCK_SIZE * escala);
+        this.adaptiveBlockSize = Math.max(3, bloco % 2 == 0 ? bloco + 1 : bloco); // adaptiveThreshold exige ímpar
+        this.priorMargin = (int) Math.round(ANCHOR_PRIOR_MARGIN * escala);
+        int[] lados = AnchorPriors.parseLevels(ANCHOR_SEARCH_LEVELS);
+        for (int i = 0; i < lados.length; i++) lados[i] = (int) Math.round(lados[i] * escala);
+        this.searchLevels = lados;
+        this.qrRecorte = (int) Math.round((QRCodeReader.QR_SEARCH_SIZE + QRCodeReader.QR_EXTRA_MARGIN) * escala);
+        this.qrAmpliacao = QRCodeReader.QR_AMPLIACAO / escala;
+    }
+
+    /**
+     * Escala da imagem em relação ao template: {@code seab.scan.dpi / seab.template.dpi} se informado,
+     * senão a média das razões de largura e altura da página em relação a {@code idealSize}.
+     */
+    public static double estimateScale(Mat imagem, FolhaTemplate template) {
+        if (SCAN_DPI > 0) return (double) SCAN_DPI / TEMPLATE_DPI;
+        if (template == null || template.idealSize.width <= 0 || template.idealSize.height <= 0) return 1.0;
+        double rx = imagem.cols() / template.idealSize.width;
+        double ry = imagem.rows() / template.idealSize.height;
+        return (rx + ry) / 2;
+    }
+
+    /** Geometria para uma imagem com a {@code escala} estimada (antes da pirâmide). */
+    public static ScanGeometry forScale(double escala) {
+        int niveis = 0;
+        while (escala >= 2.0) { // Cada nível da pirâmide reduz a imagem à metade
+            escala /= 2;
+            niveis++;
+        }
+        if (niveis == 0 && Math.abs(escala - 1.0) < TOLERANCIA_ESCALA) return NOMINAL;
+        return new ScanGeometry(escala, niveis);
+    }
+
+    /**
+     * Aplica os níveis de pirâmide à imagem.
+     * @return A imagem reduzida (a original é liberada), ou a própria imagem se não há redução.
+     */
+    public Mat reduce(Mat imagem) {
+        Mat atual = imagem;
+        for (int i = 0; i < niveisPiramide; i++) {
+            Mat menor = new Mat();
+            Imgproc.pyrDown(atual, menor);
+            atual.release();
+            atual = menor;
+        }
+        return atual;
+    }
+
+    /** Resolução estimada da digitalização original, para logs. */
+    public int estimatedDpi() {
+        return (int) Math.round(TEMPLATE_DPI * escala * (1 << niveisPiramide));
+    }
+}
@@ -0,0 +1,211 @@
+package seabdetector;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static seabdetector.Constants.*;
+import static seabdetector.DataModels.*;
+
+/**
+ * Arquivo organizado dividido em partes: uma por instituição ({@code -Dseab.output.shards=instituicao}) ou uma por
+ * balde do hash da instituição ({@code balde}, {@code seab.output.shard.buckets} partes). Cada parte tem os seus
+ * escritores (texto e/ou colunar, conforme {@code seab.output.format}) na pasta {@code shards/} da saída.
+ *
+ * A thread de consolidação só escolhe a parte e entrega o caderno a uma das {@code seab.output.shard.writers}
+ * threads de escrita (sempre a mesma para a mesma parte, que mantém a ordem das linhas); partes diferentes
+ * formatam e gravam ao mesmo tempo. No fechamento, {@value #MANIFESTO} lista as partes e as linhas de cada uma.
+ * Um erro de escrita numa thread de escrita não é engolido: o próximo {@link #writeBooklet} e o {@link #close()} o relançam.
+ *
+ * O nome de cada parte por instituição leva um hash curto da instituição original, para que "A.B" e "A_B" (iguais depois
+ * da troca dos caracteres inválidos) ou "abc" e "ABC" (iguais em sistemas de arquivos sem distinção de caixa) não caiam
+ * no mesmo arquivo.
+ *
+ * No modo instituição todas as partes ficam abertas até o fim: com milhares de instituições, use {@code balde}.
+ */
+public class ShardedResultWriter implements Closeable {
+
+    static final String MANIFESTO = "manifesto.txt";
+    private static final int FILA_POR_ESCRITOR = 1024;
+
+    /** Uma parte do arquivo organizado. */
+    private static class Shard {
+        final String chave;
+        final String nome;
+        final OrganizedResultWriter texto;
+        final ColumnarResultWriter colunar;
+        final ThreadPoolExecutor escritor;
+        final AtomicLong linhas = new AtomicLong();
+
+        Shard(String chave, String nome, OrganizedResultWriter texto, ColumnarResultWriter colunar, ThreadPoolExecutor escritor) {
+            this.chave = chave; this.nome = nome; this.texto = texto; this.colunar = colunar; this.escritor = escritor;
+        }
+    }
+
+    private final Path pasta;
+    private final Set<String> todasAsQuestoes;
+    private final boolean porInstituicao;
+    private final int baldes;
+    private final boolean flushPorCaderno;
+    private final ThreadPoolExecutor[] escritores;
+    private final Map<String, Shard> partes = new LinkedHashMap<>();
+    private final AtomicReference<IOException> erro = new AtomicReference<>(); // Primeiro erro das threads de escrita
+
+    public ShardedResultWriter(Path pasta, Set<String> todasAsQuestoes, String modo, int baldes, int threads,
+                               boolean flushPorCaderno) throws IOException {
+        if (!"instituicao".equals(modo) && !"balde".equals(modo)) {
+            throw new IllegalArgumentException("seab.output.shards deve ser instituicao ou balde: " + modo);
+        }
+        this.pasta = pasta;
+        this.todasAsQuestoes = todasAsQuestoes;
+        this.porInstituicao = "instituicao".equals(modo);
+        this.baldes = Math.max(1, baldes);
+        this.flushPorCaderno = flushPorCaderno;
+        Files.createDirectories(pasta);
+        this.escritores = new ThreadPoolExecutor[Math.max(1, threads)];
+        for (int i = 0; i < escritores.length; i++) {
+            String nome = "seab-shard-" + i;
+            // Fila limitada: se a escrita ficar para trás, a consolidação espera em vez de acumular cadernos no heap
+            escritores[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(FILA_POR_ESCRITOR), r -> {
+                Thread t = new Thread(r, nome);
+                t.setDaemon(true);
+                return t;
+            }, (tarefa, executor) -> {
+                try {
+                    executor.getQueue().put(tarefa);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+    }
+
+    /** Escritor das partes de {@code seab.output.shards} na pasta {@code shards/} da saída. */
+    public static ShardedResultWriter open(Path pastaSaida, Set<String> todasAsQuestoes, boolean flushPorCaderno) throws IOException {
+        return new ShardedResultWriter(pastaSaida.resolve("shards"), todasAsQuestoes, OUTPUT_SHARDS, OUTPUT_SHARD_BUCKETS,
+                OUTPUT_SHARD_WRITERS, flushPorCaderno);
+    }
+
+    public Path getDirectory() {
+        return pasta;
+    }
+
+    /**
+     * Entrega o caderno à thread de escrita da sua parte (chamar sempre da mesma thread).
+     * @throws IOException Se uma escrita anterior falhou (a gravação é assíncrona; o erro aparece na chamada seguinte).
+     */
+    public void writeBooklet(BookletAnswers caderno) throws IOException {
+        checkError();
+        Shard parte = shard(caderno.chave.instituicao());
+        parte.escritor.execute(() -> {
+            try {
+                if (parte.texto != null) parte.texto.writeBooklet(caderno);
+                if (parte.colunar != null) parte.colunar.writeBooklet(caderno);
+                parte.linhas.incrementAndGet();
+            } catch (IOException e) {
+                erro.compareAndSet(null, new IOException("parte " + parte.nome + ", respondente " + caderno.chave.respondente() + ": " + e.getMessage(), e));
+            }
+        });
+    }
+
+    private void checkError() throws IOException {
+        IOException e = erro.get();
+        if (e != null) throw e;
+    }
+
+    private Shard shard(String instituicao) throws IOException {
+        String chave = porInstituicao ? instituicao : String.valueOf(Math.floorMod(instituicao.hashCode(), baldes));
+        Shard parte = partes.get(chave);
+        if (parte != null) return parte;
+
+        // String.hashCode é definido na especificação: o mesmo balde em qualquer JVM
+        String nome = porInstituicao ? "respostas_" + safeName(chave) + "_" + shortHash(chave) : String.format("respostas_b%03d", Integer.parseInt(chave));
+        OrganizedResultWriter texto = null;
+        ColumnarResultWriter colunar = null;
+        if (!"colunar".equals(OUTPUT_FORMAT)) {
+            texto = new OrganizedResultWriter(pasta.resolve(nome + ".txt").toString(), todasAsQuestoes, flushPorCaderno);
+        }
+        if (!"texto".equals(OUTPUT_FORMAT)) {
+            colunar = new ColumnarResultWriter(pasta.resolve(nome + ".col").toString(), todasAsQuestoes, COLUMNAR_BLOCK_ROWS, flushPorCaderno);
+        }
+        parte = new Shard(chave, nome, texto, colunar, escritores[partes.size() % escritores.length]);
+        partes.put(chave, parte);
+        return parte;
+    }
+
+    /** Instituição como nome de arquivo: o que não for letra, dígito, '-' ou '_' vira '_'. */
+    private static String safeName(String instituicao) {
+        return instituicao.isEmpty() ? "_" : instituicao.replaceAll("[^A-Za-z0-9_-]", "_");
+    }
+
+    /** 8 dígitos hexadecimais do SHA-256 da instituição original (antes do {@link #safeName}). */
+    private static String shortHash(String instituicao) {
+        byte[] hash = SheetInput.sha256().digest(instituicao.getBytes(StandardCharsets.UTF_8));
+        return String.format("%02x%02x%02x%02x", hash[0], hash[1], hash[2], hash[3]);
+    }
+
+    public long getRows() {
+        long total = 0;
+        for (Shard parte : partes.values()) total += parte.linhas.get();
+        return total;
+    }
+
+    public int getShards() {
+        return partes.size();
+    }
+
+    /** Espera as filas esvaziarem, fecha as partes e grava o manifesto. */
+    @Override
+    public void close() throws IOException {
+        for (ThreadPoolExecutor escritor : escritores) escritor.shutdown();
+        try {
+            for (ThreadPoolExecutor escritor : escritores) escritor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        IOException primeiroErro = null;
+        for (Shard parte : partes.values()) {
+            try {
+                if (parte.texto != null) parte.texto.close();
+                if (parte.colunar != null) parte.colunar.close();
+            } catch (IOException e) {
+                if (primeiroErro == null) primeiroErro = e;
+            }
+        }
+        writeManifest();
+        checkError();
+        if (primeiroErro != null) throw primeiroErro;
+    }
+
+    /** "arquivo;chave;linhas", uma parte por linha, na ordem em que as partes foram abertas. */
+    private void writeManifest() throws IOException {
+        List<String> linhas = new ArrayList<>(partes.size() + 1);
+        linhas.add(porInstituicao ? "arquivo;instituicao;linhas" : "arquivo;balde;linhas");
+        for (Shard parte : partes.values()) {
+            linhas.add(parte.nome + ";" + parte.chave + ";" + parte.linhas.get());
+        }
+        Path temp = pasta.resolve(MANIFESTO + ".tmp");
+        try (BufferedWriter bw = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (String linha : linhas) {
+                bw.write(linha);
+                bw.newLine();
+            }
+        }
+        Files.move(temp, pasta.resolve(MANIFESTO), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,245 @@
+package seabdetector;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Uma folha a ser lida pelo pipeline: identidade estável (usada em resultados e no arquivo de falhas)
+ * e decodificação sob demanda, para que a imagem só ocupe memória enquanto a folha está em processamento.
+ */
+public interface SheetInput {
+
+    /**
+     * Identidade da folha. Para arquivos é o caminho relativo à pasta de entrada, com '/' em qualquer sistema, para que
+     * "escolaA/folha1.jpg" e "escolaB/folha1.jpg" não se confundam em falhas.txt, no cache e no diário da partição.
+     * Ex.: "folha1.jpg", "escola01/bandeja03.tif#12".
+     */
+    String id();
+
+    /** Nome seguro para compor arquivos de debug (sem extensão nem separadores especiais). */
+    String baseName();
+
+    /** Decodifica a imagem em BGR. Retorna uma Mat vazia se a imagem for ilegível. */
+    Mat load();
+
+    /**
+     * SHA-256 dos bytes de origem da folha (chave do {@link ResultCache}); null se não houver como calcular.
+     * Deve ser chamado antes de {@link #load()}, que pode devolver ao pool os bytes lidos antecipadamente.
+     */
+    default byte[] digest() throws IOException {
+        return null;
+    }
+
+    /**
+     * Libera os bytes lidos antecipadamente sem decodificá-los, quando a folha não vai passar por {@link #load()}
+     * (p.ex. resultado vindo do cache). Depois disso, {@link #load()} ainda funciona, lendo do disco.
+     */
+    default void discard() {
+    }
+
+    /**
+     * Converte um arquivo da pasta de entrada {@code raiz} em folhas. TIFFs com várias páginas geram uma
+     * folha por página ("arquivo.tif#N"); os demais formatos geram uma única folha.
+     */
+    static List<SheetInput> fromFile(Path raiz, Path arquivo) {
+        String nome = arquivo.getFileName().toString();
+        String lower = nome.toLowerCase();
+        if (lower.endsWith(".tif") || lower.endsWith(".tiff")) {
+            long paginas = Imgcodecs.imcount(arquivo.toString());
+            if (paginas > 1) {
+                List<SheetInput> folhas = new ArrayList<>((int) paginas);
+                FileDigest digestArquivo = new FileDigest(arquivo);
+                for (int pagina = 0; pagina < paginas; pagina++) {
+                    folhas.add(new TiffPageInput(raiz, arquivo, pagina, digestArquivo));
+                }
+                return folhas;
+            }
+        }
+        return Collections.singletonList(new FileInput(raiz, arquivo));
+    }
+
+    /** Caminho de {@code arquivo} relativo a {@code raiz}, com '/'; só o nome se não houver raiz ou ele estiver fora dela. */
+    static String relativeId(Path raiz, Path arquivo) {
+        if (raiz == null) return arquivo.getFileName().toString();
+        Path base = raiz.toAbsolutePath().normalize();
+        Path caminho = arquivo.toAbsolutePath().normalize();
+        if (!caminho.startsWith(base) || caminho.equals(base)) return arquivo.getFileName().toString();
+        return base.relativize(caminho).toString().replace('\\', '/');
+    }
+
+    static String stripExtension(String nome) {
+        int ponto = nome.lastIndexOf('.');
+        return ponto > 0 ? nome.substring(0, ponto) : nome;
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // Todo JRE tem SHA-256
+        }
+    }
+
+    static byte[] sha256(Path arquivo) throws IOException {
+        MessageDigest md = sha256();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(arquivo)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) md.update(buffer, 0, n);
+        }
+        return md.digest();
+    }
+
+    static byte[] sha256(ByteBuffer dados) {
+        MessageDigest md = sha256();
+        md.update(dados.duplicate());
+        return md.digest();
+    }
+
+    /** SHA-256 de um arquivo, calculado uma única vez e compartilhado pelas páginas de um TIFF. */
+    class FileDigest {
+        private final Path arquivo;
+        private byte[] valor;
+
+        FileDigest(Path arquivo) {
+            this.arquivo = arquivo;
+        }
+
+        synchronized byte[] get() throws IOException {
+            if (valor == null) valor = sha256(arquivo);
+            return valor;
+        }
+    }
+
+    /** Imagem recebida em memória (serviço HTTP, quadros na entrada padrão), decodificada com imdecode. */
+    class MemoryInput implements SheetInput {
+        private final String id;
+        private final byte[] bytes;
+
+        public MemoryInput(String id, byte[] bytes) {
+            this.id = id;
+            this.bytes = bytes;
+        }
+
+        @Override
+        public String id() {
+            return id;
+        }
+
+        @Override
+        public String baseName() {
+            return stripExtension(id).replaceAll("[\\\\/:!#]", "_");
+        }
+
+        @Override
+        public Mat load() {
+            MatOfByte buffer = new MatOfByte(bytes);
+            try {
+                return Imgcodecs.imdecode(buffer, Imgcodecs.IMREAD_COLOR);
+            } finally {
+                buffer.release();
+            }
+        }
+
+        @Override
+        public byte[] digest() {
+            MessageDigest md = sha256();
+            md.update(bytes);
+            return md.digest();
+        }
+    }
+
+    /** Imagem de página única lida diretamente do disco. */
+    class FileInput implements SheetInput {
+        private final Path arquivo;
+        private final String id;
+
+        /** @param raiz Pasta de entrada, base do {@link #id()}; null usa só o nome do arquivo. */
+        public FileInput(Path raiz, Path arquivo) {
+            this.arquivo = arquivo;
+            this.id = relativeId(raiz, arquivo);
+        }
+
+        @Override
+        public String id() {
+            return id;
+        }
+
+        @Override
+        public String baseName() {
+            return stripExtension(id).replaceAll("[\\\\/:!#]", "_");
+        }
+
+        @Override
+        public Mat load() {
+            return Imgcodecs.imread(arquivo.toAbsolutePath().toString());
+        }
+
+        @Override
+        public byte[] digest() throws IOException {
+            return sha256(arquivo);
+        }
+    }
+
+    /**
+     * Uma página de um TIFF multipágina. Apenas a página pedida é decodificada, então um
+     * arquivo de 500 páginas nunca fica inteiro em memória.
+     */
+    class TiffPageInput implements SheetInput {
+        private final Path arquivo;
+        private final String idArquivo;
+        private final int pagina; // base 0
+        private final FileDigest digestArquivo;
+
+        public TiffPageInput(Path raiz, Path arquivo, int pagina) {
+            this(raiz, arquivo, pagina, new FileDigest(arquivo));
+        }
+
+        TiffPageInput(Path raiz, Path arquivo, int pagina, FileDigest digestArquivo) {
+            this.arquivo = arquivo;
+            this.idArquivo = relativeId(raiz, arquivo);
+            this.pagina = pagina;
+            this.digestArquivo = digestArquivo;
+        }
+
+        @Override
+        public String id() {
+            return idArquivo + "#" + (pagina + 1);
+        }
+
+        @Override
+        public String baseName() {
+            return stripExtension(idArquivo).replaceAll("[\\\\/:!#]", "_") + "_p" + (pagina + 1);
+        }
+
+        @Override
+        public Mat load() {
+            List<Mat> paginas = new ArrayList<>(1);
+            if (!Imgcodecs.imreadmulti(arquivo.toAbsolutePath().toString(), paginas, pagina, 1, Imgcodecs.IMREAD_COLOR) || paginas.isEmpty()) {
+                return new Mat();
+            }
+            return paginas.get(0);
+        }
+
+        @Override
+        public byte[] digest() throws IOException {
+            // Página = digest do arquivo + número da página
+            MessageDigest md = sha256();
+            md.update(digestArquivo.get());
+            md.update(ByteBuffer.allocate(4).putInt(0, pagina));
+            return md.digest();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package seabdetector;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static seabdetector.DataModels.SheetResult;
+
+/**
+ * Executa as etapas por folha (QR, âncoras, warp, OMR) em {@code workers} threads e entrega os resultados
+ * ao consolidador NA ORDEM DE SUBMISSÃO, sempre na thread que submete. Assim o pulmão e os arquivos de saída
+ * continuam sendo acessados por uma única thread e a saída é idêntica à da execução sequencial.
+ *
+ * Com 1 worker a folha é processada na própria thread chamadora, sem pool. O número de workers pode
+ * ser alterado durante a execução ({@link #setWorkers}); a partir daí o pool é mantido mesmo com 1 worker.
+ */
+public class SheetPipeline implements AutoCloseable {
+
+    private volatile int workers;
+    private volatile int janela;
+    private final Function<SheetInput, SheetResult> etapas;
+    private final Consumer<SheetResult> consolidador;
+    private volatile ThreadPoolExecutor pool;
+    private final Deque<Future<SheetResult>> emAndamento = new ArrayDeque<>();
+    private volatile int tamanhoFila; // Espelho de emAndamento.size() para leitura por outras threads (JMX)
+
+    /**
+     * @param workers Threads de processamento.
+     * @param etapas Processamento de uma folha; deve ser seguro para chamadas concorrentes.
+     * @param consolidador Recebe os resultados em ordem; nunca é chamado concorrentemente.
+     */
+    public SheetPipeline(int workers, Function<SheetInput, SheetResult> etapas, Consumer<SheetResult> consolidador) {
+        this.workers = Math.max(1, workers);
+        this.janela = this.workers * 2; // Folhas em voo: mantém os workers ocupados sem acumular imagens
+        this.etapas = etapas;
+        this.consolidador = consolidador;
+        this.pool = this.workers > 1 ? newPool(this.workers) : null;
+    }
+
+    private static ThreadPoolExecutor newPool(int threads) {
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "seab-worker");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * Altera o número de workers sem interromper a execução. Pode ser chamado de qualquer thread;
+     * folhas já submetidas terminam nas threads atuais.
+     */
+    public synchronized void setWorkers(int novo) {
+        novo = Math.max(1, novo);
+        ThreadPoolExecutor atual = pool;
+        if (atual == null) {
+            if (novo == 1) return;
+            pool = newPool(novo);
+        } else if (novo > atual.getMaximumPoolSize()) {
+            atual.setMaximumPoolSize(novo);
+            atual.setCorePoolSize(novo);
+        } else {
+            atual.setCorePoolSize(novo);
+            atual.setMaximumPoolSize(novo);
+        }
+        workers = novo;
+        janela = novo * 2;
+    }
+
+    /** Folhas submetidas cujo resultado ainda não foi consolidado. */
+    public int getEmAndamento() {
+        return tamanhoFila;
+    }
+
+    /** Folhas submetidas que ainda aguardam um worker livre. */
+    public int getAguardandoWorker() {
+        ThreadPoolExecutor atual = pool;
+        return atual != null ? atual.getQueue().size() : 0;
+    }
+
+    /**
+     * Submete uma folha. Bloqueia enquanto a janela de folhas em voo está cheia, consolidando
+     * os resultados já prontos no início da fila.
+     */
+    public void submit(SheetInput entrada) {
+        ThreadPoolExecutor atual = pool;
+        if (atual == null) {
+            consolidador.accept(etapas.apply(entrada));
+            return;
+        }
+
+        while (emAndamento.size() >= janela) {
+            consolidateHead();
+        }
+        emAndamento.addLast(atual.submit(() -> etapas.apply(entrada)));
+        tamanhoFila = emAndamento.size();
+
+        while (!emAndamento.isEmpty() && emAndamento.peekFirst().isDone()) {
+            consolidateHead();
+        }
+    }
+
+    /** Aguarda e consolida todas as folhas submetidas. */
+    public void drain() {
+        while (!emAndamento.isEmpty()) {
+            consolidateHead();
+        }
+    }
+
+    private void consolidateHead() {
+        Future<SheetResult> proximo = emAndamento.pollFirst();
+        tamanhoFila = emAndamento.size();
+        try {
+            consolidador.accept(proximo.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrompido aguardando o processamento de uma folha", e);
+        } catch (ExecutionException e) {
+            // processSheet já trata as próprias exceções; chegar aqui indica erro de programação
+            throw new IllegalStateException("Falha inesperada em um worker", e.getCause());
+        }
+    }
+
+    @Override
+    public void close() {
+        drain();
+        ThreadPoolExecutor atual = pool;
+        if (atual != null) atual.shutdown();
+    }
+}
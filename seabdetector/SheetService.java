@@ -0,0 +1,347 @@
+package seabdetector;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static seabdetector.Constants.*;
+import static seabdetector.DataModels.*;
+
+/**
+ * Modo serviço: servidor HTTP local (HttpServer do JDK) que recebe imagens das estações de digitalização e devolve
+ * o QR e as respostas em JSON, sem passar pela pasta compartilhada.
+ *
+ * <ul>
+ *   <li>{@code POST /folhas?id=...} com a imagem no corpo: uma folha. Com {@code Content-Type: application/zip},
+ *       cada imagem do ZIP é uma folha e a resposta é uma lista, na ordem do ZIP.</li>
+ *   <li>{@code GET /estado}: fila, folhas em andamento, aceitas e recusadas.</li>
+ * </ul>
+ *
+ * As requisições rodam em threads virtuais (Java 21+; nas versões anteriores, threads de plataforma reaproveitadas),
+ * que só leem o corpo e esperam. QR/âncoras/OMR rodam num pool fixo de {@code seab.workers} threads de plataforma com
+ * fila de {@code seab.service.queue} folhas: com a fila cheia a requisição recebe 429 e {@code Retry-After}, em vez de
+ * acumular imagens na memória. A montagem dos cadernos continua no servidor (pulmão e arquivo organizado do
+ * SaebDetector), numa folha por vez; a resposta diz em que caderno a folha entrou e se ele foi completado.
+ */
+public class SheetService implements Closeable {
+
+    /** Situação do caderno da folha depois da consolidação. */
+    public static class BookletStatus {
+        public final String caderno;
+        public final int folhas;
+        public final boolean completo;
+
+        public BookletStatus(String caderno, int folhas, boolean completo) {
+            this.caderno = caderno;
+            this.folhas = folhas;
+            this.completo = completo;
+        }
+    }
+
+    private final HttpServer servidor;
+    private final ExecutorService requisicoes;
+    private final ThreadPoolExecutor leitores;
+    private final Function<SheetInput, SheetResult> etapas;
+    private final Function<SheetResult, BookletStatus> consolidador;
+    private final Object trava = new Object(); // O pulmão é de uma thread só
+    private final CountDownLatch encerrado = new CountDownLatch(1);
+    private final AtomicLong aceitas = new AtomicLong();
+    private final AtomicLong recusadas = new AtomicLong();
+    private final AtomicLong sequencia = new AtomicLong();
+
+    /**
+     * @param etapas Processamento de uma folha (roda no pool de leitura).
+     * @param consolidador Pulmão/saídas; chamado uma folha por vez.
+     */
+    public SheetService(InetSocketAddress endereco, int workers, int fila, Function<SheetInput, SheetResult> etapas,
+                        Function<SheetResult, BookletStatus> consolidador) throws IOException {
+        this.etapas = etapas;
+        this.consolidador = consolidador;
+        this.leitores = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(Math.max(1, fila)), r -> {
+            Thread t = new Thread(r, "seab-worker");
+            t.setDaemon(true);
+            return t;
+        }, new ThreadPoolExecutor.AbortPolicy());
+        this.requisicoes = newRequestExecutor();
+        this.servidor = HttpServer.create(endereco, 0);
+        servidor.setExecutor(requisicoes);
+        servidor.createContext("/folhas", this::handleSheets);
+        servidor.createContext("/estado", this::handleStatus);
+    }
+
+    /** Threads virtuais quando o JDK tem (21+); a API é chamada por reflexão para o código continuar compilando no 11/17. */
+    static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "seab-http");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    public void start() {
+        servidor.start();
+    }
+
+    /** Bloqueia até {@link #close()} (p.ex. chamado pelo gancho de encerramento do Ctrl+C). */
+    public void awaitShutdown() throws InterruptedException {
+        encerrado.await();
+    }
+
+    public int getPort() {
+        return servidor.getAddress().getPort();
+    }
+
+    private void handleSheets(HttpExchange troca) throws IOException {
+        try {
+            if (!"POST".equals(troca.getRequestMethod())) {
+                respond(troca, 405, "{\"erro\": \"use POST\"}");
+                return;
+            }
+            byte[] corpo = readBody(troca.getRequestBody(), SERVICE_MAX_MB * 1024L * 1024);
+            if (corpo == null) {
+                respond(troca, 413, "{\"erro\": \"corpo maior que " + SERVICE_MAX_MB + " MB\"}");
+                return;
+            }
+            String id = queryParam(troca, "id");
+            if (id == null) id = "http-" + sequencia.incrementAndGet();
+
+            String tipo = troca.getRequestHeaders().getFirst("Content-Type");
+            List<SheetInput> folhas = new ArrayList<>();
+            boolean lote = tipo != null && tipo.startsWith("application/zip");
+            if (lote) {
+                String excesso = readZip(id, corpo, folhas);
+                if (excesso != null) {
+                    respond(troca, 413, "{\"erro\": " + quote(excesso) + "}");
+                    return;
+                }
+            } else {
+                folhas.add(new SheetInput.MemoryInput(id, corpo));
+            }
+
+            List<Future<SheetResult>> pendentes = submit(folhas);
+            if (pendentes == null) {
+                recusadas.incrementAndGet();
+                troca.getResponseHeaders().set("Retry-After", "1");
+                respond(troca, 429, "{\"erro\": \"fila cheia\", \"fila\": " + leitores.getQueue().size() + "}");
+                return;
+            }
+
+            // Consolida na ordem do pedido (no ZIP, a ordem das entradas), como no modo lote
+            StringBuilder json = new StringBuilder(lote ? "[" : "");
+            for (int i = 0; i < pendentes.size(); i++) {
+                SheetResult resultado = pendentes.get(i).get();
+                BookletStatus caderno;
+                synchronized (trava) {
+                    caderno = consolidador.apply(resultado);
+                }
+                if (i > 0) json.append(",");
+                appendJson(json, resultado, caderno);
+            }
+            if (lote) json.append("]");
+            respond(troca, 200, json.toString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            respond(troca, 503, "{\"erro\": \"serviço encerrando\"}");
+        } catch (ExecutionException | RuntimeException e) {
+            Log.error("Erro no serviço", e, "etapa", "http");
+            respond(troca, 500, "{\"erro\": " + quote(String.valueOf(e.getMessage())) + "}");
+        } finally {
+            troca.close();
+        }
+    }
+
+    /** Submete todas as folhas ou nenhuma; null se não cabem na fila (429). */
+    private List<Future<SheetResult>> submit(List<SheetInput> folhas) {
+        if (leitores.getQueue().remainingCapacity() < folhas.size() - leitores.getMaximumPoolSize() + leitores.getActiveCount()) {
+            return null;
+        }
+        List<Future<SheetResult>> pendentes = new ArrayList<>(folhas.size());
+        try {
+            for (SheetInput folha : folhas) pendentes.add(leitores.submit(() -> etapas.apply(folha)));
+        } catch (RejectedExecutionException e) {
+            // Outra requisição ocupou a fila no meio do lote: devolve o lote inteiro
+            for (Future<SheetResult> f : pendentes) f.cancel(false);
+            return null;
+        }
+        aceitas.addAndGet(folhas.size());
+        return pendentes;
+    }
+
+    private void handleStatus(HttpExchange troca) throws IOException {
+        try {
+            String json = "{\"workers\": " + leitores.getMaximumPoolSize()
+                    + ", \"em_andamento\": " + leitores.getActiveCount()
+                    + ", \"fila\": " + leitores.getQueue().size()
+                    + ", \"fila_max\": " + (leitores.getQueue().size() + leitores.getQueue().remainingCapacity())
+                    + ", \"aceitas\": " + aceitas.get()
+                    + ", \"recusadas\": " + recusadas.get() + "}";
+            respond(troca, 200, json);
+        } finally {
+            troca.close();
+        }
+    }
+
+    /**
+     * Descompacta as imagens do ZIP em {@code folhas}, com limites: um ZIP pequeno pode descompactar gigabytes.
+     * @return null, ou o limite excedido (a requisição recebe 413 e nada é submetido).
+     */
+    private static String readZip(String id, byte[] corpo, List<SheetInput> folhas) throws IOException {
+        long limiteEntrada = SERVICE_MAX_MB * 1024L * 1024;
+        long restante = SERVICE_ZIP_MAX_MB * 1024L * 1024;
+        int entradas = 0;
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(corpo))) {
+            for (ZipEntry entrada = zip.getNextEntry(); entrada != null; entrada = zip.getNextEntry()) {
+                if (++entradas > SERVICE_ZIP_ENTRIES) return "ZIP com mais de " + SERVICE_ZIP_ENTRIES + " entradas";
+                if (entrada.isDirectory() || !isImagemSuportada(entrada.getName())) continue;
+                byte[] imagem = readBody(zip, Math.min(limiteEntrada, restante));
+                if (imagem == null) {
+                    return restante < limiteEntrada
+                            ? "ZIP com mais de " + SERVICE_ZIP_MAX_MB + " MB descompactado"
+                            : "entrada " + entrada.getName() + " maior que " + SERVICE_MAX_MB + " MB";
+                }
+                restante -= imagem.length;
+                folhas.add(new SheetInput.MemoryInput(id + "!" + entrada.getName(), imagem));
+            }
+        }
+        return null;
+    }
+
+    /** Corpo inteiro (ou entrada do ZIP), ou null se passar de {@code limite} bytes. */
+    private static byte[] readBody(InputStream in, long limite) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] bloco = new byte[64 * 1024];
+        for (int n = in.read(bloco); n >= 0; n = in.read(bloco)) {
+            if (buffer.size() + n > limite) return null;
+            buffer.write(bloco, 0, n);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static String queryParam(HttpExchange troca, String nome) {
+        String query = troca.getRequestURI().getRawQuery();
+        if (query == null) return null;
+        for (String par : query.split("&")) {
+            int igual = par.indexOf('=');
+            if (igual > 0 && par.substring(0, igual).equals(nome)) {
+                return URLDecoder.decode(par.substring(igual + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    private static void respond(HttpExchange troca, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        troca.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        troca.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = troca.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Uma folha em JSON: {"id", "status": "ok"|"falha", "motivo", "qr": {...}, "respostas": {questão: texto},
+     * "caderno": {"id", "folhas", "completo"}}. Também usado pelo protocolo de quadros da entrada padrão.
+     */
+    static void appendJson(StringBuilder sb, SheetResult resultado, BookletStatus caderno) {
+        sb.append("{\"id\": ").append(quote(resultado.origem));
+        sb.append(", \"status\": ").append(resultado.isSucesso() ? "\"ok\"" : "\"falha\"");
+        if (!resultado.isSucesso()) sb.append(", \"motivo\": ").append(quote(resultado.motivoFalha));
+        QrData qr = resultado.dadosQR;
+        if (qr != null) {
+            sb.append(", \"qr\": {\"instituicao\": ").append(quote(qr.instituicao))
+              .append(", \"respondente\": ").append(quote(qr.respondente))
+              .append(", \"folha\": ").append(quote(qr.folhaNome))
+              .append(", \"tipoProva\": ").append(quote(qr.tipoProva))
+              .append(", \"ano\": ").append(quote(qr.ano))
+              .append(", \"texto\": ").append(quote(qr.qrTextoCompleto)).append('}');
+        }
+        if (resultado.respostas != null) {
+            sb.append(", \"respostas\": {");
+            for (int i = 0; i < resultado.respostas.size(); i++) {
+                if (i > 0) sb.append(", ");
+                sb.append(quote(resultado.respostas.questoes.questoes.get(i))).append(": ")
+                  .append(quote(OptionCodes.text(resultado.respostas.codigos[i])));
+            }
+            sb.append('}');
+        }
+        if (caderno != null) {
+            sb.append(", \"caderno\": {\"id\": ").append(quote(caderno.caderno))
+              .append(", \"folhas\": ").append(caderno.folhas)
+              .append(", \"completo\": ").append(caderno.completo).append('}');
+        }
+        sb.append('}');
+    }
+
+    static String quote(String texto) {
+        StringBuilder sb = new StringBuilder(texto.length() + 2).append('"');
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * Para de aceitar requisições, termina as folhas já na fila e espera as requisições em andamento consolidarem e
+     * responderem. Só então libera {@link #awaitShutdown()}: a consolidação roda nas threads das requisições, e as
+     * saídas são fechadas pela thread principal logo depois.
+     */
+    @Override
+    public void close() {
+        servidor.stop(5);
+        leitores.shutdown();
+        requisicoes.shutdown();
+        try {
+            leitores.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            requisicoes.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        encerrado.countDown();
+    }
+
+    public long getAccepted() {
+        return aceitas.get();
+    }
+
+    public long getRejected() {
+        return recusadas.get();
+    }
+}
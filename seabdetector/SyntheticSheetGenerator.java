@@ -0,0 +1,275 @@
+package seabdetector;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+
+import org.opencv.core.*;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static seabdetector.Constants.*;
+import static seabdetector.DataModels.*;
+
+/**
+ * Gera folhas-resposta sintéticas a partir de config.txt/templates.txt, para testes de carga e benchmarks.
+ *
+ * Cada respondente recebe uma imagem por folha do config: âncoras nos idealPoints do template, QR no formato
+ * de 16 caracteres lido por QRCodeReader.parseQrCode e bolhas preenchidas segundo um vetor aleatório (com
+ * semente) ou roteirizado. Ruído, desfoque, inclinação, rotação, giro de 180° e dpi são configuráveis.
+ * As respostas esperadas de cada imagem vão para {@value #ARQUIVO_ESPERADO} na pasta de saída.
+ *
+ * Uso: {@code java seabdetector.SyntheticSheetGenerator <pastaSaida> [respondentes]}, com os parâmetros via -Dseab.gen.*.
+ */
+public class SyntheticSheetGenerator {
+
+    public static final String ARQUIVO_ESPERADO = "esperado.txt";
+
+    // Parâmetros da geração (-Dseab.gen.*)
+    private static final long SEED = Long.getLong("seab.gen.seed", 42L);
+    private static final String INSTITUICAO = System.getProperty("seab.gen.instituicao", "00001");
+    private static final String TIPO_PROVA = System.getProperty("seab.gen.tipo", "E");
+    private static final String ANO = System.getProperty("seab.gen.ano", "2025");
+    private static final String FORMATO = System.getProperty("seab.gen.formato", "jpg");
+    private static final String ROTEIRO = System.getProperty("seab.gen.roteiro");
+    private static final double PROB_BRANCO = Double.parseDouble(System.getProperty("seab.gen.branco", "0.05"));
+    private static final double PROB_DUPLA = Double.parseDouble(System.getProperty("seab.gen.dupla", "0.02"));
+    private static final double RUIDO_SIGMA = Double.parseDouble(System.getProperty("seab.gen.ruido", "6"));
+    private static final int DESFOQUE = Integer.getInteger("seab.gen.desfoque", 3);
+    private static final double INCLINACAO_PX = Double.parseDouble(System.getProperty("seab.gen.inclinacao", "4"));
+    private static final double ROTACAO_GRAUS = Double.parseDouble(System.getProperty("seab.gen.rotacao", "0.5"));
+    private static final double PROB_GIRO_180 = Double.parseDouble(System.getProperty("seab.gen.giro180", "0.1"));
+    private static final int DPI = Integer.getInteger("seab.gen.dpi", 200);
+    private static final int DPI_TEMPLATE = Integer.getInteger("seab.gen.dpi.template", 200);
+
+    // Geometria dos elementos impressos (em pixels do template)
+    private static final int LADO_ANCORA = 20;
+    private static final int LADO_QR = 160;
+    private static final int DISTANCIA_QR_BORDA = 300;
+
+    static {
+        System.load(OPENCV_DLL_PATH_HOME);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Uso: SyntheticSheetGenerator <pastaSaida> [respondentes]");
+            return;
+        }
+        File pastaSaida = new File(args[0]);
+        int respondentes = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        pastaSaida.mkdirs();
+
+        LayoutBundle.Layout layout = LayoutBundle.load();
+        List<Alternativa> todasAlternativas = layout.alternativas;
+        Map<String, FolhaTemplate> templates = layout.templates;
+        Map<String, String> roteiro = ROTEIRO != null ? loadScript(ROTEIRO) : Collections.emptyMap();
+
+        Map<String, List<Alternativa>> porFolha = todasAlternativas.stream()
+                .collect(Collectors.groupingBy(a -> a.folha, LinkedHashMap::new, Collectors.toList()));
+
+        Random random = new Random(SEED);
+        Core.setRNGSeed((int) SEED);
+        long inicio = System.currentTimeMillis();
+        int geradas = 0;
+
+        try (BufferedWriter esperado = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(new File(pastaSaida, ARQUIVO_ESPERADO)), StandardCharsets.UTF_8))) {
+            esperado.write("# arquivo;qr;questao;resposta_esperada");
+            esperado.newLine();
+
+            for (int r = 1; r <= respondentes; r++) {
+                String respondente = String.format("%04d", r);
+                for (Map.Entry<String, List<Alternativa>> folha : porFolha.entrySet()) {
+                    FolhaTemplate template = templates.get(folha.getKey());
+                    if (template == null) {
+                        System.err.println("⚠ Template não encontrado para " + folha.getKey() + ". Folha ignorada.");
+                        continue;
+                    }
+
+                    String qrTexto = qrText(INSTITUICAO, respondente, folha.getKey(), TIPO_PROVA, ANO);
+                    Map<String, String> respostas = new LinkedHashMap<>();
+                    Mat imagem = render(template, folha.getValue(), qrTexto, roteiro, random, respostas);
+                    Mat digitalizada = applyScanEffects(imagem, random);
+                    imagem.release();
+
+                    String nomeArquivo = INSTITUICAO + "_" + respondente + "_" + folha.getKey().toLowerCase().replace(" ", "") + "." + FORMATO;
+                    Imgcodecs.imwrite(new File(pastaSaida, nomeArquivo).getPath(), digitalizada);
+                    digitalizada.release();
+
+                    for (Map.Entry<String, String> resposta : respostas.entrySet()) {
+                        esperado.write(nomeArquivo + ";" + qrTexto + ";" + resposta.getKey() + ";" + resposta.getValue());
+                        esperado.newLine();
+                    }
+                    geradas++;
+                }
+            }
+        } finally {
+            templates.values().forEach(FolhaTemplate::release);
+        }
+
+        System.out.printf("%d folhas geradas em %s (%d ms).\n", geradas, pastaSaida.getPath(), System.currentTimeMillis() - inicio);
+    }
+
+    /**
+     * QR no formato lido por QRCodeReader.parseQrCode: instituição(5) respondente(4) folha(2) tipo(1) ano(4).
+     */
+    public static String qrText(String instituicao, String respondente, String folhaNome, String tipoProva, String ano) {
+        int numeroFolha = Integer.parseInt(folhaNome.replaceAll("\\D", ""));
+        return instituicao + respondente + String.format("%02d", numeroFolha) + tipoProva + ano;
+    }
+
+    /**
+     * Desenha a folha ideal (sem efeitos de digitalização) no tamanho do template.
+     * @param respostas Recebe, por questão, a resposta que o OmrReader deve produzir ("" em branco, "?" dupla marcação).
+     */
+    public static Mat render(FolhaTemplate template, List<Alternativa> alternativas, String qrTexto,
+                             Map<String, String> roteiro, Random random, Map<String, String> respostas) {
+        Mat folha = new Mat(template.idealSize, CvType.CV_8UC3, new Scalar(255, 255, 255));
+        Scalar preto = new Scalar(0, 0, 0);
+
+        for (Point c : template.idealPoints.toArray()) {
+            Imgproc.rectangle(folha, new Point(c.x - LADO_ANCORA / 2.0, c.y - LADO_ANCORA / 2.0),
+                    new Point(c.x + LADO_ANCORA / 2.0 - 1, c.y + LADO_ANCORA / 2.0 - 1), preto, Imgproc.FILLED);
+        }
+
+        drawQr(folha, qrTexto, LADO_QR, new Point(folha.cols() - DISTANCIA_QR_BORDA, folha.rows() - DISTANCIA_QR_BORDA));
+
+        Map<String, List<Alternativa>> porQuestao = alternativas.stream()
+                .collect(Collectors.groupingBy(a -> a.questao, LinkedHashMap::new, Collectors.toList()));
+
+        for (Map.Entry<String, List<Alternativa>> questao : porQuestao.entrySet()) {
+            List<Alternativa> opcoes = questao.getValue();
+            List<Alternativa> marcadas = chooseMarks(questao.getKey(), opcoes, roteiro, random);
+
+            for (Alternativa alt : opcoes) {
+                Imgproc.circle(folha, new Point(alt.x, alt.y), BUBBLE_RADIUS, preto, 1);
+            }
+            for (Alternativa alt : marcadas) {
+                double tom = 30 + random.nextInt(60); // Grafite/caneta com intensidade variável
+                Imgproc.circle(folha, new Point(alt.x, alt.y), BUBBLE_RADIUS - 2, new Scalar(tom, tom, tom), Imgproc.FILLED);
+            }
+
+            String esperada;
+            if (marcadas.isEmpty()) esperada = "";
+            else if (marcadas.size() > 1) esperada = "?";
+            else esperada = traduzAlternativa(marcadas.get(0).opcao);
+            respostas.put(questao.getKey(), esperada);
+        }
+        return folha;
+    }
+
+    private static List<Alternativa> chooseMarks(String questao, List<Alternativa> opcoes, Map<String, String> roteiro, Random random) {
+        List<Alternativa> marcadas = new ArrayList<>();
+        String roteirizada = roteiro.get(questao);
+        if (roteirizada != null) {
+            Set<String> codigos = new HashSet<>(Arrays.asList(roteirizada.toUpperCase().split("\\+")));
+            for (Alternativa alt : opcoes) {
+                if (codigos.contains(alt.opcao.toUpperCase())) marcadas.add(alt);
+            }
+            return marcadas;
+        }
+
+        double sorteio = random.nextDouble();
+        if (sorteio < PROB_BRANCO) return marcadas;
+        marcadas.add(opcoes.get(random.nextInt(opcoes.size())));
+        if (sorteio < PROB_BRANCO + PROB_DUPLA && opcoes.size() > 1) {
+            Alternativa outra;
+            do {
+                outra = opcoes.get(random.nextInt(opcoes.size()));
+            } while (marcadas.contains(outra));
+            marcadas.add(outra);
+        }
+        return marcadas;
+    }
+
+    /**
+     * Simula a digitalização: mudança de dpi, rotação/inclinação, desfoque, ruído e giro de 180°.
+     * @return Nova Mat (a original não é alterada).
+     */
+    public static Mat applyScanEffects(Mat folha, Random random) {
+        Mat saida = new Mat();
+        double escala = (double) DPI / DPI_TEMPLATE;
+        Size tamanho = new Size(Math.round(folha.cols() * escala), Math.round(folha.rows() * escala));
+
+        // Rotação em torno do centro + deslocamento aleatório de cada canto (inclinação/perspectiva)
+        double angulo = Math.toRadians((random.nextDouble() * 2 - 1) * ROTACAO_GRAUS);
+        double cx = folha.cols() / 2.0, cy = folha.rows() / 2.0;
+        Point[] origem = {new Point(0, 0), new Point(folha.cols(), 0), new Point(0, folha.rows()), new Point(folha.cols(), folha.rows())};
+        Point[] destino = new Point[4];
+        for (int i = 0; i < 4; i++) {
+            double dx = origem[i].x - cx, dy = origem[i].y - cy;
+            double x = cx + dx * Math.cos(angulo) - dy * Math.sin(angulo) + (random.nextDouble() * 2 - 1) * INCLINACAO_PX;
+            double y = cy + dx * Math.sin(angulo) + dy * Math.cos(angulo) + (random.nextDouble() * 2 - 1) * INCLINACAO_PX;
+            destino[i] = new Point(x * escala, y * escala);
+        }
+        MatOfPoint2f src = new MatOfPoint2f(origem);
+        MatOfPoint2f dst = new MatOfPoint2f(destino);
+        Mat M = Imgproc.getPerspectiveTransform(src, dst);
+        Imgproc.warpPerspective(folha, saida, M, tamanho, Imgproc.INTER_LINEAR, Core.BORDER_CONSTANT, new Scalar(255, 255, 255));
+        src.release(); dst.release(); M.release();
+
+        if (DESFOQUE > 1) {
+            int k = DESFOQUE % 2 == 1 ? DESFOQUE : DESFOQUE + 1;
+            Imgproc.GaussianBlur(saida, saida, new Size(k, k), 0);
+        }
+
+        if (RUIDO_SIGMA > 0) {
+            Mat ruido = new Mat(saida.size(), CvType.CV_16SC3);
+            Mat acumulado = new Mat();
+            Core.randn(ruido, 0, RUIDO_SIGMA);
+            saida.convertTo(acumulado, CvType.CV_16SC3);
+            Core.add(acumulado, ruido, acumulado);
+            acumulado.convertTo(saida, CvType.CV_8UC3);
+            ruido.release(); acumulado.release();
+        }
+
+        if (random.nextDouble() < PROB_GIRO_180) {
+            Core.flip(saida, saida, -1);
+        }
+        return saida;
+    }
+
+    /** Desenha um QR (módulos pretos em fundo branco) com {@code lado} pixels a partir de {@code canto}. */
+    public static void drawQr(Mat folha, String texto, int lado, Point canto) {
+        BitMatrix bits;
+        try {
+            bits = new QRCodeWriter().encode(texto, BarcodeFormat.QR_CODE, lado, lado);
+        } catch (WriterException e) {
+            throw new IllegalArgumentException("Texto inválido para QR: " + texto, e);
+        }
+        byte[] pixels = new byte[bits.getWidth() * bits.getHeight()];
+        for (int y = 0; y < bits.getHeight(); y++) {
+            for (int x = 0; x < bits.getWidth(); x++) {
+                pixels[y * bits.getWidth() + x] = bits.get(x, y) ? 0 : (byte) 255;
+            }
+        }
+        Mat qr = new Mat(bits.getHeight(), bits.getWidth(), CvType.CV_8UC1);
+        qr.put(0, 0, pixels);
+        Mat destino = folha.submat(new Rect((int) canto.x, (int) canto.y, qr.cols(), qr.rows()));
+        Imgproc.cvtColor(qr, destino, Imgproc.COLOR_GRAY2BGR);
+        destino.release();
+        qr.release();
+    }
+
+    /** Roteiro: uma linha "questao;opcao" por questão (vazio = em branco, "A+B" = dupla marcação). */
+    private static Map<String, String> loadScript(String caminho) throws IOException {
+        Map<String, String> roteiro = new HashMap<>();
+        try (BufferedReader br = new BufferedReader(new FileReader(caminho))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] partes = line.split(";", -1);
+                if (partes.length == 2) roteiro.put(partes[0].trim(), partes[1].trim());
+            }
+        }
+        return roteiro;
+    }
+}
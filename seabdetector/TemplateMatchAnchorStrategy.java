@@ -0,0 +1,100 @@
+package seabdetector;
+
+import org.opencv.core.*;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Âncora por correlação: procura um quadrado preto com borda branca (matchTemplate, TM_CCOEFF_NORMED)
+ * na região reduzida à metade com pyrDown, o que corta o custo da correlação por ~4x. A posição encontrada
+ * é refinada na resolução original pela caixa dos pixels escuros em volta do pico.
+ */
+public class TemplateMatchAnchorStrategy implements AnchorStrategy {
+
+    public static final String NOME = "correlacao";
+    static final TemplateMatchAnchorStrategy INSTANCIA = new TemplateMatchAnchorStrategy();
+
+    // Correlação mínima para aceitar o pico como âncora
+    private static final double CORRELACAO_MINIMA = 0.6;
+
+    // Quadrado na meia resolução, por lado reduzido (depende da escala da digitalização);
+    // criado na primeira chamada de cada escala (depende da biblioteca nativa)
+    private final Map<Integer, Mat> modelos = new ConcurrentHashMap<>();
+
+    @Override
+    public String name() {
+        return NOME;
+    }
+
+    /** Lado esperado: raiz da área média aceita (ex.: 300..500 px² → ~20 px), na metade da resolução. */
+    private static int reducedSide(ScanGeometry geo) {
+        int lado = (int) Math.round(Math.sqrt((geo.anchorMinArea + geo.anchorMaxArea) / 2.0));
+        return Math.max(3, lado / 2);
+    }
+
+    private Mat modelo(int ladoReduzido) {
+        return modelos.computeIfAbsent(ladoReduzido, lado -> {
+            int borda = Math.max(2, lado / 2);
+            Mat m = new Mat(lado + 2 * borda, lado + 2 * borda, CvType.CV_8UC1, new Scalar(255));
+            Imgproc.rectangle(m, new Point(borda, borda), new Point(borda + lado - 1, borda + lado - 1), new Scalar(0), -1);
+            return m;
+        });
+    }
+
+    @Override
+    public Rect findInRegion(Mat imagem, Rect roi, String regiao, String outputDir, String nomeArquivoBase, int[] candidatos, ScanGeometry geo) {
+        int ladoReduzido = reducedSide(geo);
+        Mat modelo = modelo(ladoReduzido);
+        Mat recorte = null, gray = null, reduzida = null, resposta = null;
+        try {
+            recorte = new Mat(imagem, roi);
+            gray = new Mat(); reduzida = new Mat(); resposta = new Mat();
+            Imgproc.cvtColor(recorte, gray, Imgproc.COLOR_BGR2GRAY);
+            Imgproc.pyrDown(gray, reduzida);
+            if (reduzida.cols() < modelo.cols() || reduzida.rows() < modelo.rows()) return null;
+
+            Imgproc.matchTemplate(reduzida, modelo, resposta, Imgproc.TM_CCOEFF_NORMED);
+            candidatos[0] += 1;
+            Core.MinMaxLocResult pico = Core.minMaxLoc(resposta);
+            if (pico.maxVal < CORRELACAO_MINIMA) return null;
+
+            // Centro do quadrado na resolução original, relativo à região
+            double cx = (pico.maxLoc.x + modelo.cols() / 2.0) * 2;
+            double cy = (pico.maxLoc.y + modelo.rows() / 2.0) * 2;
+            return refine(gray, roi, cx, cy, ladoReduzido, geo);
+        } finally {
+            if (recorte != null) recorte.release();
+            if (gray != null) gray.release();
+            if (reduzida != null) reduzida.release();
+            if (resposta != null) resposta.release();
+        }
+    }
+
+    /** Caixa dos pixels escuros (Otsu) numa janela de 2 lados em volta do centro estimado. */
+    private Rect refine(Mat gray, Rect roi, double cx, double cy, int ladoReduzido, ScanGeometry geo) {
+        int meio = ladoReduzido * 2;
+        int x0 = Math.max(0, (int) cx - meio), y0 = Math.max(0, (int) cy - meio);
+        int x1 = Math.min(gray.cols(), (int) cx + meio), y1 = Math.min(gray.rows(), (int) cy + meio);
+        if (x1 <= x0 || y1 <= y0) return null;
+
+        Mat janela = new Mat(gray, new Rect(x0, y0, x1 - x0, y1 - y0));
+        Mat binaria = new Mat();
+        Mat pontos = new Mat();
+        try {
+            Imgproc.threshold(janela, binaria, 0, 255, Imgproc.THRESH_BINARY_INV | Imgproc.THRESH_OTSU);
+            Core.findNonZero(binaria, pontos);
+            if (pontos.empty()) return null;
+            Rect caixa = Imgproc.boundingRect(pontos);
+            double area = caixa.area();
+            if (area < geo.anchorMinArea * 0.8 || area > geo.anchorMaxArea * 1.5) return null; // Pico em algo que não é a âncora
+            return new Rect(roi.x + x0 + caixa.x, roi.y + y0 + caixa.y, caixa.width, caixa.height);
+        } finally {
+            janela.release();
+            binaria.release();
+            pontos.release();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package seabdetector;
+
+/**
+ * Parâmetros que podem ser alterados durante a execução (pela interface JMX, ver {@link PipelineControl}).
+ * Os valores iniciais vêm das propriedades de sistema; as leituras são feitas a cada lote/folha.
+ */
+public class Tuning {
+
+    // Nível de depuração (imagens gravadas na pasta de saída): 0 = nenhuma, 1 = QR binarizado (comportamento
+    // original), 2 = também os contornos de cada região de âncora. As mensagens seguem o nível do Log.
+    public static final int DEBUG_NENHUM = 0;
+    public static final int DEBUG_PADRAO = 1;
+    public static final int DEBUG_DETALHADO = 2;
+
+    private static volatile int batchSize = Math.max(1, Integer.getInteger("seab.batch.size", 100));
+    private static volatile int debugLevel = Integer.getInteger("seab.debug", DEBUG_PADRAO);
+    private static volatile int[] qrOrder = parseQrOrder(System.getProperty("seab.qr.order", "0,180"));
+
+    public static int getBatchSize() {
+        return batchSize;
+    }
+
+    public static void setBatchSize(int novo) {
+        if (novo < 1) throw new IllegalArgumentException("Tamanho de lote deve ser >= 1: " + novo);
+        batchSize = novo;
+    }
+
+    public static int getDebugLevel() {
+        return debugLevel;
+    }
+
+    public static void setDebugLevel(int novo) {
+        if (novo < DEBUG_NENHUM || novo > DEBUG_DETALHADO) throw new IllegalArgumentException("Nível de depuração inválido: " + novo);
+        debugLevel = novo;
+    }
+
+    /** Orientações (graus) tentadas na leitura do QR, na ordem. */
+    public static int[] getQrOrder() {
+        return qrOrder;
+    }
+
+    public static String getQrOrderText() {
+        StringBuilder sb = new StringBuilder();
+        for (int o : qrOrder) {
+            if (sb.length() > 0) sb.append(',');
+            sb.append(o);
+        }
+        return sb.toString();
+    }
+
+    public static void setQrOrder(String ordem) {
+        qrOrder = parseQrOrder(ordem);
+    }
+
+    /** Ex.: "0,180" (padrão), "180,0" (lotes escaneados de cabeça para baixo) ou "0" (sem a tentativa girada). */
+    static int[] parseQrOrder(String ordem) {
+        String[] partes = ordem.split(",");
+        int[] graus = new int[partes.length];
+        for (int i = 0; i < partes.length; i++) {
+            graus[i] = Integer.parseInt(partes[i].trim());
+            if (graus[i] != 0 && graus[i] != 180) throw new IllegalArgumentException("Orientação do QR deve ser 0 ou 180: " + partes[i]);
+            for (int j = 0; j < i; j++) {
+                if (graus[j] == graus[i]) throw new IllegalArgumentException("Orientação repetida: " + ordem);
+            }
+        }
+        return graus;
+    }
+}
@@ -0,0 +1,138 @@
+package seabdetector;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Lê as imagens diretamente de arquivos ZIP, sem extraí-los para o disco.
+ *
+ * Cada arquivo é lido em streaming ({@link ZipInputStream}) por uma thread leitora, na ordem das
+ * entradas; até {@code leitores} arquivos são lidos ao mesmo tempo. Os bytes de cada entrada
+ * ficam em memória só até a folha ser processada e são decodificados com {@code Imgcodecs.imdecode}.
+ * A fila entre leitores e processamento é limitada, então o consumo de memória não depende do tamanho dos arquivos.
+ */
+public class ZipInputSource {
+
+    // Entradas já lidas aguardando o processamento.
+    private static final int ENTRADAS_EM_ESPERA = 16;
+
+    private static final SheetInput FIM = new ZipEntryInput("", "", new byte[0]);
+
+    /**
+     * Entrega cada imagem dos arquivos ao {@code destino}, sempre na thread chamadora.
+     * A ordem das entradas de um mesmo arquivo é preservada; entradas de arquivos diferentes podem se intercalar.
+     */
+    public static void forEachEntry(List<Path> arquivosZip, int leitores, Consumer<SheetInput> destino) {
+        if (arquivosZip.isEmpty()) return;
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(leitores, arquivosZip.size())), r -> {
+            Thread t = new Thread(r, "seab-zip-reader");
+            t.setDaemon(true);
+            return t;
+        });
+        BlockingQueue<SheetInput> fila = new ArrayBlockingQueue<>(ENTRADAS_EM_ESPERA);
+        AtomicInteger restantes = new AtomicInteger(arquivosZip.size());
+
+        for (Path zip : arquivosZip) {
+            pool.submit(() -> {
+                try {
+                    readArchive(zip, fila);
+                } catch (IOException e) {
+                    Log.error("Erro ao ler o arquivo ZIP", "arquivo", zip, "erro", e.getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    if (restantes.decrementAndGet() == 0) signalEnd(fila);
+                }
+            });
+        }
+
+        try {
+            while (true) {
+                SheetInput entrada = fila.take();
+                if (entrada == FIM) break;
+                destino.accept(entrada);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void signalEnd(BlockingQueue<SheetInput> fila) {
+        try {
+            fila.put(FIM);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void readArchive(Path zip, BlockingQueue<SheetInput> fila) throws IOException, InterruptedException {
+        String nomeArquivo = zip.getFileName().toString();
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(zip), 1 << 16);
+             ZipInputStream zis = new ZipInputStream(in)) {
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                if (entry.isDirectory() || !Constants.isImagemSuportada(entry.getName())) continue;
+                byte[] bytes = zis.readAllBytes();
+                fila.put(new ZipEntryInput(nomeArquivo, entry.getName(), bytes));
+            }
+        }
+    }
+
+    /** Uma entrada de imagem de um ZIP, identificada como "arquivo.zip!pasta/entrada.jpg". */
+    static class ZipEntryInput implements SheetInput {
+        private final String arquivo;
+        private final String entrada;
+        private final byte[] bytes;
+
+        ZipEntryInput(String arquivo, String entrada, byte[] bytes) {
+            this.arquivo = arquivo; this.entrada = entrada; this.bytes = bytes;
+        }
+
+        @Override
+        public String id() {
+            return arquivo + "!" + entrada;
+        }
+
+        @Override
+        public String baseName() {
+            return SheetInput.stripExtension(arquivo) + "_" + SheetInput.stripExtension(entrada).replaceAll("[\\\\/:!#]", "_");
+        }
+
+        @Override
+        public Mat load() {
+            MatOfByte buffer = new MatOfByte(bytes);
+            try {
+                return Imgcodecs.imdecode(buffer, Imgcodecs.IMREAD_COLOR);
+            } finally {
+                buffer.release();
+            }
+        }
+
+        @Override
+        public byte[] digest() {
+            MessageDigest md = SheetInput.sha256();
+            md.update(bytes);
+            return md.digest();
+        }
+    }
+}